@@ -0,0 +1,141 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.owop;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.digitalmodular.owop.data.Chunk;
+import static org.digitalmodular.owop.data.Chunk.CHUNK_SIZE;
+
+/**
+ * Decompression of the run-length encoded 16x16 chunks that the OWOP server sends, with
+ * {@link OWOPClientWS#decompressChunk}.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkDecompressionBenchmark {
+	/** Shortest run that the server encodes as a repeat. */
+	private static final int MIN_RUN = 3;
+
+	/**
+	 * {@code empty}: one color, as most of the canvas. {@code pixelArt}: blocks of a few colors. {@code noise}: no runs
+	 * at all.
+	 */
+	@Param({"empty", "pixelArt", "noise"})
+	public String content;
+
+	private ByteBuffer message;
+
+	@Setup
+	public void setup() {
+		SplittableRandom random = new SplittableRandom(CHUNK_SIZE);
+		int[]            pixels = new int[CHUNK_SIZE * CHUNK_SIZE];
+
+		for (int i = 0; i < pixels.length; i++) {
+			switch (content) {
+				case "empty":
+					pixels[i] = 0xFFFFFF;
+					break;
+				case "pixelArt":
+					int x = i % CHUNK_SIZE;
+					int y = i / CHUNK_SIZE;
+					pixels[i] = (x / 4 + y / 4) % 3 == 0 ? 0x000000 : 0xFFFFFF - (x / 4) * 0x111111;
+					break;
+				case "noise":
+					pixels[i] = random.nextInt(0x1000000);
+					break;
+				default:
+					throw new IllegalArgumentException(content);
+			}
+		}
+
+		message = encode(pixels);
+	}
+
+	@Benchmark
+	public Chunk decompressChunk() {
+		return OWOPClientWS.decompressChunk(message.duplicate().order(ByteOrder.LITTLE_ENDIAN), 0, 0);
+	}
+
+	/**
+	 * Encodes like the server: a header, the positions of the repeat codes, then raw pixels interleaved with repeat
+	 * codes.
+	 */
+	private static ByteBuffer encode(int[] pixels) {
+		ByteBuffer data       = ByteBuffer.allocate(pixels.length * 5).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer positions  = ByteBuffer.allocate(pixels.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+		int        numRepeats = 0;
+
+		for (int i = 0; i < pixels.length; ) {
+			int run = 1;
+			while (i + run < pixels.length && pixels[i + run] == pixels[i]) {
+				run++;
+			}
+
+			if (run >= MIN_RUN) {
+				positions.putShort((short)data.position());
+				data.putShort((short)run);
+				numRepeats++;
+			} else {
+				run = 1;
+			}
+
+			putColor(data, pixels[i]);
+			i += run;
+		}
+
+		ByteBuffer message = ByteBuffer.allocate(5 + positions.position() + data.position())
+		                               .order(ByteOrder.LITTLE_ENDIAN);
+		message.put((byte)0); // locked
+		message.putShort((short)(pixels.length * 3)); // originalLength
+		message.putShort((short)numRepeats);
+		message.put(positions.flip());
+		message.put(data.flip());
+		return message.flip();
+	}
+
+	private static void putColor(ByteBuffer buf, int rgb) {
+		buf.put((byte)(rgb >> 16));
+		buf.put((byte)(rgb >> 8));
+		buf.put((byte)rgb);
+	}
+}
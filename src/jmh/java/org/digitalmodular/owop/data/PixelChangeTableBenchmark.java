@@ -0,0 +1,95 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.owop.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Recording pixel changes in a {@link PixelChangeTable}, in a fresh SQLite database, committing per batch like the
+ * client does.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PixelChangeTableBenchmark {
+	private static final int BATCH_SIZE = 1000;
+
+	private Path     directory;
+	private Database database;
+	private long     timestamp;
+	private int      counter;
+
+	@Setup
+	public void setup() throws IOException, SQLException {
+		directory = Files.createTempDirectory("PixelChangeTableBenchmark");
+		database = new Database(directory.resolve("OWOP.db"));
+		timestamp = System.currentTimeMillis();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : (Iterable<Path>)files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public void addPixelChange() throws SQLException {
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			counter++;
+			// Several changes per millisecond, so some timestamps have to be moved forward
+			timestamp += (counter & 3) == 0 ? 1 : 0;
+
+			int x = counter * 7 & 0xFFF;
+			int y = counter * 13 & 0xFFF;
+			database.pixelChangeTable.addPixelChange(new PixelChange(x, y, counter & 0xFFFFFF, counter & 0xFF, timestamp));
+		}
+
+		database.commit();
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.owop.data;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Filling a {@link RandomWalkPixelSorter} with an image worth of points, and walking it, like
+ * {@code OWOPImagePasteMain} does.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RandomWalkPixelSorterBenchmark {
+	/** Same as OWOPImagePasteMain. */
+	private static final int MAX_POINTS_PER_CELL = 5000;
+
+	@State(Scope.Benchmark)
+	public static class Points {
+		/** Side of the square image, 1024 is a million points. */
+		@Param({"1024"})
+		public int size;
+
+		/** Fraction of the image that's transparent, and skipped. */
+		@Param({"0", "0.5"})
+		public float transparentFraction;
+
+		Point[] points;
+
+		@Setup
+		public void setup() {
+			SplittableRandom random = new SplittableRandom(size);
+
+			List<Point> pointList = new ArrayList<>(size * size);
+			for (int y = 0; y < size; y++) {
+				for (int x = 0; x < size; x++) {
+					if (random.nextDouble() >= transparentFraction) {
+						pointList.add(new Point(x, y));
+					}
+				}
+			}
+
+			points = pointList.toArray(new Point[0]);
+		}
+
+		RandomWalkPixelSorter newSorter() {
+			return new RandomWalkPixelSorter(size, size, points.length, MAX_POINTS_PER_CELL);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class FilledSorter {
+		RandomWalkPixelSorter sorter;
+		SplittableRandom      random;
+		int                   size;
+		Point                 walker;
+
+		@Setup(Level.Iteration)
+		public void setup(Points points) {
+			sorter = points.newSorter();
+			for (Point point : points.points) {
+				sorter.add(point);
+			}
+
+			random = new SplittableRandom(points.size);
+			size = points.size;
+			walker = new Point(size / 2, size / 2);
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 3)
+	@Measurement(iterations = 10)
+	public RandomWalkPixelSorter add(Points points) {
+		RandomWalkPixelSorter sorter = points.newSorter();
+		for (Point point : points.points) {
+			sorter.add(point);
+		}
+
+		return sorter;
+	}
+
+	/**
+	 * Takes one step of the walk. An iteration removes far fewer points than the sorter holds, so the density barely
+	 * changes.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, time = 1)
+	@Measurement(iterations = 5, time = 1)
+	public @Nullable Point removeClosest(FilledSorter state) {
+		@Nullable Point point = state.sorter.removeClosest(state.walker);
+		if (point == null) {
+			// Nothing nearby, jump like OWOPImagePasteMain does
+			state.walker = new Point(state.random.nextInt(state.size), state.random.nextInt(state.size));
+		} else {
+			state.walker = point;
+		}
+
+		return point;
+	}
+}
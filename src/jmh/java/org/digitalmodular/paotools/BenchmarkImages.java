@@ -0,0 +1,91 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools;
+
+import java.awt.image.BufferedImage;
+import java.util.SplittableRandom;
+
+import org.digitalmodular.paotools.common.PaoUtilities;
+import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
+import org.digitalmodular.paotools.newpalettizer.palette.Palette;
+
+/**
+ * Deterministic inputs for the benchmarks, that look like the images the tools get in practice.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class BenchmarkImages {
+	private BenchmarkImages() { throw new AssertionError(); }
+
+	/**
+	 * Makes pixel art in the colors of the palette: square blocks of random palette colors, with some of the blocks
+	 * transparent.
+	 */
+	public static LinearFrameBufferImage makePaletteImage(Palette palette,
+	                                                      int width,
+	                                                      int height,
+	                                                      int blockSize,
+	                                                      float transparentFraction) {
+		SplittableRandom       random = new SplittableRandom(width * 31L + height);
+		LinearFrameBufferImage image  = new LinearFrameBufferImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[]                  pixels = image.getArray();
+
+		for (int blockY = 0; blockY < height; blockY += blockSize) {
+			for (int blockX = 0; blockX < width; blockX += blockSize) {
+				int rgb = random.nextDouble() < transparentFraction ?
+				          PaoUtilities.TRANSPARENT :
+				          palette.get(random.nextInt(palette.size())).getRGB();
+
+				for (int y = blockY; y < Math.min(blockY + blockSize, height); y++) {
+					for (int x = blockX; x < Math.min(blockX + blockSize, width); x++) {
+						pixels[y * width + x] = rgb;
+					}
+				}
+			}
+		}
+
+		return image;
+	}
+
+	/**
+	 * Makes a photo-like image: smooth gradients with a bit of noise, every pixel opaque and mostly unique.
+	 */
+	public static LinearFrameBufferImage makePhotoImage(int width, int height) {
+		SplittableRandom       random = new SplittableRandom(width * 31L + height);
+		LinearFrameBufferImage image  = new LinearFrameBufferImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[]                  pixels = image.getArray();
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int r = clamp(x * 255 / width + random.nextInt(-8, 9));
+				int g = clamp(y * 255 / height + random.nextInt(-8, 9));
+				int b = clamp((x + y) * 255 / (width + height) + random.nextInt(-8, 9));
+				pixels[y * width + x] = 0xFF000000 | r << 16 | g << 8 | b;
+			}
+		}
+
+		return image;
+	}
+
+	private static int clamp(int value) {
+		return Math.max(0, Math.min(255, value));
+	}
+}
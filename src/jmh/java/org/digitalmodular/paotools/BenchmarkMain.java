@@ -0,0 +1,67 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools;
+
+import java.util.Arrays;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes the results as JSON, so runs can be compared.
+ * <p>
+ * Usage: {@code BenchmarkMain [result.json] [JMH options...]}. Without a filter in the options, all benchmarks run.
+ * <p>
+ * Build with {@code mvn -f jmh/pom.xml package} and run with {@code java -jar jmh/target/benchmarks.jar}.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class BenchmarkMain {
+	private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+	private static final String DEFAULT_INCLUDE     = "org\\.digitalmodular\\..*Benchmark";
+
+	public static void main(String... args) throws RunnerException, CommandLineOptionException {
+		String   resultFile = DEFAULT_RESULT_FILE;
+		String[] jmhArgs    = args;
+		if (args.length > 0 && args[0].endsWith(".json")) {
+			resultFile = args[0];
+			jmhArgs = Arrays.copyOfRange(args, 1, args.length);
+		}
+
+		CommandLineOptions    commandLineOptions = new CommandLineOptions(jmhArgs);
+		ChainedOptionsBuilder options            = new OptionsBuilder()
+				.parent(commandLineOptions)
+				.resultFormat(ResultFormatType.JSON)
+				.result(resultFile);
+
+		// Includes are added to those of the parent, so the default would match everything a filter excludes
+		if (commandLineOptions.getIncludes().isEmpty()) {
+			options.include(DEFAULT_INCLUDE);
+		}
+
+		new Runner(options.build()).run();
+	}
+}
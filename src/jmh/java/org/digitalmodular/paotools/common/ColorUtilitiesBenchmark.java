@@ -0,0 +1,106 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.common;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.digitalmodular.paotools.BenchmarkImages;
+
+/**
+ * Color conversions of {@link ColorUtilities}, per pixel, on a photo-like image.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorUtilitiesBenchmark {
+	private static final int SIZE   = 256;
+	private static final int PIXELS = SIZE * SIZE;
+
+	private int[]   pixels;
+	private float[] channel1;
+	private float[] channel2;
+	private float[] channel3;
+	private float[] lab;
+
+	@Setup
+	public void setup() {
+		pixels = BenchmarkImages.makePhotoImage(SIZE, SIZE).getArray();
+		channel1 = new float[PIXELS];
+		channel2 = new float[PIXELS];
+		channel3 = new float[PIXELS];
+		lab = new float[3];
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PIXELS)
+	public void rgb2floats(Blackhole blackhole) {
+		ColorUtilities.rgb2floats(pixels, 0, PIXELS, channel1, channel2, channel3);
+		blackhole.consume(channel1);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PIXELS)
+	public void rgb2linear(Blackhole blackhole) {
+		ColorUtilities.rgb2linear(pixels, 0, PIXELS, channel1, channel2, channel3);
+		blackhole.consume(channel1);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PIXELS)
+	public void rgb2PerceptualHSL(Blackhole blackhole) {
+		ColorUtilities.rgb2PerceptualHSL(pixels, 0, PIXELS, channel1, channel2, channel3);
+		blackhole.consume(channel1);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PIXELS)
+	public void rgb2lab(Blackhole blackhole) {
+		ColorUtilities.rgb2lab(pixels, 0, PIXELS, channel1, channel2, channel3);
+		blackhole.consume(channel1);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PIXELS)
+	public void rgb2labScalar(Blackhole blackhole) {
+		for (int rgb : pixels) {
+			ColorUtilities.rgb2lab(rgb, lab);
+			blackhole.consume(lab[0]);
+		}
+	}
+}
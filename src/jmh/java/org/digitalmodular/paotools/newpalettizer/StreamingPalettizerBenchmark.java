@@ -0,0 +1,99 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.newpalettizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.digitalmodular.paotools.BenchmarkImages;
+import org.digitalmodular.paotools.newpalettizer.palette.PRPaletteV1;
+import org.digitalmodular.paotools.newpalettizer.palettizer.NearestPalettizer;
+
+/**
+ * Streams a PNG file through {@link NearestPalettizer#palettize(RowSource, Palettizer.RowConsumer)}, once with the
+ * single-pass {@link RowSource#open(File) PNG reader} and once with ImageIO source regions.
+ * <p>
+ * Streaming must stay linear in the height of the image: the score at 4000 rows should be about four times the score
+ * at 1000 rows. The strips are kept small so any cost per strip that depends on the row (like decoding from the start
+ * of the file again) shows up. The {@code imageio} source does that and is quadratic.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StreamingPalettizerBenchmark {
+	private static final int WIDTH        = 1000;
+	private static final int STRIP_HEIGHT = 64;
+
+	@Param({"1000", "4000"})
+	public int height;
+
+	@Param({"png", "imageio"})
+	public String source;
+
+	private NearestPalettizer palettizer;
+	private File              file;
+
+	@Setup
+	public void setup() throws IOException {
+		palettizer = new NearestPalettizer(PRPaletteV1.instance());
+		palettizer.setStripHeight(STRIP_HEIGHT);
+
+		file = Files.createTempFile("streaming", ".png").toFile();
+		ImageIO.write(BenchmarkImages.makePhotoImage(WIDTH, height), "png", file);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file.toPath());
+	}
+
+	@Benchmark
+	public int palettize() throws IOException {
+		int[] sum = {0};
+
+		try (RowSource rows = source.equals("png") ? RowSource.open(file) : ImageReaderRowSource.open(file)) {
+			palettizer.palettize(rows, (y, paletteIndices) -> sum[0] += paletteIndices[y % WIDTH]);
+		}
+
+		return sum[0];
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.newpalettizer.palettizer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.digitalmodular.paotools.BenchmarkImages;
+import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
+import org.digitalmodular.paotools.newpalettizer.palette.PRPaletteV1;
+
+/**
+ * Palette matching of {@link Palettizer#nearestColorIndex(int)} and {@link NearestPalettizer#palettize}, with and
+ * without the lookup table.
+ * <p>
+ * This is in the palettizer package to reach the protected {@code nearestColorIndex}.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PalettizerBenchmark {
+	private static final int SIZE   = 512;
+	private static final int PIXELS = SIZE * SIZE;
+
+	@Param({"false", "true"})
+	public boolean lookupTable;
+
+	private NearestPalettizer      palettizer;
+	private LinearFrameBufferImage image;
+	private int[]                  pixels;
+
+	@Setup
+	public void setup() {
+		palettizer = new NearestPalettizer(PRPaletteV1.instance());
+		palettizer.setLookupTableEnabled(lookupTable);
+
+		image = BenchmarkImages.makePhotoImage(SIZE, SIZE);
+		pixels = image.getArray();
+
+		// Builds the matcher and lookup table outside of the measurement
+		palettizer.nearestColorIndex(0);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PIXELS)
+	public int nearestColorIndex() {
+		int sum = 0;
+		for (int rgb : pixels) {
+			sum += palettizer.nearestColorIndex(rgb);
+		}
+
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PIXELS)
+	public LinearFrameBufferImage palettize() {
+		return palettizer.palettize(image);
+	}
+}
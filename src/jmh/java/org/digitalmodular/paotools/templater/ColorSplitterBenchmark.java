@@ -0,0 +1,72 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.templater;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.digitalmodular.paotools.BenchmarkImages;
+import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
+import org.digitalmodular.paotools.newpalettizer.palette.PRPaletteV1;
+import org.digitalmodular.paotools.newpalettizer.palette.Palette;
+
+/**
+ * Splitting a difference image into one template per color, with {@link ColorSplitterMain#splitColors}.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ColorSplitterBenchmark {
+	/** Sides of typical templates; the largest is a full-size project. */
+	@Param({"256", "1024", "2048"})
+	public int size;
+
+	private Palette                palette;
+	private LinearFrameBufferImage differenceImage;
+
+	@Setup
+	public void setup() {
+		palette = PRPaletteV1.instance();
+		// Most of a difference image is transparent, where the canvas already matches the target
+		differenceImage = BenchmarkImages.makePaletteImage(palette, size, size, 4, 0.7f);
+	}
+
+	@Benchmark
+	public ColorTemplate[] splitColors() {
+		return ColorSplitterMain.splitColors(palette, differenceImage);
+	}
+}
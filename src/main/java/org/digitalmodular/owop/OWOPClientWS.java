@@ -424,7 +424,7 @@ public class OWOPClientWS implements OWOPClient {
 		chunkUpdatedRunnable.accept(chunk);
 	}
 
-	private static Chunk decompressChunk(ByteBuffer buf, int chunkX, int chunkY) {
+	static Chunk decompressChunk(ByteBuffer buf, int chunkX, int chunkY) {
 		boolean locked = buf.get() != 0;
 		buf.getShort(); // originalLength
 		int numRepeats = buf.getShort() & 0xFFFF;
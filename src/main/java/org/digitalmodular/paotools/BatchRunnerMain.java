@@ -0,0 +1,305 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs many image jobs headless, in one JVM, on a bounded pool of workers.
+ * <p>
+ * A job only starts when its estimated memory (from the image size, read without decoding) fits in the budget, so a
+ * few huge images can't exhaust the heap while small ones run side by side. Each job logs its queue time, memory wait
+ * and run time.
+ * <p>
+ * Usage:
+ * <pre>
+ * BatchRunnerMain [--threads N] [--memory MB] --manifest &lt;file&gt;
+ * BatchRunnerMain [--threads N] [--memory MB] --dir &lt;inputDir&gt; --tool &lt;tool&gt; --out &lt;outputDir&gt; [key=value...]
+ * </pre>
+ * Manifest lines are {@code <tool> <input> <output> [key=value...]}. Empty lines and lines starting with {@code #} are
+ * ignored, and relative paths are relative to the manifest. See {@link BatchTool} for the tools and their options.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class BatchRunnerMain {
+	private static final Logger LOGGER = Logger.getLogger(BatchRunnerMain.class.getName());
+
+	private static final int MEGABYTE = 1 << 20;
+
+	private static final class Job {
+		private final int                 number;
+		private final BatchTool           tool;
+		private final File                input;
+		private final File                output;
+		private final Map<String, String> options;
+
+		private Job(int number, BatchTool tool, File input, File output, Map<String, String> options) {
+			this.number = number;
+			this.tool = tool;
+			this.input = input;
+			this.output = output;
+			this.options = options;
+		}
+	}
+
+	@SuppressWarnings("OverlyBroadThrowsClause")
+	public static void main(String... args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+
+		int                 threads      = Runtime.getRuntime().availableProcessors();
+		long                memoryBudget = Runtime.getRuntime().maxMemory() / 4 * 3 / MEGABYTE;
+		@Nullable String    manifest     = null;
+		@Nullable String    dir          = null;
+		@Nullable String    toolName     = null;
+		@Nullable String    outDir       = null;
+		Map<String, String> options      = new HashMap<>();
+
+		Iterator<String> iter = Arrays.asList(args).iterator();
+		while (iter.hasNext()) {
+			String arg = iter.next();
+			switch (arg) {
+				case "--threads":
+					threads = Integer.parseInt(iter.next());
+					break;
+				case "--memory":
+					memoryBudget = Long.parseLong(iter.next());
+					break;
+				case "--manifest":
+					manifest = iter.next();
+					break;
+				case "--dir":
+					dir = iter.next();
+					break;
+				case "--tool":
+					toolName = iter.next();
+					break;
+				case "--out":
+					outDir = iter.next();
+					break;
+				default:
+					parseOption(arg, options);
+			}
+		}
+
+		List<Job> jobs;
+		if (manifest != null) {
+			jobs = readManifest(new File(manifest));
+		} else if (dir != null && toolName != null && outDir != null) {
+			jobs = listDirectory(new File(dir), parseTool(toolName), new File(outDir), options);
+		} else {
+			System.err.println("Usage: BatchRunnerMain [--threads N] [--memory MB] --manifest <file>");
+			System.err.println("       BatchRunnerMain [--threads N] [--memory MB] --dir <inputDir> --tool <tool>" +
+			                   " --out <outputDir> [key=value...]");
+			System.err.println("Tools: " + Arrays.toString(BatchTool.values()).toLowerCase(Locale.ROOT));
+			System.exit(1);
+			return;
+		}
+
+		int failed = run(jobs, threads, (int)Math.min(Integer.MAX_VALUE, memoryBudget));
+		System.exit(failed == 0 ? 0 : 2);
+	}
+
+	/**
+	 * Runs all jobs and waits for them to finish.
+	 *
+	 * @param memoryBudget the total estimated memory, in megabytes, of the jobs running at the same time
+	 * @return the number of jobs that failed
+	 */
+	private static int run(List<Job> jobs, int threads, int memoryBudget) throws InterruptedException {
+		LOGGER.info("Running " + jobs.size() + " jobs on " + threads + " threads with " + memoryBudget +
+		            " MB memory budget");
+
+		// Fair, so a big job isn't starved by a stream of small ones
+		Semaphore       memory   = new Semaphore(memoryBudget, true);
+		AtomicInteger   failed   = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		long start = System.nanoTime();
+		for (Job job : jobs) {
+			long submitted = System.nanoTime();
+			executor.execute(() -> {
+				if (!runJob(job, jobs.size(), submitted, memory, memoryBudget)) {
+					failed.incrementAndGet();
+				}
+			});
+		}
+
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+		LOGGER.info(String.format("Finished %d jobs (%d failed) in %d ms",
+		                          jobs.size(), failed.get(), (System.nanoTime() - start) / 1_000_000));
+		return failed.get();
+	}
+
+	private static boolean runJob(Job job, int numJobs, long submitted, Semaphore memory, int memoryBudget) {
+		String name = String.format("[%d/%d] %s %s", job.number, numJobs, job.tool, job.input.getName());
+
+		long dequeued = System.nanoTime();
+		int  permits;
+		try {
+			permits = estimateMegabytes(job, memoryBudget);
+		} catch (IOException | RuntimeException ex) {
+			LOGGER.log(Level.WARNING, name + ": can't read image size", ex);
+			return false;
+		}
+
+		try {
+			memory.acquire(permits);
+		} catch (InterruptedException ignored) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		long started = System.nanoTime();
+		try {
+			job.tool.run(job.input, job.output, job.options);
+
+			LOGGER.info(String.format("%s: done in %d ms (queued %d ms, memory wait %d ms, %d MB)",
+			                          name, (System.nanoTime() - started) / 1_000_000,
+			                          (dequeued - submitted) / 1_000_000, (started - dequeued) / 1_000_000, permits));
+			return true;
+		} catch (IOException | RuntimeException | OutOfMemoryError ex) {
+			LOGGER.log(Level.WARNING, String.format("%s: failed after %d ms",
+			                                        name, (System.nanoTime() - started) / 1_000_000), ex);
+			return false;
+		} finally {
+			memory.release(permits);
+		}
+	}
+
+	/**
+	 * Estimates the memory of a job from the image header. Capped to the budget, so a job that's bigger than the budget
+	 * still runs, but alone.
+	 */
+	private static int estimateMegabytes(Job job, int memoryBudget) throws IOException {
+		try (ImageInputStream in = ImageIO.createImageInputStream(job.input)) {
+			if (in == null) {
+				throw new IOException("Can't open " + job.input);
+			}
+
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if (!readers.hasNext()) {
+				throw new IOException("Unsupported image format: " + job.input);
+			}
+
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				long bytes = job.tool.estimateMemory(reader.getWidth(0), reader.getHeight(0), job.options);
+				return (int)Math.max(1, Math.min(memoryBudget, (bytes + MEGABYTE - 1) / MEGABYTE));
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	private static List<Job> readManifest(File manifest) throws IOException {
+		File      base = manifest.getAbsoluteFile().getParentFile();
+		List<Job> jobs = new ArrayList<>();
+		int       line = 0;
+
+		for (String text : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+			line++;
+			text = text.trim();
+			if (text.isEmpty() || text.startsWith("#")) {
+				continue;
+			}
+
+			String[] fields = text.split("\\s+");
+			if (fields.length < 3) {
+				throw new IllegalArgumentException(manifest + ":" + line + ": expected <tool> <input> <output>");
+			}
+
+			Map<String, String> options = new HashMap<>();
+			for (int i = 3; i < fields.length; i++) {
+				parseOption(fields[i], options);
+			}
+
+			jobs.add(new Job(jobs.size() + 1, parseTool(fields[0]),
+			                 resolve(base, fields[1]), resolve(base, fields[2]), options));
+		}
+
+		return jobs;
+	}
+
+	private static List<Job> listDirectory(File dir, BatchTool tool, File outDir, Map<String, String> options)
+			throws IOException {
+		File[] files = dir.listFiles(File::isFile);
+		if (files == null) {
+			throw new IOException("Can't list " + dir);
+		}
+
+		Arrays.sort(files);
+		Files.createDirectories(outDir.toPath());
+
+		List<Job> jobs = new ArrayList<>(files.length);
+		for (File file : files) {
+			String name   = file.getName().replaceFirst("\\.[^.]*$", "");
+			String suffix = tool == BatchTool.COUNT ? ".txt" : tool == BatchTool.SPLIT ? "" : ".png";
+			jobs.add(new Job(jobs.size() + 1, tool, file, new File(outDir, name + suffix),
+			                 Collections.unmodifiableMap(options)));
+		}
+
+		return jobs;
+	}
+
+	private static BatchTool parseTool(String name) {
+		return BatchTool.valueOf(name.toUpperCase(Locale.ROOT));
+	}
+
+	private static void parseOption(String arg, Map<String, String> options) {
+		int equals = arg.indexOf('=');
+		if (equals <= 0) {
+			throw new IllegalArgumentException("Expected key=value: " + arg);
+		}
+
+		options.put(arg.substring(0, equals), arg.substring(equals + 1));
+	}
+
+	private static File resolve(File base, String path) {
+		File file = new File(path);
+		return file.isAbsolute() ? file : new File(base, path);
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
+import org.digitalmodular.paotools.newpalettizer.StreamingPalettizerMain;
+import org.digitalmodular.paotools.newpalettizer.palette.PRPaletteV1;
+import org.digitalmodular.paotools.newpalettizer.palettizer.Palettizer;
+import org.digitalmodular.paotools.templater.ColorSplitterMain;
+
+/**
+ * The image tools that can run headless in {@link BatchRunnerMain}, with a rough estimate of their peak memory use.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public enum BatchTool {
+	/**
+	 * Palettizes to an indexed PNG. Options: {@code method=nearest|ordered|diffusion}, {@code strip=<rows>}.
+	 * Streams, so memory depends on the width only. Without {@code strip}, strips are sized from
+	 * {@link Palettizer#STRIP_MEMORY}.
+	 */
+	PALETTIZE(0) {
+		@Override
+		public long estimateMemory(int width, int height, Map<String, String> options) {
+			// Decoded strip, converted strip and result, plus the shared lookup table
+			long stripMemory = options.containsKey("strip") ?
+			                   (long)width * Integer.parseInt(options.get("strip")) * 16 :
+			                   Math.max(Palettizer.STRIP_MEMORY, width * 16L);
+			return stripMemory + (1 << 24);
+		}
+
+		@Override
+		public void run(File input, File output, Map<String, String> options) throws IOException {
+			Palettizer palettizer = StreamingPalettizerMain.makePalettizer(PRPaletteV1.instance(),
+			                                                               options.getOrDefault("method", "nearest"));
+			palettizer.setLookupTableEnabled(true);
+			palettizer.setStripHeight(Integer.parseInt(options.getOrDefault("strip", "0")));
+
+			StreamingPalettizerMain.palettize(input, output, palettizer);
+		}
+	},
+	/**
+	 * Writes the pixel count of each PAO color to a text file.
+	 */
+	COUNT(12) {
+		@Override
+		public void run(File input, File output, Map<String, String> options) throws IOException {
+			Files.write(output.toPath(), ColorCountMain.countColors(read(input)), StandardCharsets.UTF_8);
+		}
+	},
+	/**
+	 * Removes duplicated rows and columns.
+	 */
+	UNRESIZE(12) {
+		@Override
+		public void run(File input, File output, Map<String, String> options) throws IOException {
+			write(UnResizeMain.unResize(read(input)), output);
+		}
+	},
+	/**
+	 * Removes isolated pixels. Options: {@code sigma=<stdDeviation>}. Uses two float planes per color, estimated for
+	 * 32 colors.
+	 */
+	DESPECKLE(12 + 2 * 4 * 32) {
+		@Override
+		public void run(File input, File output, Map<String, String> options) throws IOException {
+			float stdDeviation = Float.parseFloat(options.getOrDefault("sigma", "2"));
+			write(DespeckleMain.despeckle(read(input), stdDeviation), output);
+		}
+	},
+	/**
+	 * Makes templates for the input image (the target) into the output directory. Options: {@code bg=<file>} for the
+	 * current canvas (blank if absent), {@code x=<offset>}, {@code y=<offset>}, {@code level=<deflateLevel>}. Keeps
+	 * three images and a bit per pixel per palette color, plus two images per export thread.
+	 */
+	SPLIT(4 * 3 + 5) {
+		@Override
+		public long estimateMemory(int width, int height, Map<String, String> options) {
+			int exportThreads = Runtime.getRuntime().availableProcessors();
+			return super.estimateMemory(width, height, options) + (long)width * height * 4 * 2 * exportThreads;
+		}
+
+		@Override
+		public void run(File input, File output, Map<String, String> options) throws IOException {
+			LinearFrameBufferImage targetImage = LinearFrameBufferImage.fromFile(input.getPath());
+			LinearFrameBufferImage startImage;
+			if (options.containsKey("bg")) {
+				startImage = LinearFrameBufferImage.fromFile(options.get("bg"));
+				ColorSplitterMain.checkImageCompatibility(startImage, targetImage);
+			} else {
+				startImage = LinearFrameBufferImage.makeCompatibleImage(targetImage);
+			}
+
+			String baseFilename = input.getName().replaceFirst("(-PR)?\\.[^.]*$", "");
+			String path         = output.getPath() + File.separator;
+			Files.createDirectories(output.toPath());
+
+			ColorSplitterMain.makeTemplates(startImage, targetImage, path, baseFilename,
+			                                Integer.parseInt(options.getOrDefault("x", "0")),
+			                                Integer.parseInt(options.getOrDefault("y", "0")),
+			                                Integer.parseInt(options.getOrDefault("level", "-1")));
+		}
+	};
+
+	private final int bytesPerPixel;
+
+	BatchTool(int bytesPerPixel) {
+		this.bytesPerPixel = bytesPerPixel;
+	}
+
+	/**
+	 * Returns the estimated peak heap use in bytes, for an input of the given size.
+	 */
+	public long estimateMemory(int width, int height, Map<String, String> options) {
+		return (long)width * height * bytesPerPixel;
+	}
+
+	public abstract void run(File input, File output, Map<String, String> options) throws IOException;
+
+	private static BufferedImage read(File input) throws IOException {
+		BufferedImage image = ImageIO.read(input);
+		if (image == null) {
+			throw new IOException("Unsupported image format: " + input);
+		}
+
+		return image;
+	}
+
+	private static void write(BufferedImage image, File output) throws IOException {
+		if (!ImageIO.write(image, "PNG", output)) {
+			throw new IOException("Can't write " + output);
+		}
+	}
+}
@@ -26,7 +26,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 import javax.imageio.ImageIO;
 
 import org.jetbrains.annotations.Nullable;
@@ -86,13 +88,22 @@ public class ColorCountMain {
 	public static void main(String... args) throws Exception {
 		BufferedImage img = ImageIO.read(new File("/home/zom-b/Pictures/Pixelart/PAO/Canvases/" + FILENAME));
 
+		System.out.println(FILENAME + ':');
+		countColors(img).forEach(System.out::println);
+	}
+
+	/**
+	 * Counts the pixels of each PAO color, and returns one line per color, most used first.
+	 */
+	public static List<String> countColors(BufferedImage img) throws IOException {
 		img = ImageUtilities.toIntRasterImage(img);
 		img.setAccelerationPriority(0);
 		int[] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
 
+		// Fresh counters, so concurrent calls don't interfere
 		Map<Integer, PaoColorCount> counts = new HashMap<>(COLORS.length);
 		for (PaoColorCount color : COLORS)
-			counts.put(color.rgb, color);
+			counts.put(color.rgb, new PaoColorCount(color.rgb, color.name));
 
 		for (int c : pixels) {
 			@Nullable PaoColorCount paoColorCount = counts.get(c & 0xFFFFFF);
@@ -102,11 +113,11 @@ public class ColorCountMain {
 			paoColorCount.count++;
 		}
 
-		System.out.println(FILENAME + ':');
-		counts.values()
-		      .stream()
-		      .sorted(Comparator.comparingInt(PaoColorCount::getCount).reversed())
-		      .forEach(System.out::println);
+		return counts.values()
+		             .stream()
+		             .sorted(Comparator.comparingInt(PaoColorCount::getCount).reversed())
+		             .map(PaoColorCount::toString)
+		             .collect(Collectors.toList());
 	}
 
 	@SuppressWarnings("PackageVisibleField")
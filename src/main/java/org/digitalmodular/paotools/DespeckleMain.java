@@ -110,9 +110,38 @@ public class DespeckleMain extends JPanel implements MouseMotionListener {
 	}
 
 	private void despeckle() {
-		if (stdDeviation <= 0) {
-			System.out.println(stdDeviation);
+		despeckle(originalPixels, despeckledPixels, width, height, palette, stdDeviation);
+
+		int strayCount = countStrayPixels(despeckledPixels, width, height);
+		System.out.println(stdDeviation + "\t" + strayCount);
+	}
+
+	/**
+	 * Despeckles an image without the GUI, for batch use. Returns a new image, the input is not modified.
+	 */
+	public static BufferedImage despeckle(BufferedImage image, float stdDeviation) {
+		int width  = image.getWidth();
+		int height = image.getHeight();
+
+		BufferedImage original = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		original.createGraphics().drawImage(image, 0, 0, null);
+		int[] originalPixels = ((DataBufferInt)original.getRaster().getDataBuffer()).getData();
+
+		BufferedImage despeckled       = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[]         despeckledPixels = ((DataBufferInt)despeckled.getRaster().getDataBuffer()).getData();
 
+		despeckle(originalPixels, despeckledPixels, width, height, extractPalette(originalPixels), stdDeviation);
+
+		return despeckled;
+	}
+
+	private static void despeckle(int[] originalPixels,
+	                              int[] despeckledPixels,
+	                              int width,
+	                              int height,
+	                              int[] palette,
+	                              float stdDeviation) {
+		if (stdDeviation <= 0) {
 			System.arraycopy(originalPixels, 0, despeckledPixels, 0, originalPixels.length);
 			return;
 		}
@@ -150,12 +179,9 @@ public class DespeckleMain extends JPanel implements MouseMotionListener {
 				despeckledPixels[p++] = max < 1.0 / 3 ? 0xFFFFFF : palette[maxIndex];
 			}
 		}
-
-		int strayCount = countStrayPixels();
-		System.out.println(stdDeviation + "\t" + strayCount);
 	}
 
-	private int countStrayPixels() {
+	private static int countStrayPixels(int[] despeckledPixels, int width, int height) {
 		int strayCount = 0;
 
 		int p = width;
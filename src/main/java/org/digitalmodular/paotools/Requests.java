@@ -9,6 +9,7 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -22,6 +23,7 @@ import org.digitalmodular.paotools.common.HTTPResponseStream;
  * @author Zom-B
  */
 // Created 2020-11-28
+// Changed 2026-10-17 Extra request headers
 public final class Requests {
 	private Requests() { throw new AssertionError(); }
 
@@ -68,6 +70,14 @@ public final class Requests {
 	 * connection.
 	 */
 	public static HTTPResponseStream openConnection(URL url) throws IOException {
+		return openConnection(url, Collections.emptyMap());
+	}
+
+	/**
+	 * Like {@link #openConnection(URL)}, with additional request headers, like for a conditional request. A response
+	 * of 304 (Not Modified) is returned like any other non-error response.
+	 */
+	public static HTTPResponseStream openConnection(URL url, Map<String, String> requestHeaders) throws IOException {
 		HttpURLConnection connection = null;
 		try {
 			connection = (HttpURLConnection)url.openConnection();
@@ -76,6 +86,9 @@ public final class Requests {
 			connection.addRequestProperty("Accept", "*/*");
 			connection.addRequestProperty("Accept-Encoding", "gzip, deflate");
 			connection.addRequestProperty("Connection", "close");
+			for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+				connection.addRequestProperty(header.getKey(), header.getValue());
+			}
 
 			connection.setInstanceFollowRedirects(false);
 
@@ -15,6 +15,15 @@ public final class UnResizeMain {
 	public static void main(String... args) throws Exception {
 		BufferedImage img = ImageIO.read(new File("/home/zom-b/Pictures/Pixelart/PAO/widthmismatch.png"));
 
+		img = unResize(img);
+
+		ImageIO.write(img, "PNG", new File("/home/zom-b/Pictures/Pixelart/PAO/widthmismatch-shrink.png"));
+	}
+
+	/**
+	 * Removes duplicated columns and rows, by shifting the unique ones to the top-left. The image keeps its size.
+	 */
+	public static BufferedImage unResize(BufferedImage img) {
 		img = ImageUtilities.toIntRasterImage(img);
 
 		img.setAccelerationPriority(0);
@@ -25,7 +34,7 @@ public final class UnResizeMain {
 		shrinkHorizontally(pixels, width, height);
 		shrinkVertically(pixels, width, height);
 
-		ImageIO.write(img, "PNG", new File("/home/zom-b/Pictures/Pixelart/PAO/widthmismatch-shrink.png"));
+		return img;
 	}
 
 	private static void shrinkHorizontally(int[] pixels, int width, int height) {
@@ -0,0 +1,50 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.common;
+
+/**
+ * Exact color space conversions of 8-bit sRGB colors, by table lookup.
+ * <p>
+ * Every color that comes from an image has 8-bit channels, so there are only 256 distinct sRGB-to-linear conversions.
+ * These are calculated once, in double precision, instead of being interpolated from a float table on every call like
+ * {@link ColorUtilities#fromSRGB(float)}.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class ColorSpaceTables {
+	private ColorSpaceTables() { throw new AssertionError(); }
+
+	private static final float[] SRGB_TO_LINEAR = new float[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			double f = i / 255.0;
+			SRGB_TO_LINEAR[i] = (float)(f <= 0.04045 ? f / 12.92 : Math.pow((f + 0.055) / 1.055, 2.4));
+		}
+	}
+
+	/**
+	 * Converts an 8-bit sRGB channel value to linear light in the range [0, 1].
+	 */
+	public static float srgbToLinear(int channel) {
+		return SRGB_TO_LINEAR[channel];
+	}
+}
@@ -11,6 +11,12 @@ public final class ColorUtilities {
 	private static final float[] TO_SRGB_TABLE   = new float[SRGB_PRECISION + 2];
 	private static final float[] FROM_SRGB_TABLE = new float[SRGB_PRECISION + 2];
 
+	// D65 white point, and the constants of the L*a*b* companding function
+	private static final float WHITE_X        = 0.95047f;
+	private static final float WHITE_Z        = 1.08883f;
+	private static final float LAB_THRESHOLD  = (6 * 6 * 6.0f) / (29 * 29 * 29.0f);
+	private static final float LAB_LINEAR_MUL = (29 * 29.0f) / (6 * 6 * 3.0f);
+
 	static {
 		for (int i = 0; i <= SRGB_PRECISION; i++) {
 			float f = i / (float)SRGB_PRECISION;
@@ -71,9 +77,9 @@ public final class ColorUtilities {
 	 * Calculate linear perceptual luminosity from a color in sRGB color space.
 	 */
 	public static float getPerceptualLuminosity(int rgb) {
-		return getPerceptualLuminosity((rgb >> 16 & 0xFF) / 255.0f,
-		                               (rgb >> 8 & 0xFF) / 255.0f,
-		                               (rgb & 0xFF) / 255.0f);
+		return ColorSpaceTables.srgbToLinear(rgb >> 16 & 0xFF) * 0.2126f +
+		       ColorSpaceTables.srgbToLinear(rgb >> 8 & 0xFF) * 0.7152f +
+		       ColorSpaceTables.srgbToLinear(rgb & 0xFF) * 0.0722f;
 	}
 
 	/**
@@ -86,32 +92,55 @@ public final class ColorUtilities {
 	}
 
 	public static float[] rgb2hsl(float r, float g, float b) {
+		float[] hsl = new float[3];
+		rgb2hsl(r, g, b, hsl);
+		return hsl;
+	}
+
+	/**
+	 * Like {@link #rgb2hsl(float, float, float)}, but writes the result to {@code hsl} instead of allocating.
+	 */
+	public static void rgb2hsl(float r, float g, float b, float[] hsl) {
 		float minimum = Math.min(Math.min(r, g), b);
 		float maximum = Math.max(Math.max(r, g), b);
 		float span    = maximum - minimum;
 
 		float lum = (minimum + maximum) / 2;
 
-		if (span < 1.0e-7)
-			return new float[]{0, 0, lum};
+		hsl[2] = lum;
+
+		if (span < 1.0e-7) {
+			hsl[0] = 0;
+			hsl[1] = 0;
+			return;
+		}
 
-		float sat = span / (1 - Math.abs(minimum + maximum - 1));
+		hsl[1] = span / (1 - Math.abs(minimum + maximum - 1));
 
 		if (maximum == r) {
 			if (minimum == b)
-				return new float[]{((g - b) / span) / 6, sat, lum};
+				hsl[0] = ((g - b) / span) / 6;
 			else
-				return new float[]{((g - b) / span + 6) / 6, sat, lum};
+				hsl[0] = ((g - b) / span + 6) / 6;
 		} else {
 			if (maximum == g)
-				return new float[]{((b - r) / span + 2) / 6, sat, lum};
+				hsl[0] = ((b - r) / span + 2) / 6;
 			else
-				return new float[]{((r - g) / span + 4) / 6, sat, lum};
+				hsl[0] = ((r - g) / span + 4) / 6;
 		}
 	}
 
 	public static float[] getPerceptualHSL(float r, float g, float b) {
-		float[] hsl = rgb2hsl(r, g, b);
+		float[] hsl = new float[3];
+		getPerceptualHSL(r, g, b, hsl);
+		return hsl;
+	}
+
+	/**
+	 * Like {@link #getPerceptualHSL(float, float, float)}, but writes the result to {@code hsl} instead of allocating.
+	 */
+	public static void getPerceptualHSL(float r, float g, float b, float[] hsl) {
+		rgb2hsl(r, g, b, hsl);
 
 		// Adjust SAT down when LUM != 0.5, since darker and more pastel colors (i.e. closer to white) appear less
 		// saturated to the human eye.
@@ -120,8 +149,133 @@ public final class ColorUtilities {
 
 		// Replace LUM
 		hsl[2] = getPerceptualLuminosity(r, g, b);
+	}
 
-		return hsl;
+	/**
+	 * Like {@link #getPerceptualHSL(float, float, float, float[])}, with the exact luminosity of an 8-bit color.
+	 */
+	public static void getPerceptualHSL(int rgb, float[] hsl) {
+		rgb2hsl((rgb >> 16 & 0xFF) / 255.0f, (rgb >> 8 & 0xFF) / 255.0f, (rgb & 0xFF) / 255.0f, hsl);
+		hsl[1] *= 1 - Math.abs(hsl[2] * 2 - 1);
+		hsl[2] = getPerceptualLuminosity(rgb);
+	}
+
+	/**
+	 * Calculate CIE L*a*b* (D65 white point) from a color in sRGB color space, and writes it to {@code lab}.
+	 */
+	public static void rgb2lab(int rgb, float[] lab) {
+		float r = ColorSpaceTables.srgbToLinear(rgb >> 16 & 0xFF);
+		float g = ColorSpaceTables.srgbToLinear(rgb >> 8 & 0xFF);
+		float b = ColorSpaceTables.srgbToLinear(rgb & 0xFF);
+
+		float fx = labF((r * 0.4124564f + g * 0.3575761f + b * 0.1804375f) / WHITE_X);
+		float fy = labF(r * 0.2126729f + g * 0.7151522f + b * 0.0721750f);
+		float fz = labF((r * 0.0193339f + g * 0.1191920f + b * 0.9503041f) / WHITE_Z);
+
+		lab[0] = 116 * fy - 16;
+		lab[1] = 500 * (fx - fy);
+		lab[2] = 200 * (fy - fz);
+	}
+
+	private static float labF(float t) {
+		return t > LAB_THRESHOLD ? (float)Math.cbrt(t) : t * LAB_LINEAR_MUL + 4 / 29.0f;
+	}
+
+	// Batch conversions.
+	//
+	// These convert a row of packed colors to caller-provided planes (structure-of-arrays), so the hot loops don't
+	// allocate. Each conversion is split into simple passes over the planes, which the JIT can unroll and, where there
+	// are no table lookups, vectorize. The results are identical to the per-pixel methods for packed colors.
+
+	/**
+	 * Unpacks {@code length} colors starting at {@code offset} into sRGB component planes in the range [0, 1]. The
+	 * planes are filled from index 0.
+	 */
+	public static void rgb2floats(int[] rgb, int offset, int length, float[] r, float[] g, float[] b) {
+		for (int i = 0; i < length; i++) {
+			int c = rgb[offset + i];
+			r[i] = (c >> 16 & 0xFF) / 255.0f;
+			g[i] = (c >> 8 & 0xFF) / 255.0f;
+			b[i] = (c & 0xFF) / 255.0f;
+		}
+	}
+
+	/**
+	 * Unpacks {@code length} colors starting at {@code offset} into linear RGB component planes in the range [0, 1].
+	 * The planes are filled from index 0.
+	 */
+	public static void rgb2linear(int[] rgb, int offset, int length, float[] r, float[] g, float[] b) {
+		for (int i = 0; i < length; i++) {
+			int c = rgb[offset + i];
+			r[i] = ColorSpaceTables.srgbToLinear(c >> 16 & 0xFF);
+			g[i] = ColorSpaceTables.srgbToLinear(c >> 8 & 0xFF);
+			b[i] = ColorSpaceTables.srgbToLinear(c & 0xFF);
+		}
+	}
+
+	/**
+	 * Converts {@code length} colors starting at {@code offset} to perceptual HSL planes, as if by
+	 * {@link #getPerceptualHSL(int, float[])}. The planes are filled from index 0.
+	 */
+	public static void rgb2PerceptualHSL(int[] rgb, int offset, int length, float[] h, float[] s, float[] l) {
+		// Use the output planes to hold the input components.
+		rgb2floats(rgb, offset, length, h, s, l);
+
+		for (int i = 0; i < length; i++) {
+			float r = h[i];
+			float g = s[i];
+			float b = l[i];
+
+			float minimum = Math.min(Math.min(r, g), b);
+			float maximum = Math.max(Math.max(r, g), b);
+			float span    = maximum - minimum;
+			float lum     = (minimum + maximum) / 2;
+
+			if (span < 1.0e-7) {
+				h[i] = 0;
+				s[i] = 0;
+			} else {
+				float sat = span / (1 - Math.abs(minimum + maximum - 1));
+				s[i] = sat * (1 - Math.abs(lum * 2 - 1));
+
+				if (maximum == r) {
+					if (minimum == b)
+						h[i] = ((g - b) / span) / 6;
+					else
+						h[i] = ((g - b) / span + 6) / 6;
+				} else {
+					if (maximum == g)
+						h[i] = ((b - r) / span + 2) / 6;
+					else
+						h[i] = ((r - g) / span + 4) / 6;
+				}
+			}
+
+			l[i] = getPerceptualLuminosity(rgb[offset + i]);
+		}
+	}
+
+	/**
+	 * Converts {@code length} colors starting at {@code offset} to CIE L*a*b* planes, as if by
+	 * {@link #rgb2lab(int, float[])}. The planes are filled from index 0.
+	 */
+	public static void rgb2lab(int[] rgb, int offset, int length, float[] labL, float[] labA, float[] labB) {
+		// Use the output planes to hold the intermediate linear RGB.
+		rgb2linear(rgb, offset, length, labL, labA, labB);
+
+		for (int i = 0; i < length; i++) {
+			float r = labL[i];
+			float g = labA[i];
+			float b = labB[i];
+
+			float fx = labF((r * 0.4124564f + g * 0.3575761f + b * 0.1804375f) / WHITE_X);
+			float fy = labF(r * 0.2126729f + g * 0.7151522f + b * 0.0721750f);
+			float fz = labF((r * 0.0193339f + g * 0.1191920f + b * 0.9503041f) / WHITE_Z);
+
+			labL[i] = 116 * fy - 16;
+			labA[i] = 500 * (fx - fy);
+			labB[i] = 200 * (fy - fz);
+		}
 	}
 
 	/**
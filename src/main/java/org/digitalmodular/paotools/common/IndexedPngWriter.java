@@ -0,0 +1,300 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.common;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
+
+/**
+ * Writes an indexed-color PNG one row at a time, so the image never has to be in memory as a whole.
+ * <p>
+ * The bit depth is the smallest that fits the palette (1, 2, 4 or 8). Colors with an alpha other than 255 are written
+ * to a tRNS chunk. Rows are written unfiltered, as recommended for indexed images, and compressed data is flushed in
+ * IDAT chunks of at most {@link #IDAT_SIZE} bytes.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public class IndexedPngWriter implements Closeable {
+	private static final byte[] SIGNATURE = {(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+	private static final int    IDAT_SIZE = 65536;
+
+	private final DataOutputStream out;
+	private final int              width;
+	private final int              height;
+	private final int              paletteSize;
+	private final int              bitDepth;
+
+	private final Deflater deflater;
+	private final byte[]   rowBytes;
+	private final byte[]   idatBuffer = new byte[IDAT_SIZE];
+	private final CRC32    crc        = new CRC32();
+
+	private int     rowsWritten = 0;
+	private boolean closed      = false;
+
+	/**
+	 * The writer takes ownership of {@code out}, and closes it when it's closed. If the constructor throws, {@code out}
+	 * is left open.
+	 *
+	 * @param palette      the colors in ARGB format, at most 256
+	 * @param deflateLevel the compression level, from {@link Deflater#NO_COMPRESSION} to
+	 *                     {@link Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}
+	 */
+	public IndexedPngWriter(OutputStream out, int width, int height, int[] palette, int deflateLevel)
+			throws IOException {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("Image size must be at least 1x1: " + width + "x" + height);
+		}
+		if (palette.length < 1 || palette.length > 256) {
+			throw new IllegalArgumentException("'palette' must have 1 to 256 colors: " + palette.length);
+		}
+
+		this.out = new DataOutputStream(out);
+		this.width = width;
+		this.height = height;
+		paletteSize = palette.length;
+		bitDepth = palette.length <= 2 ? 1 : palette.length <= 4 ? 2 : palette.length <= 16 ? 4 : 8;
+
+		deflater = new Deflater(deflateLevel);
+		rowBytes = new byte[1 + (width * bitDepth + 7) / 8];
+
+		try {
+			writeHeader(palette);
+		} catch (IOException | RuntimeException ex) {
+			// Nobody can close this instance
+			deflater.end();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Writes a whole image as an indexed PNG, if it has at most 256 distinct colors. The palette is in order of first
+	 * appearance, so an image with only two colors is written with 1 bit per pixel.
+	 *
+	 * @return {@code false} if the image has too many colors, in which case nothing is written
+	 */
+	public static boolean write(LinearFrameBufferImage image, File file, int deflateLevel) throws IOException {
+		int   width  = image.getWidth();
+		int   height = image.getHeight();
+		int[] pixels = image.getArray();
+		// The alpha of opaque images is undefined in the array
+		int alphaMask = image.isTransparent() ? 0 : 0xFF000000;
+
+		@Nullable int[] palette = findPalette(pixels, alphaMask);
+		if (palette == null) {
+			return false;
+		}
+
+		IntIntHashMap indices = new IntIntHashMap(palette.length * 2);
+		for (int i = 0; i < palette.length; i++) {
+			indices.put(palette[i], i);
+		}
+
+		int[] row = new int[width];
+		// The stream is a resource of its own, so it's also closed when the writer can't be constructed
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+		     IndexedPngWriter writer = new IndexedPngWriter(out, width, height, palette, deflateLevel)) {
+			for (int y = 0; y < height; y++) {
+				int offset = y * width;
+				for (int x = 0; x < width; x++) {
+					row[x] = indices.get(pixels[offset + x] | alphaMask, -1);
+				}
+
+				writer.writeRow(row, 0);
+			}
+		}
+
+		return true;
+	}
+
+	private static @Nullable int[] findPalette(int[] pixels, int alphaMask) {
+		IntIntHashMap seen    = new IntIntHashMap(512);
+		int[]         palette = new int[256];
+		int           size    = 0;
+
+		for (int pixel : pixels) {
+			int argb = pixel | alphaMask;
+			if (seen.containsKey(argb)) {
+				continue;
+			}
+
+			if (size == palette.length) {
+				return null;
+			}
+
+			seen.put(argb, size);
+			palette[size++] = argb;
+		}
+
+		return Arrays.copyOf(palette, size);
+	}
+
+	public int getBitDepth() {
+		return bitDepth;
+	}
+
+	private void writeHeader(int[] palette) throws IOException {
+		out.write(SIGNATURE);
+
+		byte[] ihdr = new byte[13];
+		putInt(ihdr, 0, width);
+		putInt(ihdr, 4, height);
+		ihdr[8] = (byte)bitDepth;
+		ihdr[9] = 3; // Indexed color
+		ihdr[10] = 0; // Deflate
+		ihdr[11] = 0; // Adaptive filtering
+		ihdr[12] = 0; // No interlacing
+		writeChunk("IHDR", ihdr, ihdr.length);
+
+		byte[] plte       = new byte[palette.length * 3];
+		byte[] trns       = new byte[palette.length];
+		int    trnsLength = 0;
+		for (int i = 0; i < palette.length; i++) {
+			plte[i * 3] = (byte)(palette[i] >> 16);
+			plte[i * 3 + 1] = (byte)(palette[i] >> 8);
+			plte[i * 3 + 2] = (byte)palette[i];
+
+			trns[i] = (byte)(palette[i] >>> 24);
+			if (trns[i] != (byte)0xFF) {
+				trnsLength = i + 1;
+			}
+		}
+
+		writeChunk("PLTE", plte, plte.length);
+		if (trnsLength > 0) {
+			writeChunk("tRNS", trns, trnsLength);
+		}
+	}
+
+	/**
+	 * Writes the next row.
+	 *
+	 * @param indices the palette index of each pixel, starting at {@code offset}
+	 */
+	public void writeRow(int[] indices, int offset) throws IOException {
+		if (rowsWritten == height) {
+			throw new IllegalStateException("All " + height + " rows are already written");
+		}
+
+		rowBytes[0] = 0; // Filter type None
+
+		if (bitDepth == 8) {
+			for (int x = 0; x < width; x++) {
+				rowBytes[x + 1] = (byte)checkIndex(indices[offset + x]);
+			}
+		} else {
+			int pixelsPerByte = 8 / bitDepth;
+			for (int i = 1; i < rowBytes.length; i++) {
+				int packed = 0;
+				int x      = (i - 1) * pixelsPerByte;
+				for (int p = 0; p < pixelsPerByte; p++, x++) {
+					int index = x < width ? checkIndex(indices[offset + x]) : 0;
+					packed = packed << bitDepth | index;
+				}
+
+				rowBytes[i] = (byte)packed;
+			}
+		}
+
+		deflater.setInput(rowBytes);
+		while (!deflater.needsInput()) {
+			deflate();
+		}
+
+		rowsWritten++;
+	}
+
+	/**
+	 * Finishes the image. All rows must have been written.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		try {
+			if (rowsWritten != height) {
+				throw new IllegalStateException("Only " + rowsWritten + " of " + height + " rows are written");
+			}
+
+			deflater.finish();
+			while (!deflater.finished()) {
+				deflate();
+			}
+
+			writeChunk("IEND", idatBuffer, 0);
+			out.flush();
+		} finally {
+			deflater.end();
+			out.close();
+		}
+	}
+
+	private void deflate() throws IOException {
+		int length = deflater.deflate(idatBuffer);
+		if (length > 0) {
+			writeChunk("IDAT", idatBuffer, length);
+		}
+	}
+
+	private int checkIndex(int index) {
+		if (index < 0 || index >= paletteSize) {
+			throw new IllegalArgumentException("Palette index out of range [0, " + paletteSize + "): " + index);
+		}
+
+		return index;
+	}
+
+	private void writeChunk(String type, byte[] data, int length) throws IOException {
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+
+		crc.reset();
+		crc.update(typeBytes);
+		crc.update(data, 0, length);
+
+		out.writeInt(length);
+		out.write(typeBytes);
+		out.write(data, 0, length);
+		out.writeInt((int)crc.getValue());
+	}
+
+	private static void putInt(byte[] array, int offset, int value) {
+		array[offset] = (byte)(value >> 24);
+		array[offset + 1] = (byte)(value >> 16);
+		array[offset + 2] = (byte)(value >> 8);
+		array[offset + 3] = (byte)value;
+	}
+}
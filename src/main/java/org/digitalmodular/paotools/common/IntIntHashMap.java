@@ -0,0 +1,187 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.common;
+
+import java.util.Arrays;
+
+/**
+ * A map from {@code int} to {@code int} using open addressing with linear probing, without boxing.
+ * <p>
+ * Meant for hot loops that map colors, like histograms of the distinct colors of an image. Key {@code 0} is stored
+ * outside the table so it can mark empty slots. Removal is not supported.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public class IntIntHashMap {
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private int[] keys;
+	private int[] values;
+	private int   mask;
+	private int   size = 0;
+
+	private boolean hasZeroKey = false;
+	private int     zeroValue  = 0;
+
+	public IntIntHashMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, (int)(expectedSize / LOAD_FACTOR)) - 1) << 1;
+		keys = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(int key) {
+		if (key == 0)
+			return hasZeroKey;
+
+		int slot = findSlot(key);
+		return keys[slot] == key;
+	}
+
+	/**
+	 * Returns the value for the key, or {@code defaultValue} if the key is not present.
+	 */
+	public int get(int key, int defaultValue) {
+		if (key == 0)
+			return hasZeroKey ? zeroValue : defaultValue;
+
+		int slot = findSlot(key);
+		return keys[slot] == key ? values[slot] : defaultValue;
+	}
+
+	public void put(int key, int value) {
+		if (key == 0) {
+			if (!hasZeroKey) {
+				hasZeroKey = true;
+				size++;
+			}
+
+			zeroValue = value;
+			return;
+		}
+
+		int slot = findSlot(key);
+		if (keys[slot] != key) {
+			keys[slot] = key;
+			if (++size > keys.length * LOAD_FACTOR) {
+				values[slot] = value;
+				grow();
+				return;
+			}
+		}
+
+		values[slot] = value;
+	}
+
+	/**
+	 * Adds {@code delta} to the value of the key, treating absent keys as 0, and returns the new value.
+	 */
+	public int addTo(int key, int delta) {
+		if (key == 0) {
+			if (!hasZeroKey) {
+				hasZeroKey = true;
+				size++;
+			}
+
+			zeroValue += delta;
+			return zeroValue;
+		}
+
+		int slot = findSlot(key);
+		if (keys[slot] != key) {
+			keys[slot] = key;
+			values[slot] = delta;
+			if (++size > keys.length * LOAD_FACTOR)
+				grow();
+
+			return delta;
+		}
+
+		values[slot] += delta;
+		return values[slot];
+	}
+
+	/**
+	 * Returns all keys, in no particular order.
+	 */
+	public int[] keys() {
+		int[] result = new int[size];
+		int   i      = 0;
+		if (hasZeroKey)
+			result[i++] = 0;
+
+		for (int key : keys)
+			if (key != 0)
+				result[i++] = key;
+
+		return result;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		size = 0;
+		hasZeroKey = false;
+	}
+
+	/**
+	 * Returns the slot containing the key, or the empty slot where it should go.
+	 */
+	private int findSlot(int key) {
+		int slot = mix(key) & mask;
+		while (keys[slot] != 0 && keys[slot] != key)
+			slot = slot + 1 & mask;
+
+		return slot;
+	}
+
+	/**
+	 * Spreads the bits, because colors and coordinates tend to differ only in a few bits.
+	 */
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ h >>> 16;
+	}
+
+	private void grow() {
+		int[] oldKeys   = keys;
+		int[] oldValues = values;
+
+		keys = new int[oldKeys.length * 2];
+		values = new int[oldValues.length * 2];
+		mask = keys.length - 1;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = findSlot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
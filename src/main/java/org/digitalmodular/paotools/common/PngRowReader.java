@@ -0,0 +1,450 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.common;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.paotools.newpalettizer.RowSource;
+
+/**
+ * Reads a PNG one row at a time, in a single forward pass over the file, so the image never has to be in memory as a
+ * whole and each row is only decompressed once. The counterpart of {@link IndexedPngWriter}.
+ * <p>
+ * All color types and bit depths are supported, including tRNS transparency. Interlaced images aren't, as their rows
+ * can't be completed before the last pass; use {@link #canRead(Path)} to check. Gamma and color profile chunks are
+ * ignored, like ImageIO does. Chunk CRCs aren't checked.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public class PngRowReader implements RowSource {
+	private static final byte[] SIGNATURE   = {(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+	private static final int    HEADER_SIZE = SIGNATURE.length + 8 + 13;
+
+	private static final int GRAY       = 0;
+	private static final int RGB        = 2;
+	private static final int INDEXED    = 3;
+	private static final int GRAY_ALPHA = 4;
+	private static final int RGB_ALPHA  = 6;
+
+	private final DataInputStream in;
+	private final int             width;
+	private final int             height;
+	private final int             bitDepth;
+	private final int             colorType;
+	private final int             filterStride;
+
+	private @Nullable int[] palette            = null;
+	/** The gray or RGB samples, in the file's bit depth, of the tRNS color. */
+	private @Nullable int[] transparentSamples = null;
+
+	private final Inflater        inflater = new Inflater();
+	private final DataInputStream pixelData;
+	private       byte[]          previousRow;
+	private       byte[]          currentRow;
+
+	private int nextRow        = 0;
+	private int chunkRemaining = 0;
+
+	/**
+	 * Returns whether the file is a PNG this class can read.
+	 */
+	public static boolean canRead(Path file) throws IOException {
+		byte[] header = new byte[HEADER_SIZE];
+		try (InputStream in = Files.newInputStream(file)) {
+			if (in.readNBytes(header, 0, header.length) < header.length) {
+				return false;
+			}
+		}
+
+		return Arrays.equals(header, 0, SIGNATURE.length, SIGNATURE, 0, SIGNATURE.length) &&
+		       new String(header, 12, 4, StandardCharsets.US_ASCII).equals("IHDR") &&
+		       header[HEADER_SIZE - 1] == 0; // No interlacing
+	}
+
+	public PngRowReader(Path file) throws IOException {
+		this(new BufferedInputStream(Files.newInputStream(file)));
+	}
+
+	/**
+	 * Reads the header chunks, up to the image data. The reader takes ownership of {@code in}, and closes it when it's
+	 * closed or when the constructor throws.
+	 */
+	public PngRowReader(InputStream in) throws IOException {
+		this.in = new DataInputStream(in);
+
+		try {
+			byte[] signature = new byte[SIGNATURE.length];
+			this.in.readFully(signature);
+			if (!Arrays.equals(signature, SIGNATURE)) {
+				throw new IOException("Not a PNG file");
+			}
+
+			byte[] ihdr = readChunk("IHDR");
+			width = getInt(ihdr, 0);
+			height = getInt(ihdr, 4);
+			bitDepth = ihdr[8];
+			colorType = ihdr[9];
+			if (width < 1 || height < 1) {
+				throw new IOException("Invalid image size: " + width + "x" + height);
+			} else if (ihdr[12] != 0) {
+				throw new IOException("Interlaced PNGs are not supported");
+			}
+
+			boolean validDepth = bitDepth == 8 ||
+			                     bitDepth == 16 && colorType != INDEXED ||
+			                     (bitDepth == 1 || bitDepth == 2 || bitDepth == 4) &&
+			                     (colorType == GRAY || colorType == INDEXED);
+			if (!validDepth) {
+				throw new IOException("Invalid bit depth " + bitDepth + " for color type " + colorType);
+			}
+
+			int bitsPerPixel = getChannels(colorType) * bitDepth;
+			filterStride = Math.max(1, bitsPerPixel / 8);
+			previousRow = new byte[(int)(((long)width * bitsPerPixel + 7) / 8)];
+			currentRow = new byte[previousRow.length];
+
+			// Read chunks up to the first IDAT. The IDAT stream consumes the rest.
+			String type;
+			while (!(type = readChunkHeader()).equals("IDAT")) {
+				byte[] data = readChunkData();
+				if (type.equals("PLTE")) {
+					readPalette(data);
+				} else if (type.equals("tRNS")) {
+					readTransparency(data);
+				}
+			}
+
+			if (colorType == INDEXED && palette == null) {
+				throw new IOException("Indexed PNG without a PLTE chunk");
+			}
+
+			pixelData = new DataInputStream(new InflaterInputStream(new IdatInputStream(), inflater, 65536));
+		} catch (IOException | RuntimeException ex) {
+			inflater.end();
+			in.close();
+			throw ex;
+		}
+	}
+
+	private static int getChannels(int colorType) throws IOException {
+		switch (colorType) {
+			case GRAY:
+			case INDEXED:
+				return 1;
+			case GRAY_ALPHA:
+				return 2;
+			case RGB:
+				return 3;
+			case RGB_ALPHA:
+				return 4;
+			default:
+				throw new IOException("Invalid color type: " + colorType);
+		}
+	}
+
+	private void readPalette(byte[] data) {
+		palette = new int[256];
+		Arrays.fill(palette, PaoUtilities.BLACK);
+		for (int i = 0; i < Math.min(256, data.length / 3); i++) {
+			palette[i] = PaoUtilities.BLACK |
+			             (data[i * 3] & 0xFF) << 16 |
+			             (data[i * 3 + 1] & 0xFF) << 8 |
+			             data[i * 3 + 2] & 0xFF;
+		}
+	}
+
+	private void readTransparency(byte[] data) {
+		if (colorType == INDEXED && palette != null) {
+			for (int i = 0; i < Math.min(256, data.length); i++) {
+				palette[i] = palette[i] & 0xFFFFFF | (data[i] & 0xFF) << 24;
+			}
+		} else if (colorType == GRAY && data.length >= 2) {
+			transparentSamples = new int[]{getShort(data, 0)};
+		} else if (colorType == RGB && data.length >= 6) {
+			transparentSamples = new int[]{getShort(data, 0), getShort(data, 2), getShort(data, 4)};
+		}
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	public int getBitDepth() {
+		return bitDepth;
+	}
+
+	@Override
+	public void readRows(int[] dst, int rows) throws IOException {
+		if (rows < 1 || rows > height - nextRow) {
+			throw new IllegalArgumentException("Can't read " + rows + " rows, " + (height - nextRow) + " are left");
+		}
+
+		for (int i = 0; i < rows; i++) {
+			readRow(dst, i * width);
+		}
+	}
+
+	/**
+	 * Reads the next row as ARGB into {@code dst}, starting at {@code offset}.
+	 */
+	public void readRow(int[] dst, int offset) throws IOException {
+		if (nextRow == height) {
+			throw new IllegalStateException("All " + height + " rows are already read");
+		}
+
+		byte[] swap = previousRow;
+		previousRow = currentRow;
+		currentRow = swap;
+
+		int filter = pixelData.readUnsignedByte();
+		pixelData.readFully(currentRow);
+		unfilter(filter);
+
+		convertRow(dst, offset);
+		nextRow++;
+	}
+
+	/**
+	 * Undoes the filter of the current row. For the first row, the previous row is still all zeros, like the PNG
+	 * specification requires.
+	 */
+	private void unfilter(int filter) throws IOException {
+		byte[] row    = currentRow;
+		byte[] prior  = previousRow;
+		int    stride = filterStride;
+
+		switch (filter) {
+			case 0: // None
+				break;
+			case 1: // Sub
+				for (int i = stride; i < row.length; i++) {
+					row[i] += row[i - stride];
+				}
+				break;
+			case 2: // Up
+				for (int i = 0; i < row.length; i++) {
+					row[i] += prior[i];
+				}
+				break;
+			case 3: // Average
+				for (int i = 0; i < row.length; i++) {
+					int left = i >= stride ? row[i - stride] & 0xFF : 0;
+					int up   = prior[i] & 0xFF;
+					row[i] += (byte)((left + up) >> 1);
+				}
+				break;
+			case 4: // Paeth
+				for (int i = 0; i < row.length; i++) {
+					int left    = i >= stride ? row[i - stride] & 0xFF : 0;
+					int up      = prior[i] & 0xFF;
+					int upLeft  = i >= stride ? prior[i - stride] & 0xFF : 0;
+					int p       = left + up - upLeft;
+					int pLeft   = Math.abs(p - left);
+					int pUp     = Math.abs(p - up);
+					int pUpLeft = Math.abs(p - upLeft);
+					row[i] += (byte)(pLeft <= pUp && pLeft <= pUpLeft ? left : pUp <= pUpLeft ? up : upLeft);
+				}
+				break;
+			default:
+				throw new IOException("Invalid filter type " + filter + " in row " + nextRow);
+		}
+	}
+
+	private void convertRow(int[] dst, int offset) {
+		byte[]          row         = currentRow;
+		@Nullable int[] transparent = transparentSamples;
+
+		switch (colorType) {
+			case GRAY:
+				for (int x = 0; x < width; x++) {
+					int sample = getSample(row, x);
+					int alpha  = transparent != null && sample == transparent[0] ? 0 : 0xFF;
+					dst[offset + x] = alpha << 24 | scaleSample(sample) * 0x010101;
+				}
+				break;
+			case INDEXED:
+				//noinspection ConstantConditions // Checked in the constructor
+				int[] palette = this.palette;
+				for (int x = 0; x < width; x++) {
+					dst[offset + x] = palette[getSample(row, x)];
+				}
+				break;
+			case GRAY_ALPHA:
+				for (int x = 0; x < width; x++) {
+					int gray  = scaleSample(getSample(row, x * 2));
+					int alpha = scaleSample(getSample(row, x * 2 + 1));
+					dst[offset + x] = alpha << 24 | gray * 0x010101;
+				}
+				break;
+			case RGB:
+				for (int x = 0; x < width; x++) {
+					int r = getSample(row, x * 3);
+					int g = getSample(row, x * 3 + 1);
+					int b = getSample(row, x * 3 + 2);
+
+					int alpha = transparent != null &&
+					            r == transparent[0] && g == transparent[1] && b == transparent[2] ? 0 : 0xFF;
+					dst[offset + x] = alpha << 24 | scaleSample(r) << 16 | scaleSample(g) << 8 | scaleSample(b);
+				}
+				break;
+			case RGB_ALPHA:
+				for (int x = 0; x < width; x++) {
+					int r = scaleSample(getSample(row, x * 4));
+					int g = scaleSample(getSample(row, x * 4 + 1));
+					int b = scaleSample(getSample(row, x * 4 + 2));
+					int a = scaleSample(getSample(row, x * 4 + 3));
+					dst[offset + x] = a << 24 | r << 16 | g << 8 | b;
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Returns sample {@code i} of the row, in the file's bit depth.
+	 */
+	private int getSample(byte[] row, int i) {
+		switch (bitDepth) {
+			case 8:
+				return row[i] & 0xFF;
+			case 16:
+				return (row[i * 2] & 0xFF) << 8 | row[i * 2 + 1] & 0xFF;
+			default:
+				int samplesPerByte = 8 / bitDepth;
+				int shift          = (samplesPerByte - 1 - i % samplesPerByte) * bitDepth;
+				return (row[i / samplesPerByte] & 0xFF) >> shift & (1 << bitDepth) - 1;
+		}
+	}
+
+	/**
+	 * Scales a sample in the file's bit depth to 8 bits.
+	 */
+	private int scaleSample(int sample) {
+		switch (bitDepth) {
+			case 8:
+				return sample;
+			case 16:
+				return (sample * 255 + 32767) / 65535;
+			default:
+				return sample * 255 / ((1 << bitDepth) - 1);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		inflater.end();
+		in.close();
+	}
+
+	private byte[] readChunk(String expectedType) throws IOException {
+		String type = readChunkHeader();
+		if (!type.equals(expectedType)) {
+			throw new IOException("Expected a " + expectedType + " chunk, found " + type);
+		}
+
+		return readChunkData();
+	}
+
+	private String readChunkHeader() throws IOException {
+		chunkRemaining = in.readInt();
+		if (chunkRemaining < 0) {
+			throw new IOException("Invalid chunk length: " + chunkRemaining);
+		}
+
+		byte[] type = new byte[4];
+		in.readFully(type);
+		return new String(type, StandardCharsets.US_ASCII);
+	}
+
+	private byte[] readChunkData() throws IOException {
+		byte[] data = new byte[chunkRemaining];
+		in.readFully(data);
+		in.readInt(); // CRC
+		chunkRemaining = 0;
+		return data;
+	}
+
+	private static int getInt(byte[] array, int offset) {
+		return (array[offset] & 0xFF) << 24 |
+		       (array[offset + 1] & 0xFF) << 16 |
+		       (array[offset + 2] & 0xFF) << 8 |
+		       array[offset + 3] & 0xFF;
+	}
+
+	private static int getShort(byte[] array, int offset) {
+		return (array[offset] & 0xFF) << 8 | array[offset + 1] & 0xFF;
+	}
+
+	/**
+	 * The concatenated data of consecutive IDAT chunks, starting in the first one.
+	 */
+	private final class IdatInputStream extends InputStream {
+		private boolean ended = false;
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			while (chunkRemaining == 0) {
+				if (ended) {
+					return -1;
+				}
+
+				in.readInt(); // CRC
+				if (!readChunkHeader().equals("IDAT")) {
+					// The rest of the file has no pixel data
+					ended = true;
+					chunkRemaining = 0;
+					return -1;
+				}
+			}
+
+			int n = in.read(b, off, Math.min(len, chunkRemaining));
+			if (n < 0) {
+				throw new EOFException("Unexpected end of IDAT chunk");
+			}
+
+			chunkRemaining -= n;
+			return n;
+		}
+	}
+}
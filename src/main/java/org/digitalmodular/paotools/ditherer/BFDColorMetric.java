@@ -0,0 +1,141 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.ditherer;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * BFD l:c (Luo and Rigg, 1987) color difference.
+ * <p>
+ * The weights depend on the mean chroma and hue of both colors, so little can be reused per input. The candidates
+ * precompute their BFD lightness, chroma and hue, and the hue-dependent terms are evaluated by {@link HueSeries}.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class BFDColorMetric implements ColorMetric {
+	/** The 1:1 ratio, for perceptibility. */
+	public static final BFDColorMetric INSTANCE = new BFDColorMetric(1, 1);
+
+	private static final HueSeries T_SERIES  = new HueSeries(0.627,
+	                                                          new double[]{0.055, -0.040, 0.070, 0.049, -0.015},
+	                                                          new double[]{-254, -136, -32, 114, -103});
+	private static final HueSeries RH_SERIES = new HueSeries(0,
+	                                                          new double[]{-0.260, -0.379, -0.636, 0.226, -0.194},
+	                                                          new double[]{-308, -160, 254, 140, 280});
+
+	private final double invL2;
+	private final double invC2;
+
+	public BFDColorMetric(double lightnessFactor, double chromaFactor) {
+		if (!(lightnessFactor > 0) || !(chromaFactor > 0)) {
+			throw new IllegalArgumentException("Factors must be positive: " + lightnessFactor + ':' + chromaFactor);
+		}
+
+		invL2 = 1 / (lightnessFactor * lightnessFactor);
+		invC2 = 1 / (chromaFactor * chromaFactor);
+	}
+
+	@Override
+	public double distance(ColorInfo input, ColorInfo candidate) {
+		return distance(input.A, bfdLightness(input.labL), input.C, hueDegrees(input),
+		                candidate.A, bfdLightness(candidate.labL), candidate.C, hueDegrees(candidate));
+	}
+
+	private double distance(double alpha1, double l1, double c1, double hue1,
+	                        double alpha2, double l2, double c2, double hue2) {
+		double dAlpha = alpha2 - alpha1;
+		double dL     = l2 - l1;
+		double dC     = c2 - c1;
+		double dHue   = HueSeries.hueDifference(hue1, hue2);
+		double dH     = 2 * Math.sqrt(c1 * c2) * Math.sin(Math.toRadians(dHue / 2));
+
+		double meanC   = (c1 + c2) / 2;
+		double meanHue = HueSeries.meanHue(hue1, hue2, c1 * c2 == 0);
+		double meanC4  = meanC * meanC * meanC * meanC;
+		double g       = Math.sqrt(meanC4 / (meanC4 + 14000));
+		double t       = T_SERIES.evaluate(meanHue);
+		double dc      = 0.035 * meanC / (1 + 0.00365 * meanC) + 0.521;
+		double dh      = dc * (g * t + 1 - g);
+		double rc      = Math.sqrt(meanC4 * meanC * meanC / (meanC4 * meanC * meanC + 7.0e7));
+		double rt      = RH_SERIES.evaluate(meanHue) * rc;
+
+		double cTerm = dC / dc;
+		double hTerm = dH / dh;
+		return dL * dL * invL2 + cTerm * cTerm * invC2 + hTerm * hTerm + rt * cTerm * hTerm + dAlpha * dAlpha;
+	}
+
+	/**
+	 * Returns the BFD lightness, {@code 54.6·log10(Y + 1.5) - 9.6}, with the relative luminance Y (0..100) recovered
+	 * from L*.
+	 */
+	private static double bfdLightness(double labL) {
+		double fy = (labL + 16) / 116;
+		double y  = fy > 6 / 29.0 ? fy * fy * fy : 3 * (6 / 29.0) * (6 / 29.0) * (fy - 4 / 29.0);
+		return 54.6 * Math.log10(y * 100 + 1.5) - 9.6;
+	}
+
+	private static double hueDegrees(ColorInfo info) {
+		return HueSeries.hueDegrees(info.labA, info.labB);
+	}
+
+	@Override
+	public Candidates prepare(ColorInfo[] candidates) {
+		return new LabCandidates(candidates) {
+			private final double[] bfdL = new double[candidates.length];
+			private final double[] hue  = new double[candidates.length];
+
+			{
+				for (int i = 0; i < candidates.length; i++) {
+					bfdL[i] = bfdLightness(candidates[i].labL);
+					hue[i] = hueDegrees(candidates[i]);
+				}
+			}
+
+			@Override
+			public double distance(ColorInfo input, int index) {
+				return BFDColorMetric.this.distance(input.A, bfdLightness(input.labL), input.C, hueDegrees(input),
+				                                    alpha[index], bfdL[index], chroma[index], hue[index]);
+			}
+
+			@Override
+			int scan(ColorInfo input, @Nullable double[] distances) {
+				double inputL   = bfdLightness(input.labL);
+				double inputHue = hueDegrees(input);
+
+				int    bestIndex = -1;
+				double bestDist  = Double.POSITIVE_INFINITY;
+				for (int i = 0; i < bfdL.length; i++) {
+					double dist = BFDColorMetric.this.distance(input.A, inputL, input.C, inputHue,
+					                                           alpha[i], bfdL[i], chroma[i], hue[i]);
+					if (distances != null) {
+						distances[i] = dist;
+					}
+					if (dist < bestDist) {
+						bestDist = dist;
+						bestIndex = i;
+					}
+				}
+
+				return bestIndex;
+			}
+		};
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.ditherer;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * CIE 1976 Delta E: squared Euclidean distance in L*a*b*.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class CIE76ColorMetric implements ColorMetric {
+	public static final CIE76ColorMetric INSTANCE = new CIE76ColorMetric();
+
+	private CIE76ColorMetric() {
+	}
+
+	@Override
+	public double distance(ColorInfo input, ColorInfo candidate) {
+		return distance(input, candidate.A, candidate.labL, candidate.labA, candidate.labB);
+	}
+
+	private static double distance(ColorInfo input, double alpha, double labL, double labA, double labB) {
+		double dAlpha = alpha - input.A;
+		double dL     = labL - input.labL;
+		double da     = labA - input.labA;
+		double db     = labB - input.labB;
+		return dL * dL + da * da + db * db + dAlpha * dAlpha;
+	}
+
+	@Override
+	public Candidates prepare(ColorInfo[] candidates) {
+		return new LabCandidates(candidates) {
+			@Override
+			public double distance(ColorInfo input, int index) {
+				return CIE76ColorMetric.distance(input, alpha[index], labL[index], labA[index], labB[index]);
+			}
+
+			@Override
+			int scan(ColorInfo input, @Nullable double[] distances) {
+				int    bestIndex = -1;
+				double bestDist  = Double.POSITIVE_INFINITY;
+				for (int i = 0; i < labL.length; i++) {
+					double dist = CIE76ColorMetric.distance(input, alpha[i], labL[i], labA[i], labB[i]);
+					if (distances != null) {
+						distances[i] = dist;
+					}
+					if (dist < bestDist) {
+						bestDist = dist;
+						bestIndex = i;
+					}
+				}
+
+				return bestIndex;
+			}
+		};
+	}
+}
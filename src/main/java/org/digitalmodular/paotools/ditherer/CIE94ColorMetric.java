@@ -0,0 +1,99 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.ditherer;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * CIE 1994 Delta E, with the graphic arts constants. The input is the reference color, so the weighting functions are
+ * calculated once per input.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class CIE94ColorMetric implements ColorMetric {
+	public static final CIE94ColorMetric INSTANCE = new CIE94ColorMetric();
+
+	private static final double K1 = 0.045;
+	private static final double K2 = 0.015;
+
+	private CIE94ColorMetric() {
+	}
+
+	@Override
+	public double distance(ColorInfo input, ColorInfo candidate) {
+		double sc = 1 + K1 * input.C;
+		double sh = 1 + K2 * input.C;
+		return distance(input, 1 / (sc * sc), 1 / (sh * sh),
+		                candidate.A, candidate.labL, candidate.labA, candidate.labB, candidate.C);
+	}
+
+	/**
+	 * @param invSC2 the input-side term {@code 1 / SC²}
+	 * @param invSH2 the input-side term {@code 1 / SH²}
+	 */
+	private static double distance(ColorInfo input, double invSC2, double invSH2,
+	                               double alpha, double labL, double labA, double labB, double chroma) {
+		double dAlpha = alpha - input.A;
+		double dL     = labL - input.labL;
+		double da     = labA - input.labA;
+		double db     = labB - input.labB;
+		double dC     = chroma - input.C;
+		double dH2    = Math.max(0, da * da + db * db - dC * dC);
+		return dL * dL + dC * dC * invSC2 + dH2 * invSH2 + dAlpha * dAlpha;
+	}
+
+	@Override
+	public Candidates prepare(ColorInfo[] candidates) {
+		return new LabCandidates(candidates) {
+			@Override
+			public double distance(ColorInfo input, int index) {
+				double sc = 1 + K1 * input.C;
+				double sh = 1 + K2 * input.C;
+				return CIE94ColorMetric.distance(input, 1 / (sc * sc), 1 / (sh * sh),
+				                                 alpha[index], labL[index], labA[index], labB[index], chroma[index]);
+			}
+
+			@Override
+			int scan(ColorInfo input, @Nullable double[] distances) {
+				double sc     = 1 + K1 * input.C;
+				double sh     = 1 + K2 * input.C;
+				double invSC2 = 1 / (sc * sc);
+				double invSH2 = 1 / (sh * sh);
+
+				int    bestIndex = -1;
+				double bestDist  = Double.POSITIVE_INFINITY;
+				for (int i = 0; i < labL.length; i++) {
+					double dist = CIE94ColorMetric.distance(input, invSC2, invSH2,
+					                                        alpha[i], labL[i], labA[i], labB[i], chroma[i]);
+					if (distances != null) {
+						distances[i] = dist;
+					}
+					if (dist < bestDist) {
+						bestDist = dist;
+						bestIndex = i;
+					}
+				}
+
+				return bestIndex;
+			}
+		};
+	}
+}
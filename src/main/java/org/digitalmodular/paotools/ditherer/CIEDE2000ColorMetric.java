@@ -0,0 +1,138 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.ditherer;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * CIEDE2000 Delta E (Sharma, Wu and Dalal, 2005), with kL = kC = kH = 1.
+ * <p>
+ * Most of the formula depends on both colors, through the mean chroma. The candidates precompute what doesn't: L*,
+ * a*, b* and C*ab, and the input's b*² is calculated once per input. The hue-dependent weighting function is
+ * evaluated by {@link HueSeries}, leaving a few square roots, two arctangents, an exponential and a few sines and
+ * cosines per pair.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class CIEDE2000ColorMetric implements ColorMetric {
+	public static final CIEDE2000ColorMetric INSTANCE = new CIEDE2000ColorMetric();
+
+	private static final double POW25_7 = 6103515625.0; // 25^7
+
+	private static final HueSeries T_SERIES = new HueSeries(1,
+	                                                         new double[]{-0.17, 0.24, 0.32, -0.20},
+	                                                         new double[]{-30, 0, 6, -63});
+
+	private CIEDE2000ColorMetric() {
+	}
+
+	@Override
+	public double distance(ColorInfo input, ColorInfo candidate) {
+		return distance(input.A, input.labL, input.labA, input.labB * input.labB, input.labB, input.C,
+		                candidate.A, candidate.labL, candidate.labA, candidate.labB, candidate.C);
+	}
+
+	/**
+	 * @param bSquared1 input-side b*²
+	 */
+	private static double distance(double alpha1, double l1, double a1, double bSquared1, double b1, double c1,
+	                               double alpha2, double l2, double a2, double b2, double c2) {
+		double dAlpha = alpha2 - alpha1;
+
+		double meanC  = (c1 + c2) / 2;
+		double meanC7 = pow7(meanC);
+		double g      = 0.5 * (1 - Math.sqrt(meanC7 / (meanC7 + POW25_7)));
+
+		double a1p = (1 + g) * a1;
+		double a2p = (1 + g) * a2;
+		double c1p = Math.sqrt(a1p * a1p + bSquared1);
+		double c2p = Math.sqrt(a2p * a2p + b2 * b2);
+		double h1p = HueSeries.hueDegrees(a1p, b1);
+		double h2p = HueSeries.hueDegrees(a2p, b2);
+
+		boolean achromatic = c1p * c2p == 0;
+
+		double dLp = l2 - l1;
+		double dCp = c2p - c1p;
+		double dhp = achromatic ? 0 : HueSeries.hueDifference(h1p, h2p);
+		double dHp = 2 * Math.sqrt(c1p * c2p) * Math.sin(Math.toRadians(dhp / 2));
+
+		double meanLp = (l1 + l2) / 2;
+		double meanCp = (c1p + c2p) / 2;
+		double meanHp = HueSeries.meanHue(h1p, h2p, achromatic);
+
+		double t        = T_SERIES.evaluate(meanHp);
+		double hueShift = (meanHp - 275) / 25;
+		double dTheta   = 30 * Math.exp(-hueShift * hueShift);
+		double meanCp7  = pow7(meanCp);
+		double rc       = 2 * Math.sqrt(meanCp7 / (meanCp7 + POW25_7));
+		double lShift   = (meanLp - 50) * (meanLp - 50);
+		double sl       = 1 + 0.015 * lShift / Math.sqrt(20 + lShift);
+		double sc       = 1 + 0.045 * meanCp;
+		double sh       = 1 + 0.015 * meanCp * t;
+		double rt       = -Math.sin(Math.toRadians(2 * dTheta)) * rc;
+
+		double lTerm = dLp / sl;
+		double cTerm = dCp / sc;
+		double hTerm = dHp / sh;
+		return lTerm * lTerm + cTerm * cTerm + hTerm * hTerm + rt * cTerm * hTerm + dAlpha * dAlpha;
+	}
+
+	private static double pow7(double value) {
+		double value2 = value * value;
+		return value2 * value2 * value2 * value;
+	}
+
+	@Override
+	public Candidates prepare(ColorInfo[] candidates) {
+		return new LabCandidates(candidates) {
+			@Override
+			public double distance(ColorInfo input, int index) {
+				return CIEDE2000ColorMetric.distance(input.A, input.labL, input.labA, input.labB * input.labB,
+				                                     input.labB, input.C,
+				                                     alpha[index], labL[index], labA[index], labB[index],
+				                                     chroma[index]);
+			}
+
+			@Override
+			int scan(ColorInfo input, @Nullable double[] distances) {
+				double bSquared = input.labB * input.labB;
+
+				int    bestIndex = -1;
+				double bestDist  = Double.POSITIVE_INFINITY;
+				for (int i = 0; i < labL.length; i++) {
+					double dist = CIEDE2000ColorMetric.distance(input.A, input.labL, input.labA, bSquared,
+					                                            input.labB, input.C,
+					                                            alpha[i], labL[i], labA[i], labB[i], chroma[i]);
+					if (distances != null) {
+						distances[i] = dist;
+					}
+					if (dist < bestDist) {
+						bestDist = dist;
+						bestIndex = i;
+					}
+				}
+
+				return bestIndex;
+			}
+		};
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.ditherer;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * CMC l:c (1984) color difference. The input is the reference color, so the weighting functions (which contain the
+ * trigonometry) are calculated once per input.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class CMCColorMetric implements ColorMetric {
+	/** The 2:1 ratio, for acceptability. */
+	public static final CMCColorMetric INSTANCE = new CMCColorMetric(2, 1);
+
+	private final double lightnessFactor;
+	private final double chromaFactor;
+
+	public CMCColorMetric(double lightnessFactor, double chromaFactor) {
+		if (!(lightnessFactor > 0) || !(chromaFactor > 0)) {
+			throw new IllegalArgumentException("Factors must be positive: " + lightnessFactor + ':' + chromaFactor);
+		}
+
+		this.lightnessFactor = lightnessFactor;
+		this.chromaFactor = chromaFactor;
+	}
+
+	@Override
+	public double distance(ColorInfo input, ColorInfo candidate) {
+		return distance(input, invSL2(input.labL), invSC2(input.C), invSH2(input.C, hueDegrees(input)),
+		                candidate.A, candidate.labL, candidate.labA, candidate.labB, candidate.C);
+	}
+
+	private static double distance(ColorInfo input, double invSL2, double invSC2, double invSH2,
+	                               double alpha, double labL, double labA, double labB, double chroma) {
+		double dAlpha = alpha - input.A;
+		double dL     = labL - input.labL;
+		double da     = labA - input.labA;
+		double db     = labB - input.labB;
+		double dC     = chroma - input.C;
+		double dH2    = Math.max(0, da * da + db * db - dC * dC);
+		return dL * dL * invSL2 + dC * dC * invSC2 + dH2 * invSH2 + dAlpha * dAlpha;
+	}
+
+	/** Returns {@code 1 / (l·SL)²} of the reference color. */
+	private double invSL2(double labL) {
+		double sl = labL < 16 ? 0.511 : 0.040975 * labL / (1 + 0.01765 * labL);
+		sl *= lightnessFactor;
+		return 1 / (sl * sl);
+	}
+
+	/** Returns {@code 1 / (c·SC)²} of the reference color. */
+	private double invSC2(double chroma) {
+		double sc = sc(chroma) * chromaFactor;
+		return 1 / (sc * sc);
+	}
+
+	/** Returns {@code 1 / SH²} of the reference color. */
+	private static double invSH2(double chroma, double hue) {
+		double c4 = chroma * chroma * chroma * chroma;
+		double f  = Math.sqrt(c4 / (c4 + 1900));
+		double t  = hue >= 164 && hue <= 345 ?
+		            0.56 + Math.abs(0.2 * Math.cos(Math.toRadians(hue + 168))) :
+		            0.36 + Math.abs(0.4 * Math.cos(Math.toRadians(hue + 35)));
+		double sh = sc(chroma) * (f * t + 1 - f);
+		return 1 / (sh * sh);
+	}
+
+	private static double sc(double chroma) {
+		return 0.0638 * chroma / (1 + 0.0131 * chroma) + 0.638;
+	}
+
+	private static double hueDegrees(ColorInfo info) {
+		return HueSeries.hueDegrees(info.labA, info.labB);
+	}
+
+	@Override
+	public Candidates prepare(ColorInfo[] candidates) {
+		return new LabCandidates(candidates) {
+			@Override
+			public double distance(ColorInfo input, int index) {
+				return CMCColorMetric.distance(input,
+				                               invSL2(input.labL), invSC2(input.C), invSH2(input.C, hueDegrees(input)),
+				                               alpha[index], labL[index], labA[index], labB[index], chroma[index]);
+			}
+
+			@Override
+			int scan(ColorInfo input, @Nullable double[] distances) {
+				double invSL2 = invSL2(input.labL);
+				double invSC2 = invSC2(input.C);
+				double invSH2 = invSH2(input.C, hueDegrees(input));
+
+				int    bestIndex = -1;
+				double bestDist  = Double.POSITIVE_INFINITY;
+				for (int i = 0; i < labL.length; i++) {
+					double dist = CMCColorMetric.distance(input, invSL2, invSC2, invSH2,
+					                                      alpha[i], labL[i], labA[i], labB[i], chroma[i]);
+					if (distances != null) {
+						distances[i] = dist;
+					}
+					if (dist < bestDist) {
+						bestDist = dist;
+						bestIndex = i;
+					}
+				}
+
+				return bestIndex;
+			}
+		};
+	}
+}
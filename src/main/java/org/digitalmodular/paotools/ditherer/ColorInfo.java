@@ -1,36 +1,53 @@
 package org.digitalmodular.paotools.ditherer;
 
-import org.digitalmodular.paotools.common.ColorUtilities;
+import org.digitalmodular.paotools.common.ColorSpaceTables;
 
 /**
+ * The properties of a color that the color compare methods use.
+ * <p>
+ * Instances are immutable, so they can be shared. Use {@link #valueOf(int)} to get a shared instance from the
+ * {@link ColorInfoCache}.
+ *
  * @author Zom-B
  */
 // Created 2020-11-09
-public class ColorInfo {
-	public static class LAB {
-		float L, a, b;
-	}
-
+// Changed 2026-10-17 Made immutable, flattened L*a*b*
+public final class ColorInfo {
 	// 32-bit ARGB, as it is saved/loaded with a file:
-	public int rgb;
+	public final int rgb;
 
-	public int A, R, G, B;
+	public final int A, R, G, B;
 
 	// Luma in 0..255000 range:
-	public int luma;
+	public final int luma;
 
 	// ARGB, gamma corrected, all values in 0..1 range:
-	public float[] gammac = new float[4];
+	public final float gammacA, gammacR, gammacG, gammacB;
 
 	// CIE XYZ value
-	public float X, Y, Z;
+	public final float X, Y, Z;
 
 	// CIE L*a*b* value
-	public LAB   lab;
-	public float C, h;
+	public final float labL, labA, labB;
+	public final float C, h;
+
+	/** The illuminant the XYZ and L*a*b* values were calculated with. */
+	final float[] illuminant;
+
+	/**
+	 * Returns the shared instance for a color, with the illuminant of the current {@link Globals#ColorComparing}.
+	 */
+	public static ColorInfo valueOf(int rgb) {
+		return ColorInfoCache.shared().get(rgb);
+	}
 
 	public ColorInfo(int rgb) {
+		this(rgb, Globals.GetIlluminant());
+	}
+
+	ColorInfo(int rgb, float[] illuminant) {
 		this.rgb = rgb;
+		this.illuminant = illuminant;
 		A = rgb >>> 24 & 0xFF;
 		R = rgb >> 16 & 0xFF;
 		G = rgb >> 8 & 0xFF;
@@ -42,34 +59,33 @@ public class ColorInfo {
 		float Gn = G / 255.0f;
 		float Bn = B / 255.0f;
 
-		gammac[0] = A / 127.0f;
-		gammac[1] = ColorUtilities.fromSRGB(Rn);
-		gammac[2] = ColorUtilities.fromSRGB(Gn);
-		gammac[3] = ColorUtilities.fromSRGB(Bn);
+		gammacA = A / 127.0f;
+		gammacR = ColorSpaceTables.srgbToLinear(R);
+		gammacG = ColorSpaceTables.srgbToLinear(G);
+		gammacB = ColorSpaceTables.srgbToLinear(B);
 
-		// Use Profile illuminant - D65 */
-		float[] illum = Globals.GetIlluminant();
 		// float Rn = gammac.r, Gn = gammac.g, Bn = gammac.b;
-		X = (illum[0]) * Rn + (illum[3]) * Gn + (illum[6]) * Bn;
-		Y = (illum[1]) * Rn + (illum[4]) * Gn + (illum[7]) * Bn;
-		Z = (illum[2]) * Rn + (illum[5]) * Gn + (illum[8]) * Bn;
-
-		float Xn         = 1.0f / (illum[0] + illum[1] + illum[2]);
-		float Yn         = 1.0f / (illum[3] + illum[4] + illum[5]);
-		float Zn         = 1.0f / (illum[6] + illum[7] + illum[8]);
-		float x          = X * Xn;
-		float y          = Y * Yn;
-		float z          = Z * Zn;
+		X = (illuminant[0]) * Rn + (illuminant[3]) * Gn + (illuminant[6]) * Bn;
+		Y = (illuminant[1]) * Rn + (illuminant[4]) * Gn + (illuminant[7]) * Bn;
+		Z = (illuminant[2]) * Rn + (illuminant[5]) * Gn + (illuminant[8]) * Bn;
+
+		float Xn = 1.0f / (illuminant[0] + illuminant[1] + illuminant[2]);
+		float Yn = 1.0f / (illuminant[3] + illuminant[4] + illuminant[5]);
+		float Zn = 1.0f / (illuminant[6] + illuminant[7] + illuminant[8]);
+		float x1 = labF(X * Xn);
+		float y1 = labF(Y * Yn);
+		float z1 = labF(Z * Zn);
+		labL = (29 * 4) * y1 - (4 * 4);
+		labA = (500 * (x1 - y1));
+		labB = (200 * (y1 - z1));
+
+		C = (float)Math.sqrt(labA * labA + labB * labB);
+		h = (float)Math.atan2(labB, labA);
+	}
+
+	private static float labF(float t) {
 		float threshold1 = (6 * 6 * 6.0f) / (29 * 29 * 29.0f);
 		float threshold2 = (29 * 29.0f) / (6 * 6 * 3.0f);
-		float x1         = (x > threshold1) ? (float)Math.pow(x, 1.0f / 3.0f) : (threshold2 * x) + (4 / 29.0f);
-		float y1         = (y > threshold1) ? (float)Math.pow(y, 1.0f / 3.0f) : (threshold2 * y) + (4 / 29.0f);
-		float z1         = (z > threshold1) ? (float)Math.pow(z, 1.0f / 3.0f) : (threshold2 * z) + (4 / 29.0f);
-		lab.L = (29 * 4) * y1 - (4 * 4);
-		lab.a = (500 * (x1 - y1));
-		lab.b = (200 * (y1 - z1));
-
-		C = (float)Math.sqrt(lab.a * lab.a + lab.b + lab.b);
-		h = (float)Math.atan2(lab.b, lab.a);
+		return t > threshold1 ? (float)Math.cbrt(t) : (threshold2 * t) + (4 / 29.0f);
 	}
 }
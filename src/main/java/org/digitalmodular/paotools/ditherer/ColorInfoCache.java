@@ -0,0 +1,106 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.ditherer;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe interning cache of {@link ColorInfo} instances, keyed by 32-bit ARGB.
+ * <p>
+ * The cache is direct-mapped: every color has one slot, and a color that maps to an occupied slot evicts the previous
+ * color. Lookups and insertions are a single atomic read or write, without locking. Two threads that miss on the same
+ * color both create an instance; the values are identical, and one of them stays in the cache.
+ * <p>
+ * An entry only hits when it was created with the illuminant of the current {@link Globals#ColorComparing}, so
+ * changing the method never returns stale values.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class ColorInfoCache {
+	private static final ColorInfoCache SHARED = new ColorInfoCache(1 << 16);
+
+	private final AtomicReferenceArray<ColorInfo> entries;
+	private final int                             mask;
+
+	private final LongAdder hits   = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	public static ColorInfoCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * @param capacity the number of slots, rounded up to a power of two
+	 */
+	public ColorInfoCache(int capacity) {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("'capacity' out of range (0, " + (1 << 30) + "]: " + capacity);
+		}
+
+		int size = Integer.highestOneBit(capacity - 1) << 1;
+		entries = new AtomicReferenceArray<>(Math.max(1, size));
+		mask = entries.length() - 1;
+	}
+
+	public ColorInfo get(int rgb) {
+		float[] illuminant = Globals.GetIlluminant();
+		int     slot       = hash(rgb) & mask;
+
+		ColorInfo info = entries.get(slot);
+		if (info != null && info.rgb == rgb && info.illuminant == illuminant) {
+			hits.increment();
+			return info;
+		}
+
+		misses.increment();
+		info = new ColorInfo(rgb, illuminant);
+		entries.set(slot, info);
+		return info;
+	}
+
+	public void clear() {
+		for (int i = 0; i < entries.length(); i++) {
+			entries.set(i, null);
+		}
+	}
+
+	public int capacity() {
+		return entries.length();
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Spreads the bits of a color over the slot index, so colors that differ in any channel (or only in alpha) map to
+	 * different slots.
+	 */
+	private static int hash(int rgb) {
+		int h = rgb * 0x9E3779B9;
+		return h ^ h >>> 16;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.ditherer;
+
+/**
+ * A color difference, for one of the {@link Globals.ColorCompareMethod}s.
+ * <p>
+ * All metrics return the <em>squared</em> difference, which orders the same as the difference itself and needs no
+ * square root. The alpha difference (0..255) is added as a squared term, like the coordinates of the combination tree
+ * in {@link Palette}.
+ * <p>
+ * To compare one color against many, {@link #prepare(ColorInfo[]) prepare} the candidates once. The prepared
+ * candidates hold the candidate-side terms of the formula, and each call calculates the input-side terms once for
+ * all candidates. None of the methods allocate, and all of them are thread-safe.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public interface ColorMetric {
+	/**
+	 * Returns the squared difference between a color and a candidate. Some metrics aren't symmetric; the input is the
+	 * reference color.
+	 */
+	double distance(ColorInfo input, ColorInfo candidate);
+
+	Candidates prepare(ColorInfo[] candidates);
+
+	/**
+	 * Candidate colors, with their terms of the metric precomputed.
+	 */
+	interface Candidates {
+		int size();
+
+		double distance(ColorInfo input, int index);
+
+		/**
+		 * Writes the distances from the input to all candidates to {@code distances}, which needs at least
+		 * {@link #size()} elements.
+		 */
+		void distances(ColorInfo input, double[] distances);
+
+		/**
+		 * Returns the index of the nearest candidate, the lowest index on ties, or -1 if there are no candidates.
+		 */
+		int nearest(ColorInfo input);
+	}
+
+	/**
+	 * Returns the metric of a compare method.
+	 *
+	 * @throws UnsupportedOperationException for {@link Globals.ColorCompareMethod#Compare_fparser}, which needs a
+	 *                                       user-supplied formula
+	 */
+	static ColorMetric forMethod(Globals.ColorCompareMethod method) {
+		switch (method) {
+			case Compare_RGB:
+				return RGBColorMetric.INSTANCE;
+			case Compare_CIE76_DeltaE:
+				return CIE76ColorMetric.INSTANCE;
+			case Compare_CIE94_DeltaE:
+				return CIE94ColorMetric.INSTANCE;
+			case Compare_CMC_lc:
+				return CMCColorMetric.INSTANCE;
+			case Compare_BFD_lc:
+				return BFDColorMetric.INSTANCE;
+			case Compare_CIEDE2000_DeltaE:
+				return CIEDE2000ColorMetric.INSTANCE;
+			default:
+				throw new UnsupportedOperationException("No color metric for " + method);
+		}
+	}
+}
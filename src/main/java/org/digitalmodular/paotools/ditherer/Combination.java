@@ -0,0 +1,103 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.ditherer;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A mix of palette colors, and the color it looks like when dithered: the gamma-corrected average.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class Combination {
+	/** Fewer colors first, then the lowest indices. Compares the indices in place, unlike {@link #getIndices()}. */
+	static final Comparator<Combination> SIZE_THEN_INDICES = (a, b) -> {
+		if (a.indices.length != b.indices.length) {
+			return Integer.compare(a.indices.length, b.indices.length);
+		}
+
+		return Arrays.compare(a.indices, b.indices);
+	};
+
+	private final int[] indices;
+	private final int   mean;
+	private final int   contrast;
+
+	/**
+	 * @param indices  palette indices, possibly repeated, sorted by luma. The array is copied.
+	 * @param mean     the gamma-corrected average, in ARGB
+	 * @param contrast the luma difference between the lightest and darkest color, in 0..255000
+	 */
+	public Combination(int[] indices, int mean, int contrast) {
+		if (indices.length == 0) {
+			throw new IllegalArgumentException("Empty combination");
+		}
+
+		this.indices = indices.clone();
+		this.mean = mean;
+		this.contrast = contrast;
+	}
+
+	public int size() {
+		return indices.length;
+	}
+
+	public int get(int position) {
+		return indices[position];
+	}
+
+	public int[] getIndices() {
+		return indices.clone();
+	}
+
+	public int getMean() {
+		return mean;
+	}
+
+	public int getContrast() {
+		return contrast;
+	}
+
+	public MixingPlan toMixingPlan() {
+		return new MixingPlan(indices);
+	}
+
+	/**
+	 * Returns whether this is a better representative of its mean color than another: fewer colors, then less
+	 * contrast, then the lowest indices. This is a total order, so the choice doesn't depend on the order of
+	 * generation.
+	 */
+	boolean isBetterThan(Combination other) {
+		if (indices.length != other.indices.length) {
+			return indices.length < other.indices.length;
+		} else if (contrast != other.contrast) {
+			return contrast < other.contrast;
+		}
+
+		return Arrays.compare(indices, other.indices) < 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s #%08X", Arrays.toString(indices), mean);
+	}
+}
@@ -0,0 +1,394 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.ditherer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.paotools.common.ColorSpaceTables;
+import org.digitalmodular.paotools.common.ColorUtilities;
+
+/**
+ * Enumerates the mixes of up to {@link #getMaxColors()} palette colors, for Yliluoma's algorithm 1, and populates a
+ * {@link Palette} with them.
+ * <p>
+ * A mix is a multiset: a color can appear several times, to weigh it more. Mixes whose colors are too far apart in
+ * luma are rejected (see {@link #setContrastLimit(double)}), because they dither into visible patterns. Mixes whose
+ * gamma-corrected averages are within {@link #getDuplicateTolerance()} of each other are near-duplicates, and only the
+ * best one (see {@link Combination#isBetterThan(Combination)}) is kept. The result doesn't depend on the number of
+ * threads.
+ * <p>
+ * Enumeration runs in parallel, one task per first color. The search space grows quickly (for 40 colors and 4 per
+ * mix, there are 135,750 mixes), so with {@link #setCacheDirectory(Path)} the result is cached on disk, per palette and
+ * parameters.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public class CombinationGenerator {
+	private static final int FILE_MAGIC   = 0x50414F43; // "PAOC"
+	private static final int FILE_VERSION = 1;
+
+	private static final int MAX_PALETTE_SIZE = 256;
+
+	private final int[]       palette;
+	private final ColorInfo[] paletteInfos;
+	private final float[][]   linearPalette;
+
+	private           int    maxColors          = 4;
+	private           double contrastLimit      = -1;
+	private           int    duplicateTolerance = 1;
+	private @Nullable Path   cacheDirectory     = null;
+
+	/**
+	 * @param palette the palette colors, in ARGB. The array is copied.
+	 */
+	public CombinationGenerator(int[] palette) {
+		if (palette.length == 0 || palette.length > MAX_PALETTE_SIZE) {
+			throw new IllegalArgumentException(
+					"'palette' size out of range [1, " + MAX_PALETTE_SIZE + "]: " + palette.length);
+		}
+
+		this.palette = palette.clone();
+
+		paletteInfos = new ColorInfo[palette.length];
+		linearPalette = new float[palette.length][4];
+		for (int i = 0; i < palette.length; i++) {
+			int argb = palette[i];
+			paletteInfos[i] = new ColorInfo(argb);
+			linearPalette[i][0] = (argb >>> 24) / 255.0f;
+			linearPalette[i][1] = ColorSpaceTables.srgbToLinear(argb >> 16 & 0xFF);
+			linearPalette[i][2] = ColorSpaceTables.srgbToLinear(argb >> 8 & 0xFF);
+			linearPalette[i][3] = ColorSpaceTables.srgbToLinear(argb & 0xFF);
+		}
+	}
+
+	public int getMaxColors() {
+		return maxColors;
+	}
+
+	/**
+	 * Sets the largest number of colors in a mix, counting repeats.
+	 */
+	public void setMaxColors(int maxColors) {
+		if (maxColors < 1 || maxColors > 255) {
+			throw new IllegalArgumentException("'maxColors' out of range [1, 255]: " + maxColors);
+		}
+
+		this.maxColors = maxColors;
+	}
+
+	public double getContrastLimit() {
+		return contrastLimit;
+	}
+
+	/**
+	 * Sets the largest luma difference between the colors of a mix, as a fraction of the full range [0, 1]. A negative
+	 * value (the default) means unlimited.
+	 */
+	public void setContrastLimit(double contrastLimit) {
+		this.contrastLimit = contrastLimit;
+	}
+
+	public int getDuplicateTolerance() {
+		return duplicateTolerance;
+	}
+
+	/**
+	 * Sets the size of the cells, in 8-bit sRGB steps per channel, in which two averages count as near-duplicates. 1
+	 * (the default) only merges averages that round to the same color.
+	 */
+	public void setDuplicateTolerance(int duplicateTolerance) {
+		if (duplicateTolerance < 1 || duplicateTolerance > 256) {
+			throw new IllegalArgumentException("'duplicateTolerance' out of range [1, 256]: " + duplicateTolerance);
+		}
+
+		this.duplicateTolerance = duplicateTolerance;
+	}
+
+	public @Nullable Path getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	/**
+	 * Sets the directory to cache generated combinations in, or {@code null} (the default) not to cache.
+	 */
+	public void setCacheDirectory(@Nullable Path cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * Fills {@link Palette#Combinations} and {@link Palette#CombinationMetas}, and builds the search index over the
+	 * averages.
+	 */
+	public void populate(Palette target) {
+		Combination[] combinations = generate();
+
+		ColorInfo[] metas = new ColorInfo[combinations.length];
+		for (int i = 0; i < combinations.length; i++) {
+			metas[i] = ColorInfo.valueOf(combinations[i].getMean());
+		}
+
+		target.Combinations = combinations;
+		target.CombinationMetas = metas;
+		target.BuildCombinationTree();
+	}
+
+	/**
+	 * Returns the combinations, from the cache if possible, ordered by size and then by indices.
+	 */
+	public Combination[] generate() {
+		if (cacheDirectory == null) {
+			return enumerate();
+		}
+
+		Path file = cacheDirectory.resolve(getFilename());
+		if (Files.exists(file)) {
+			try {
+				return load(file);
+			} catch (IOException ex) {
+				Logger.getLogger(CombinationGenerator.class.getName())
+				      .log(Level.WARNING, "Can't use the combination cache, regenerating", ex);
+			}
+		}
+
+		Combination[] combinations = enumerate();
+
+		try {
+			Files.createDirectories(cacheDirectory);
+			save(file, combinations);
+		} catch (IOException ex) {
+			Logger.getLogger(CombinationGenerator.class.getName())
+			      .log(Level.WARNING, "Can't write the combination cache", ex);
+		}
+
+		return combinations;
+	}
+
+	private Combination[] enumerate() {
+		int maxContrast = contrastLimit < 0 ? Integer.MAX_VALUE : (int)Math.round(contrastLimit * 255000);
+
+		// Keyed by the quantized average. Merging keeps the better one, which makes the result deterministic.
+		ConcurrentHashMap<Integer, Combination> unique = new ConcurrentHashMap<>(4096);
+
+		IntStream.range(0, palette.length).parallel().forEach(first -> {
+			int[]   stack = new int[maxColors];
+			float[] sum   = new float[4];
+
+			stack[0] = first;
+			for (int c = 0; c < 4; c++) {
+				sum[c] = linearPalette[first][c];
+			}
+
+			int luma = paletteInfos[first].luma;
+			enumerate(stack, 1, sum, luma, luma, maxContrast, unique);
+		});
+
+		Combination[] combinations = unique.values().toArray(new Combination[0]);
+		Arrays.sort(combinations, Combination.SIZE_THEN_INDICES);
+		return combinations;
+	}
+
+	/**
+	 * Adds the mix in {@code stack[0..depth)} and recursively all mixes that extend it with colors of the same or a
+	 * higher index.
+	 */
+	private void enumerate(int[] stack, int depth, float[] sum, int minLuma, int maxLuma, int maxContrast,
+	                       ConcurrentHashMap<Integer, Combination> unique) {
+		int mean = toMean(sum, depth);
+		int key  = quantize(mean);
+
+		Combination existing = unique.get(key);
+		if (existing == null || existing.size() >= depth) {
+			Combination combination = makeCombination(stack, depth, mean, maxLuma - minLuma);
+			unique.merge(key, combination, (a, b) -> b.isBetterThan(a) ? b : a);
+		}
+
+		if (depth == stack.length) {
+			return;
+		}
+
+		for (int next = stack[depth - 1]; next < palette.length; next++) {
+			int luma       = paletteInfos[next].luma;
+			int newMinLuma = Math.min(minLuma, luma);
+			int newMaxLuma = Math.max(maxLuma, luma);
+			if (newMaxLuma - newMinLuma > maxContrast) {
+				continue;
+			}
+
+			stack[depth] = next;
+			for (int c = 0; c < 4; c++) {
+				sum[c] += linearPalette[next][c];
+			}
+
+			enumerate(stack, depth + 1, sum, newMinLuma, newMaxLuma, maxContrast, unique);
+
+			for (int c = 0; c < 4; c++) {
+				sum[c] -= linearPalette[next][c];
+			}
+		}
+	}
+
+	private Combination makeCombination(int[] stack, int depth, int mean, int contrast) {
+		// Sort by luma, as mixing plans are
+		Integer[] sorted = new Integer[depth];
+		for (int i = 0; i < depth; i++) {
+			sorted[i] = stack[i];
+		}
+
+		Arrays.sort(sorted, Comparator.comparingInt((Integer index) -> paletteInfos[index].luma)
+		                              .thenComparingInt(index -> index));
+
+		int[] indices = new int[depth];
+		for (int i = 0; i < depth; i++) {
+			indices[i] = sorted[i];
+		}
+
+		return new Combination(indices, mean, contrast);
+	}
+
+	private static int toMean(float[] sum, int count) {
+		int a = Math.round(sum[0] / count * 255);
+		int r = Math.round(ColorUtilities.toSRGB(sum[1] / count) * 255);
+		int g = Math.round(ColorUtilities.toSRGB(sum[2] / count) * 255);
+		int b = Math.round(ColorUtilities.toSRGB(sum[3] / count) * 255);
+		return a << 24 | r << 16 | g << 8 | b;
+	}
+
+	private int quantize(int argb) {
+		int a = (argb >>> 24) / duplicateTolerance;
+		int r = (argb >> 16 & 0xFF) / duplicateTolerance;
+		int g = (argb >> 8 & 0xFF) / duplicateTolerance;
+		int b = (argb & 0xFF) / duplicateTolerance;
+		return a << 24 | r << 16 | g << 8 | b;
+	}
+
+	private void save(Path file, Combination[] combinations) throws IOException {
+		Logger.getLogger(CombinationGenerator.class.getName()).log(Level.INFO, "Saving combinations {0}", file);
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file))))) {
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(FILE_VERSION);
+			writeParameters(out);
+
+			out.writeInt(combinations.length);
+			for (Combination combination : combinations) {
+				out.writeByte(combination.size());
+				for (int i = 0; i < combination.size(); i++) {
+					out.writeByte(combination.get(i));
+				}
+				out.writeInt(combination.getMean());
+				out.writeInt(combination.getContrast());
+			}
+		}
+	}
+
+	private Combination[] load(Path file) throws IOException {
+		Logger.getLogger(CombinationGenerator.class.getName()).log(Level.INFO, "Loading combinations {0}", file);
+
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+			if (in.readInt() != FILE_MAGIC) {
+				throw new IOException("Not a combination file: " + file);
+			}
+			if (in.readInt() != FILE_VERSION) {
+				throw new IOException("Unsupported combination file version: " + file);
+			}
+
+			if (!Arrays.equals(readParameters(in), getParameters())) {
+				throw new IOException("Combinations were generated for different parameters: " + file);
+			}
+
+			Combination[] combinations = new Combination[in.readInt()];
+			for (int i = 0; i < combinations.length; i++) {
+				int[] indices = new int[in.readUnsignedByte()];
+				for (int j = 0; j < indices.length; j++) {
+					indices[j] = in.readUnsignedByte();
+					if (indices[j] >= palette.length) {
+						throw new IOException("Palette index out of range: " + file);
+					}
+				}
+
+				int mean     = in.readInt();
+				int contrast = in.readInt();
+				combinations[i] = new Combination(indices, mean, contrast);
+			}
+
+			return combinations;
+		}
+	}
+
+	private String getFilename() {
+		return String.format("combinations-%08x.bin.gz", Arrays.hashCode(getParameters()));
+	}
+
+	/**
+	 * Flattens everything the combinations depend on into an array, for storage and comparison.
+	 */
+	private int[] getParameters() {
+		int[] parameters = Arrays.copyOf(palette, palette.length + 5);
+
+		int p = palette.length;
+		parameters[p++] = maxColors;
+		parameters[p++] = (int)(Double.doubleToLongBits(contrastLimit) >>> 32);
+		parameters[p++] = (int)Double.doubleToLongBits(contrastLimit);
+		parameters[p++] = duplicateTolerance;
+		parameters[p] = palette.length;
+		return parameters;
+	}
+
+	private void writeParameters(DataOutputStream out) throws IOException {
+		int[] parameters = getParameters();
+		out.writeInt(parameters.length);
+		for (int parameter : parameters) {
+			out.writeInt(parameter);
+		}
+	}
+
+	private static int[] readParameters(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > MAX_PALETTE_SIZE + 5) {
+			throw new IOException("Corrupt parameters: " + length);
+		}
+
+		int[] parameters = new int[length];
+		for (int i = 0; i < length; i++) {
+			parameters[i] = in.readInt();
+		}
+
+		return parameters;
+	}
+}
@@ -5,7 +5,7 @@ package org.digitalmodular.paotools.ditherer;
  */
 // Created 2020-11-14
 public class Globals {
-	private enum ColorCompareMethod {
+	public enum ColorCompareMethod {
 		Compare_RGB,
 		Compare_CIE76_DeltaE,
 		Compare_CIE94_DeltaE,
@@ -15,7 +15,7 @@ public class Globals {
 		Compare_fparser
 	}
 
-	public static ColorCompareMethod ColorComparing;
+	public static ColorCompareMethod ColorComparing = ColorCompareMethod.Compare_RGB;
 
 	private static final float[][] ILLUMINANTS =
 			{{ // CIE C illuminant
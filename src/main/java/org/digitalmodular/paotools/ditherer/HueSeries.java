@@ -0,0 +1,116 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.ditherer;
+
+/**
+ * A hue-dependent weighting function of the form {@code c + Σ a[k]·cos(k·h + φ[k])}, for k = 1..n.
+ * <p>
+ * The color difference formulas evaluate one of these for every pair of colors. Instead of one cosine per term, this
+ * takes the cosine and sine of the hue once and finds the multiples by recurrence.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+final class HueSeries {
+	private final double   constant;
+	private final double[] cosTerms;
+	private final double[] sinTerms;
+
+	/**
+	 * @param amplitudes    a[k - 1]
+	 * @param phasesDegrees φ[k - 1], in degrees
+	 */
+	HueSeries(double constant, double[] amplitudes, double[] phasesDegrees) {
+		if (amplitudes.length != phasesDegrees.length) {
+			throw new IllegalArgumentException("Lengths differ: " + amplitudes.length + ", " + phasesDegrees.length);
+		}
+
+		this.constant = constant;
+		cosTerms = new double[amplitudes.length];
+		sinTerms = new double[amplitudes.length];
+		for (int k = 0; k < amplitudes.length; k++) {
+			double phase = Math.toRadians(phasesDegrees[k]);
+			cosTerms[k] = amplitudes[k] * Math.cos(phase);
+			sinTerms[k] = -amplitudes[k] * Math.sin(phase);
+		}
+	}
+
+	double evaluate(double hueDegrees) {
+		double radians = Math.toRadians(hueDegrees);
+		double cos1    = Math.cos(radians);
+		double sin1    = Math.sin(radians);
+
+		double sum  = constant;
+		double cosK = cos1;
+		double sinK = sin1;
+		for (int k = 0; k < cosTerms.length; k++) {
+			sum += cosTerms[k] * cosK + sinTerms[k] * sinK;
+
+			double cosNext = cosK * cos1 - sinK * sin1;
+			sinK = sinK * cos1 + cosK * sin1;
+			cosK = cosNext;
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Returns the mean of two hues in degrees, in the range [0, 360), going the short way around. When either color
+	 * is achromatic its hue is meaningless, and the sum is returned instead, as CIEDE2000 specifies.
+	 */
+	static double meanHue(double hue1, double hue2, boolean achromatic) {
+		if (achromatic) {
+			return hue1 + hue2;
+		}
+
+		double sum = hue1 + hue2;
+		if (Math.abs(hue1 - hue2) <= 180) {
+			return sum / 2;
+		}
+
+		return sum < 360 ? (sum + 360) / 2 : (sum - 360) / 2;
+	}
+
+	/**
+	 * Returns the hue difference {@code hue2 - hue1} in degrees, in the range [-180, 180].
+	 */
+	static double hueDifference(double hue1, double hue2) {
+		double difference = hue2 - hue1;
+		if (difference > 180) {
+			return difference - 360;
+		} else if (difference < -180) {
+			return difference + 360;
+		}
+
+		return difference;
+	}
+
+	/**
+	 * Returns the hue angle of (a, b) in degrees, in the range [0, 360), or 0 for the origin.
+	 */
+	static double hueDegrees(double a, double b) {
+		if (a == 0 && b == 0) {
+			return 0;
+		}
+
+		double hue = Math.toDegrees(Math.atan2(b, a));
+		return hue < 0 ? hue + 360 : hue;
+	}
+}
@@ -1,9 +1,222 @@
 package org.digitalmodular.paotools.ditherer;
 
+import java.util.Arrays;
+
 /**
+ * A static KD-tree for nearest-neighbor searches under any metric that can give a lower bound of the distance from a
+ * query point to an axis-aligned box.
+ * <p>
+ * The metric doesn't have to be Euclidean, or even symmetric. Each subtree stores its bounding box, and a subtree is
+ * skipped when the metric's lower bound for that box exceeds the best distance found so far. As long as
+ * {@link Metric#lowerBound(float[], float[], float[])} never exceeds the actual distance of any point in the box, the
+ * result is exactly what a linear scan would find, including tie-breaking (the lowest index wins).
+ * <p>
+ * The tree is immutable after construction and can be searched concurrently.
+ *
  * @author Zom-B
  */
 // Created 2020-11-14
+// Changed 2026-10-17 Implemented
 public class KDTree {
+	public interface Metric {
+		/**
+		 * Returns the distance from the query to a point. The point is one of the points the tree was built with.
+		 */
+		float distance(float[] query, float[] point);
+
+		/**
+		 * Returns a value not larger than the distance from the query to any point inside the box (inclusive bounds).
+		 */
+		float lowerBound(float[] query, float[] min, float[] max);
+	}
+
+	/** Squared Euclidean distance, for any number of dimensions. */
+	public static final Metric EUCLIDEAN = new Metric() {
+		@Override
+		public float distance(float[] query, float[] point) {
+			float sum = 0;
+			for (int d = 0; d < query.length; d++) {
+				float diff = point[d] - query[d];
+				sum += diff * diff;
+			}
+			return sum;
+		}
+
+		@Override
+		public float lowerBound(float[] query, float[] min, float[] max) {
+			float sum = 0;
+			for (int d = 0; d < query.length; d++) {
+				float diff = distanceToInterval(query[d], min[d], max[d]);
+				sum += diff * diff;
+			}
+			return sum;
+		}
+	};
+
+	private final float[][] points;
+	private final Metric    metric;
+
+	// Implicit tree: the subtree over order[begin..end) has its root at the middle, (begin + end) >>> 1.
+	private final int[]     order;
+	private final int[]     splitDims;
+	private final float[][] boxMins;
+	private final float[][] boxMaxs;
+
+	/**
+	 * @param points the coordinates of the points. All arrays must have the same length. The arrays are not copied.
+	 */
+	public KDTree(float[][] points, Metric metric) {
+		this.points = points.clone();
+		this.metric = metric;
+
+		int n = points.length;
+		order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+
+		splitDims = new int[n];
+		boxMins = new float[n][];
+		boxMaxs = new float[n][];
+
+		build(0, n);
+	}
+
+	public int size() {
+		return points.length;
+	}
+
+	public float[] getPoint(int index) {
+		return points[index];
+	}
+
+	/**
+	 * Returns the index of the point nearest to the query, or -1 if the tree is empty.
+	 */
+	public int nearest(float[] query) {
+		return nearestInfo(query).first();
+	}
+
+	/**
+	 * Returns the index of, and distance to, the point nearest to the query, or {@code (-1, Infinity)} if the tree is
+	 * empty.
+	 */
+	public VectorID nearestInfo(float[] query) {
+		Search search = new Search(query);
+		search.search(0, points.length);
+		return new VectorID(search.bestIndex, search.bestDist);
+	}
+
+	private void build(int begin, int end) {
+		if (begin >= end)
+			return;
+
+		int     mid = (begin + end) >>> 1;
+		int     dim = points[order[begin]].length;
+		float[] min = new float[dim];
+		float[] max = new float[dim];
+		Arrays.fill(min, Float.POSITIVE_INFINITY);
+		Arrays.fill(max, Float.NEGATIVE_INFINITY);
+		for (int i = begin; i < end; i++) {
+			float[] point = points[order[i]];
+			for (int d = 0; d < dim; d++) {
+				min[d] = Math.min(min[d], point[d]);
+				max[d] = Math.max(max[d], point[d]);
+			}
+		}
+
+		int splitDim = 0;
+		for (int d = 1; d < dim; d++) {
+			if (max[d] - min[d] > max[splitDim] - min[splitDim])
+				splitDim = d;
+		}
+
+		select(begin, end, mid, splitDim);
+
+		splitDims[mid] = splitDim;
+		boxMins[mid] = min;
+		boxMaxs[mid] = max;
+
+		build(begin, mid);
+		build(mid + 1, end);
+	}
+
+	/**
+	 * Partially sorts {@code order[begin..end)} so the element at {@code nth} is the one that would be there if fully
+	 * sorted along the specified dimension (quickselect).
+	 */
+	private void select(int begin, int end, int nth, int dim) {
+		int lo = begin;
+		int hi = end - 1;
+		while (lo < hi) {
+			float pivot = points[order[(lo + hi) >>> 1]][dim];
+			int   i     = lo;
+			int   j     = hi;
+			while (i <= j) {
+				while (points[order[i]][dim] < pivot)
+					i++;
+				while (points[order[j]][dim] > pivot)
+					j--;
+				if (i <= j) {
+					int temp = order[i];
+					order[i] = order[j];
+					order[j] = temp;
+					i++;
+					j--;
+				}
+			}
+
+			if (nth <= j)
+				hi = j;
+			else if (nth >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	public static float distanceToInterval(float value, float min, float max) {
+		if (value < min)
+			return min - value;
+		else if (value > max)
+			return max - value;
+		else
+			return 0;
+	}
+
+	private final class Search {
+		private final float[] query;
+		private       int     bestIndex = -1;
+		private       float   bestDist  = Float.POSITIVE_INFINITY;
+
+		Search(float[] query) {
+			this.query = query;
+		}
+
+		void search(int begin, int end) {
+			if (begin >= end)
+				return;
+
+			int mid = (begin + end) >>> 1;
+
+			// Strictly greater, so subtrees with a possible tie (and lower index) are still visited.
+			if (metric.lowerBound(query, boxMins[mid], boxMaxs[mid]) > bestDist)
+				return;
+
+			int   index = order[mid];
+			float dist  = metric.distance(query, points[index]);
+			if (dist < bestDist || dist == bestDist && index < bestIndex) {
+				bestDist = dist;
+				bestIndex = index;
+			}
 
+			if (query[splitDims[mid]] < points[index][splitDims[mid]]) {
+				search(begin, mid);
+				search(mid + 1, end);
+			} else {
+				search(mid + 1, end);
+				search(begin, mid);
+			}
+		}
+	}
 }
@@ -0,0 +1,77 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.ditherer;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The L*a*b* values of candidate colors, for the metrics in L*a*b* space.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+abstract class LabCandidates implements ColorMetric.Candidates {
+	final double[] alpha;
+	final double[] labL;
+	final double[] labA;
+	final double[] labB;
+	/** C*ab */
+	final double[] chroma;
+
+	LabCandidates(ColorInfo[] candidates) {
+		int n = candidates.length;
+		alpha = new double[n];
+		labL = new double[n];
+		labA = new double[n];
+		labB = new double[n];
+		chroma = new double[n];
+
+		for (int i = 0; i < n; i++) {
+			alpha[i] = candidates[i].A;
+			labL[i] = candidates[i].labL;
+			labA[i] = candidates[i].labA;
+			labB[i] = candidates[i].labB;
+			chroma[i] = candidates[i].C;
+		}
+	}
+
+	@Override
+	public int size() {
+		return labL.length;
+	}
+
+	@Override
+	public void distances(ColorInfo input, double[] distances) {
+		scan(input, distances);
+	}
+
+	@Override
+	public int nearest(ColorInfo input) {
+		return scan(input, null);
+	}
+
+	/**
+	 * Compares the input to all candidates, calculating the input-side terms once.
+	 *
+	 * @param distances where to write all distances, or {@code null}
+	 * @return the index of the nearest candidate
+	 */
+	abstract int scan(ColorInfo input, @Nullable double[] distances);
+}
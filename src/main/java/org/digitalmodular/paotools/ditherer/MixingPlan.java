@@ -1,8 +1,52 @@
 package org.digitalmodular.paotools.ditherer;
 
+import java.util.Arrays;
+
 /**
+ * A list of palette indices that, when mixed together (gamma-corrected), approximate a color.
+ * <p>
+ * The indices are sorted by perceptual luminosity, so an ordered ditherer can pick the index at the position of the
+ * threshold matrix value and get dark pixels at low thresholds and light pixels at high thresholds.
+ * <p>
+ * Immutable.
+ *
  * @author Zom-B
  */
 // Created 2020-11-09
 public class MixingPlan {
+	private final int[] indices;
+
+	/**
+	 * @param indices palette indices, already sorted by luminosity. The array is copied.
+	 */
+	public MixingPlan(int[] indices) {
+		if (indices.length == 0) {
+			throw new IllegalArgumentException("Empty plan");
+		}
+
+		this.indices = indices.clone();
+	}
+
+	public int size() {
+		return indices.length;
+	}
+
+	public int get(int position) {
+		return indices[position];
+	}
+
+	/**
+	 * Returns the palette index to use for a threshold matrix value.
+	 *
+	 * @param threshold  the matrix value, in the range [0, matrixSize)
+	 * @param matrixSize the number of cells in the matrix
+	 */
+	public int getForThreshold(int threshold, int matrixSize) {
+		return indices[threshold * indices.length / matrixSize];
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(indices);
+	}
 }
@@ -5,30 +5,87 @@ package org.digitalmodular.paotools.ditherer;
  */
 // Created 2020-11-09
 public class Palette {
-	public Object[] Combinations;
-	public KDTree CombinationTree;
-
-//	public VectorID FindClosestCombinationIndex(ColorInfo test_lab) {
-//		switch (Globals.ColorComparing) {
-//			case Compare_RGB: {
-//				Vectort4i q=new Vectort4i(test_lab.R, test_lab.G, test_lab.B, test_lab.A);
-//				return CombinationTree.nearest_info(q);
-//			}
-//			case Compare_CIE76_DeltaE: {
-//				Vectort4i q=new Vectort4i(test_lab.lab.L, test_lab.lab.a, test_lab.lab.b, test_lab.A );
-//				return CombinationTree.nearest_info(q);
-//			}
-//			default: {
-//				VectorID result=new VectorID(0, -1.0);
-//				for (int limit = Combinations.length, index = 0; index < limit; ++index) {
-//					double penalty = ColorCompare(test_lab, GetCombinationMeta(index));
-//					if (penalty < result.second || result.second == -1.0) {
-//						result.first = index;
-//						result.second = penalty;
-//					}
-//				}
-//				return result;
-//			}
-//		}
-//	}
+	public Combination[] Combinations;
+	public ColorInfo[]   CombinationMetas;
+	public KDTree        CombinationTree;
+
+	// Prepared for the metric of CombinationCandidatesMethod, when the tree can't be used.
+	private ColorMetric.Candidates     CombinationCandidates       = null;
+	private Globals.ColorCompareMethod CombinationCandidatesMethod = null;
+
+	/**
+	 * (Re)builds {@link #CombinationTree} from {@link #CombinationMetas}, in the coordinates of the current
+	 * {@link Globals#ColorComparing} method.
+	 * <p>
+	 * Only methods for which {@link #GetTreeCoordinates(ColorInfo)} is defined use the tree. This needs to be called
+	 * again after changing the method.
+	 */
+	public void BuildCombinationTree() {
+		CombinationCandidates = null;
+
+		float[][] points = new float[CombinationMetas.length][];
+		for (int index = 0; index < points.length; ++index) {
+			points[index] = GetTreeCoordinates(CombinationMetas[index]);
+			if (points[index] == null) {
+				CombinationTree = null;
+				return;
+			}
+		}
+
+		CombinationTree = new KDTree(points, KDTree.EUCLIDEAN);
+	}
+
+	public ColorInfo GetCombinationMeta(int index) {
+		return CombinationMetas[index];
+	}
+
+	public VectorID FindClosestCombinationIndex(ColorInfo test_lab) {
+		float[] q = GetTreeCoordinates(test_lab);
+		if (q != null && CombinationTree != null)
+			return CombinationTree.nearestInfo(q);
+
+		ColorMetric.Candidates candidates = GetCombinationCandidates();
+		int                    index      = candidates.nearest(test_lab);
+		if (index < 0)
+			return new VectorID(-1, Double.POSITIVE_INFINITY);
+
+		return new VectorID(index, candidates.distance(test_lab, index));
+	}
+
+	/**
+	 * Like {@link #FindClosestCombinationIndex(ColorInfo)}, but returns the distances to all combinations, in the
+	 * current {@link Globals#ColorComparing} method.
+	 *
+	 * @param distances needs at least as many elements as there are combinations
+	 */
+	public void GetCombinationDistances(ColorInfo test_lab, double[] distances) {
+		GetCombinationCandidates().distances(test_lab, distances);
+	}
+
+	private ColorMetric.Candidates GetCombinationCandidates() {
+		Globals.ColorCompareMethod method     = Globals.ColorComparing;
+		ColorMetric.Candidates     candidates = CombinationCandidates;
+		if (candidates == null || CombinationCandidatesMethod != method) {
+			candidates = ColorMetric.forMethod(method).prepare(CombinationMetas);
+			CombinationCandidates = candidates;
+			CombinationCandidatesMethod = method;
+		}
+
+		return candidates;
+	}
+
+	/**
+	 * Returns the coordinates in which the current color compare method is a (squared) Euclidean distance, or
+	 * {@code null} if it isn't.
+	 */
+	private static float[] GetTreeCoordinates(ColorInfo info) {
+		switch (Globals.ColorComparing) {
+			case Compare_RGB:
+				return new float[]{info.R, info.G, info.B, info.A};
+			case Compare_CIE76_DeltaE:
+				return new float[]{info.labL, info.labA, info.labB, info.A};
+			default:
+				return null;
+		}
+	}
 }
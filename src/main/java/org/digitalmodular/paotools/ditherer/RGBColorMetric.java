@@ -0,0 +1,101 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.ditherer;
+
+/**
+ * Squared Euclidean distance in (non-linear) ARGB.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class RGBColorMetric implements ColorMetric {
+	public static final RGBColorMetric INSTANCE = new RGBColorMetric();
+
+	private RGBColorMetric() {
+	}
+
+	@Override
+	public double distance(ColorInfo input, ColorInfo candidate) {
+		return distance(input.A, input.R, input.G, input.B, candidate.A, candidate.R, candidate.G, candidate.B);
+	}
+
+	private static int distance(int a1, int r1, int g1, int b1, int a2, int r2, int g2, int b2) {
+		int da = a2 - a1;
+		int dr = r2 - r1;
+		int dg = g2 - g1;
+		int db = b2 - b1;
+		return dr * dr + dg * dg + db * db + da * da;
+	}
+
+	@Override
+	public Candidates prepare(ColorInfo[] candidates) {
+		return new PreparedCandidates(candidates);
+	}
+
+	private static final class PreparedCandidates implements Candidates {
+		private final int[] argb;
+
+		PreparedCandidates(ColorInfo[] candidates) {
+			argb = new int[candidates.length * 4];
+			for (int i = 0; i < candidates.length; i++) {
+				argb[i * 4] = candidates[i].A;
+				argb[i * 4 + 1] = candidates[i].R;
+				argb[i * 4 + 2] = candidates[i].G;
+				argb[i * 4 + 3] = candidates[i].B;
+			}
+		}
+
+		@Override
+		public int size() {
+			return argb.length / 4;
+		}
+
+		@Override
+		public double distance(ColorInfo input, int index) {
+			int i = index * 4;
+			return RGBColorMetric.distance(input.A, input.R, input.G, input.B,
+			                               argb[i], argb[i + 1], argb[i + 2], argb[i + 3]);
+		}
+
+		@Override
+		public void distances(ColorInfo input, double[] distances) {
+			for (int i = 0; i < size(); i++) {
+				distances[i] = distance(input, i);
+			}
+		}
+
+		@Override
+		public int nearest(ColorInfo input) {
+			int bestIndex = -1;
+			int bestDist  = Integer.MAX_VALUE;
+			for (int i = 0; i < size(); i++) {
+				int j    = i * 4;
+				int dist = RGBColorMetric.distance(input.A, input.R, input.G, input.B,
+				                                   argb[j], argb[j + 1], argb[j + 2], argb[j + 3]);
+				if (dist < bestDist) {
+					bestDist = dist;
+					bestIndex = i;
+				}
+			}
+
+			return bestIndex;
+		}
+	}
+}
@@ -21,6 +21,7 @@ package org.digitalmodular.paotools.newpalettizer;
 
 import java.awt.Dimension;
 import java.awt.GridLayout;
+import java.awt.image.BufferedImage;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.border.TitledBorder;
@@ -29,9 +30,11 @@ import javax.swing.border.TitledBorder;
  * @author Zom-B
  */
 // Created 2023-01-16
-public class ColorAdjustControlsPanel extends JPanel {
+public class ColorAdjustControlsPanel extends JPanel implements PalettizerState.StageListener {
 	public static final int CONTROLS_PANEL_WIDTH = 600;
 
+	private final JLabel statusLabel = new JLabel("Controls");
+
 	@SuppressWarnings({"OverridableMethodCallDuringObjectConstruction", "ThisEscapedInObjectConstruction"})
 	public ColorAdjustControlsPanel() {
 		super(null);
@@ -39,7 +42,14 @@ public class ColorAdjustControlsPanel extends JPanel {
 		setOpaque(false);
 
 		setBorder(new TitledBorder("Adjustments"));
-		add(new JLabel("Controls"));
+		add(statusLabel);
 		setPreferredSize(new Dimension(CONTROLS_PANEL_WIDTH, getPreferredSize().height));
 	}
+
+	@Override
+	public void stageCompleted(PalettizerState.Stage stage, BufferedImage output) {
+		if (stage == PalettizerState.Stage.COLOR_ADJUST) {
+			statusLabel.setText("Adjusted: " + output.getWidth() + "x" + output.getHeight());
+		}
+	}
 }
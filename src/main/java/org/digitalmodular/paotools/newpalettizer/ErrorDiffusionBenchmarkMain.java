@@ -0,0 +1,110 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.newpalettizer;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.digitalmodular.paotools.newpalettizer.palette.PRPaletteV1;
+import org.digitalmodular.paotools.newpalettizer.palettizer.DiffusionMethod;
+import org.digitalmodular.paotools.newpalettizer.palettizer.ErrorDiffusionPalettizer;
+
+/**
+ * Measures the speedup of wavefront-parallel error diffusion, and checks that the result doesn't depend on the number
+ * of threads.
+ * <p>
+ * Usage: {@code ErrorDiffusionBenchmarkMain [image]}. Without an image, a noisy gradient is generated.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class ErrorDiffusionBenchmarkMain {
+	private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+	private static final int   WARMUP_RUNS   = 2;
+	private static final int   TIMED_RUNS    = 5;
+
+	public static void main(String... args) throws IOException {
+		LinearFrameBufferImage image = args.length > 0 ?
+		                               LinearFrameBufferImage.fromFile(args[0]) :
+		                               makeTestImage(2048, 2048);
+
+		ErrorDiffusionPalettizer palettizer = new ErrorDiffusionPalettizer(PRPaletteV1.instance());
+		palettizer.setSerpentine(false);
+		palettizer.setLookupTableEnabled(true);
+
+		System.out.println("Image: " + image.getWidth() + "x" + image.getHeight() +
+		                   ", cores: " + Runtime.getRuntime().availableProcessors());
+
+		for (DiffusionMethod method : new DiffusionMethod[]{DiffusionMethod.FLOYD_STEINBERG,
+		                                                    DiffusionMethod.STEVENSON_ARCE}) {
+			palettizer.setDiffusionMethod(method);
+			System.out.println(method);
+
+			int[]  reference     = null;
+			double referenceTime = 0;
+			for (int threads : THREAD_COUNTS) {
+				palettizer.setParallelism(threads);
+
+				for (int i = 0; i < WARMUP_RUNS; i++) {
+					palettizer.palettize(image);
+				}
+
+				long  time   = Long.MAX_VALUE;
+				int[] result = null;
+				for (int i = 0; i < TIMED_RUNS; i++) {
+					long start = System.nanoTime();
+					result = palettizer.palettize(image).getArray();
+					time = Math.min(time, System.nanoTime() - start);
+				}
+
+				double millis = time / 1.0e6;
+				if (reference == null) {
+					reference = result;
+					referenceTime = millis;
+				}
+
+				System.out.printf("  %d threads: %8.1f ms, speedup %4.2fx, %s%n",
+				                  threads, millis, referenceTime / millis,
+				                  Arrays.equals(reference, result) ? "identical" : "DIFFERENT");
+			}
+		}
+
+		palettizer.setParallelism(1);
+	}
+
+	private static LinearFrameBufferImage makeTestImage(int width, int height) {
+		LinearFrameBufferImage image = new LinearFrameBufferImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[]                  array = image.getArray();
+		Random                 rnd   = new Random(0);
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int r = x * 255 / width + rnd.nextInt(32) & 0xFF;
+				int g = y * 255 / height;
+				int b = (x + y) * 255 / (width + height) ^ rnd.nextInt(16);
+				array[y * width + x] = r << 16 | g << 8 | b;
+			}
+		}
+
+		return image;
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.newpalettizer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads the first image of an {@link ImageReader}, one source region per call to {@link #readRows}.
+ * <p>
+ * This only streams efficiently for formats the reader can access randomly, like uncompressed and tiled formats. Some
+ * readers (PNG among them) decode from the start of the image for every region, which makes reading the whole image
+ * quadratic in its height. Use {@link RowSource#open(File)} to get the best source for a file.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public class ImageReaderRowSource implements RowSource {
+	private final           ImageReader      reader;
+	private final @Nullable ImageInputStream ownedStream;
+	private final           ImageReadParam   param;
+	private final           int              width;
+	private final           int              height;
+
+	private int nextRow = 0;
+
+	/**
+	 * @param reader a reader with its input set. The reader stays owned by the caller.
+	 */
+	public ImageReaderRowSource(ImageReader reader) throws IOException {
+		this(reader, null);
+	}
+
+	private ImageReaderRowSource(ImageReader reader, @Nullable ImageInputStream ownedStream) throws IOException {
+		this.reader = reader;
+		this.ownedStream = ownedStream;
+		param = reader.getDefaultReadParam();
+		width = reader.getWidth(0);
+		height = reader.getHeight(0);
+	}
+
+	/**
+	 * Opens a file with the first ImageIO reader that accepts it. Closing the source disposes the reader.
+	 */
+	public static ImageReaderRowSource open(File file) throws IOException {
+		@Nullable ImageInputStream in = ImageIO.createImageInputStream(file);
+		if (in == null) {
+			throw new IOException("Can't open " + file);
+		}
+
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if (!readers.hasNext()) {
+				throw new IOException("Unsupported image format: " + file);
+			}
+
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				return new ImageReaderRowSource(reader, in);
+			} catch (IOException | RuntimeException ex) {
+				reader.dispose();
+				throw ex;
+			}
+		} catch (IOException | RuntimeException ex) {
+			in.close();
+			throw ex;
+		}
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public void readRows(int[] dst, int rows) throws IOException {
+		if (rows < 1 || rows > height - nextRow) {
+			throw new IllegalArgumentException("Can't read " + rows + " rows, " + (height - nextRow) + " are left");
+		}
+
+		param.setSourceRegion(new Rectangle(0, nextRow, width, rows));
+		BufferedImage image = reader.read(0, param);
+		image.getRGB(0, 0, width, rows, dst, 0, width);
+
+		nextRow += rows;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (ownedStream != null) {
+			reader.dispose();
+			ownedStream.close();
+		}
+	}
+}
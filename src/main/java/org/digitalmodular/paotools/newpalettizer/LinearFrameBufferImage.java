@@ -23,14 +23,9 @@ import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Transparency;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBuffer;
-import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferInt;
-import java.awt.image.IndexColorModel;
 import java.io.File;
 import java.io.IOException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import javax.imageio.ImageIO;
 
 /**
@@ -167,137 +162,20 @@ public class LinearFrameBufferImage extends BufferedImage {
 	 * Draws a regular image on top of a LinearFrameBuffer.
 	 * <p>
 	 * The sizes are assumed to be equal.
-	 * This implementation attempts to avoid Java2D methods is possible.
+	 * This implementation avoids Java2D methods for all {@link BufferedImage}s, see {@link PixelFormatConverter}.
 	 */
 	private static void drawImage(Image src, LinearFrameBufferImage target) {
 		if (src instanceof BufferedImage) {
-			BufferedImage bufferedImage = (BufferedImage)src;
-			DataBuffer    dataBuffer    = bufferedImage.getRaster().getDataBuffer();
-
-			// Handle some common image types
-			switch (bufferedImage.getType()) {
-				case TYPE_INT_RGB:
-					copyIntRGBImage(target, (DataBufferInt)dataBuffer);
-					return;
-				case TYPE_INT_ARGB:
-					copyIntARGBImage(target, (DataBufferInt)dataBuffer);
-					return;
-//				case TYPE_INT_BGR:
-//					drawIntArrayImage(target, (DataBufferInt)dataBuffer);
-//					return;
-				case TYPE_3BYTE_BGR:
-					draw3ByteBGRImage(target, (DataBufferByte)dataBuffer);
-					return;
-				case TYPE_4BYTE_ABGR:
-					draw4ByteABGRImage(target, (DataBufferByte)dataBuffer);
-					return;
-				case TYPE_BYTE_GRAY:
-					drawByteGrayImage(target, (DataBufferByte)dataBuffer);
-					return;
-				case TYPE_BYTE_INDEXED:
-					drawByteIndexedImage(target,
-					                     (DataBufferByte)dataBuffer,
-					                     (IndexColorModel)bufferedImage.getColorModel());
-					return;
-				default:
-					Logger.getLogger(LinearFrameBufferImage.class.getName())
-					      .log(Level.WARNING, "Unimplemented conversion from image type {0}", bufferedImage.getType());
-
-					// Expensive fallback method which may screw up colors
-					Graphics2D g = target.createGraphics();
-					try {
-						g.drawImage(src, 0, 0, null);
-					} finally {
-						g.dispose();
-					}
-			}
-		}
-	}
-
-	private static void copyIntRGBImage(LinearFrameBufferImage target, DataBufferInt dataBuffer) {
-		int[] srcArray = dataBuffer.getData();
-		int[] dstArray = target.getArray();
-
-		assert srcArray.length == dstArray.length : srcArray.length + " != " + dstArray.length;
-
-		if (!target.isTransparent()) {
-			System.arraycopy(srcArray, 0, dstArray, 0, srcArray.length);
-		} else {
-			for (int i = 0; i < dstArray.length; i++) {
-				dstArray[i] = 0xFF000000 | srcArray[i];
-			}
-		}
-	}
-
-	private static void copyIntARGBImage(LinearFrameBufferImage target, DataBufferInt dataBuffer) {
-		int[] srcArray = dataBuffer.getData();
-		int[] dstArray = target.getArray();
-
-		assert srcArray.length == dstArray.length : srcArray.length + " != " + dstArray.length;
-
-		System.arraycopy(srcArray, 0, dstArray, 0, srcArray.length);
-	}
-
-	@SuppressWarnings("ValueOfIncrementOrDecrementUsed")
-	private static void draw3ByteBGRImage(LinearFrameBufferImage target, DataBufferByte dataBuffer) {
-		byte[] srcArray = dataBuffer.getData();
-		int[]  dstArray = target.getArray();
-
-		assert srcArray.length == 3 * dstArray.length : srcArray.length + " != 3 * " + dstArray.length;
-
-		int j = 0;
-		for (int i = 0; i < dstArray.length; i++) {
-			int b = srcArray[j++] & 0xFF;
-			int g = srcArray[j++] & 0xFF;
-			int r = srcArray[j++] & 0xFF;
-			dstArray[i] = 0xFF000000 | r << 16 | g << 8 | b;
-		}
-	}
-
-	@SuppressWarnings("ValueOfIncrementOrDecrementUsed")
-	private static void draw4ByteABGRImage(LinearFrameBufferImage target, DataBufferByte dataBuffer) {
-		byte[] srcArray = dataBuffer.getData();
-		int[]  dstArray = target.getArray();
-
-		assert srcArray.length == 4 * dstArray.length : srcArray.length + " != 4 * " + dstArray.length;
-
-		int j = 0;
-		for (int i = 0; i < dstArray.length; i++) {
-			int a = srcArray[j++] & 0xFF;
-			int b = srcArray[j++] & 0xFF;
-			int g = srcArray[j++] & 0xFF;
-			int r = srcArray[j++] & 0xFF;
-			dstArray[i] = a << 24 | r << 16 | g << 8 | b;
+			PixelFormatConverter.convert((BufferedImage)src, target.getArray());
+			return;
 		}
-	}
-
-	@SuppressWarnings("ValueOfIncrementOrDecrementUsed")
-	private static void drawByteGrayImage(LinearFrameBufferImage target, DataBufferByte dataBuffer) {
-		byte[] srcArray = dataBuffer.getData();
-		int[]  dstArray = target.getArray();
-
-		assert srcArray.length == 4 * dstArray.length : srcArray.length + " != 4 * " + dstArray.length;
-
-		int j = 0;
-		for (int i = 0; i < dstArray.length; i++) {
-			int y = srcArray[j++] & 0xFF;
-			dstArray[i] = 0xFF000000 | 0x00010101 * y;
-		}
-	}
-
-	private static void drawByteIndexedImage(
-			LinearFrameBufferImage target, DataBufferByte dataBuffer, IndexColorModel colorModel) {
-		byte[] srcArray = dataBuffer.getData();
-		int[]  dstArray = target.getArray();
-
-		assert srcArray.length == dstArray.length : srcArray.length + " != " + dstArray.length;
-
-		int   numColors = colorModel.getMapSize();
-		int[] colors    = new int[numColors];
-		colorModel.getRGBs(colors);
 
-		for (int i = 0; i < dstArray.length; i++) {
-			dstArray[i] = colors[Math.min(srcArray[i] & 0xFF, numColors)];
+		// Expensive fallback method for images that aren't loaded yet or are generated on the fly
+		Graphics2D g = target.createGraphics();
+		try {
+			g.drawImage(src, 0, 0, null);
+		} finally {
+			g.dispose();
 		}
 	}
 }
@@ -34,11 +34,13 @@ public class PalettizerGUI extends JPanel {
 	public static final int BORDER_SIZE_PX    = 20;
 	public static final int SEPARATOR_SIZE_PX = 10;
 
-	private final JPanel imagePanel               = new PalettizerImagePanel();
-	private final JPanel imageControlsPanel       = new ImageControlsPanel();
-	private final JPanel colorAdjustControlsPanel = new ColorAdjustControlsPanel();
-	private final JPanel sizeControlsPanel        = new SizeControlsPanel();
-	private final JPanel outputControlsPanel      = new OutputControlsPanel();
+	private final PalettizerState state = new PalettizerState();
+
+	private final JPanel                   imagePanel               = new PalettizerImagePanel();
+	private final JPanel                   imageControlsPanel       = new ImageControlsPanel();
+	private final ColorAdjustControlsPanel colorAdjustControlsPanel = new ColorAdjustControlsPanel();
+	private final SizeControlsPanel        sizeControlsPanel        = new SizeControlsPanel();
+	private final OutputControlsPanel      outputControlsPanel      = new OutputControlsPanel();
 
 	@SuppressWarnings("OverridableMethodCallDuringObjectConstruction")
 	public PalettizerGUI() {
@@ -63,5 +65,9 @@ public class PalettizerGUI extends JPanel {
 		topRightStackPanel.add(sizeControlsPanel);
 		topRightStackPanel.add(outputControlsPanel);
 		rightPanel.add(topRightStackPanel, BorderLayout.NORTH);
+
+		state.addStageListener(colorAdjustControlsPanel);
+		state.addStageListener(sizeControlsPanel);
+		state.addStageListener(outputControlsPanel);
 	}
 }
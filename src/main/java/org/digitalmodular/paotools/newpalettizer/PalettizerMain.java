@@ -21,21 +21,32 @@ package org.digitalmodular.paotools.newpalettizer;
 
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Image;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.WindowConstants;
 
+import org.jetbrains.annotations.Nullable;
+
 import org.digitalmodular.imageutilities.SizeInt;
 import org.digitalmodular.imageutilities.resize.ImageResamplerShort;
 import org.digitalmodular.imageutilities.resize.ResizerUtilities;
@@ -47,15 +58,29 @@ import org.digitalmodular.paotools.newpalettizer.palette.PRPaletteV1;
 import org.digitalmodular.paotools.newpalettizer.palettizer.NearestPalettizer;
 
 /**
+ * Interactive tuning of the palettizer parameters.
+ * <p>
+ * Palettization runs on a background thread. Parameter changes are debounced, and a render that's overtaken by a newer
+ * one is abandoned. Each render first shows a coarse preview, then the full resolution. The output is only written
+ * when pressing 's'.
+ *
  * @author Mark Jeronimus
  */
 // Created 2020-11-08
+// Changed 2026-10-17 Moved palettization off the EDT
 @SuppressWarnings("ALL")
 public final class PalettizerMain extends JPanel implements MouseMotionListener, KeyListener {
 	private static final Palette             pao       = PRPaletteV1.instance();
 	private static final ImageResamplerShort resampler = new ImageResamplerShort();
 	private static final NearestPalettizer   palletizer = new NearestPalettizer(pao);
 
+	private static final String OUTPUT_FILENAME = "/home/zom-b/Pictures/Pixelart/PAO/HE1_0945-PAO.png";
+
+	/** Time to wait after the last parameter change before rendering. */
+	private static final int DEBOUNCE_MILLIS = 50;
+	/** Subsampling factor of the coarse preview. */
+	private static final int PREVIEW_STEP    = 4;
+
 	private static JFrame frame;
 
 	private static LinearFrameBufferImage originalImage;
@@ -68,6 +93,26 @@ public final class PalettizerMain extends JPanel implements MouseMotionListener,
 	public static final float   SAT_FACTOR = 1f;
 	public static final float   LUM_FACTOR = 1.5f;
 
+	private float gamma     = GAMMA;
+	private float satFactor = SAT_FACTOR;
+	private float lumFactor = LUM_FACTOR;
+
+	// Only the render thread touches the palettizer.
+	private final ExecutorService renderExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Palettizer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Timer         debounceTimer    = new Timer(DEBOUNCE_MILLIS, ignored -> startRender());
+	private final AtomicInteger renderGeneration = new AtomicInteger();
+
+	private @Nullable Future<?> renderFuture = null;
+
+	// The front buffer. Renders produce a new image and swap it in when complete.
+	private volatile @Nullable Image                  displayedImage = null;
+	private volatile @Nullable LinearFrameBufferImage lastFullImage  = null;
+
 	@SuppressWarnings("OverlyBroadThrowsClause")
 	public static void main(String... args) throws Exception {
 		String filename = "/home/zom-b/Pictures/Pixelart/PR/HE1_0945-brown.png";
@@ -109,30 +154,112 @@ public final class PalettizerMain extends JPanel implements MouseMotionListener,
 		addKeyListener(this);
 		setFocusable(true);
 
-		Logger.getGlobal().info("Resizing");
+		debounceTimer.setRepeats(false);
 
-		palletizer.setHSLWeights(weights);
-		palletizer.setGamma(GAMMA);
-		palletizer.setSatFactor(SAT_FACTOR);
-		palletizer.setLumFactor(LUM_FACTOR);
+		startRender();
 	}
 
-	public static LinearFrameBufferImage palletize() {
-		LinearFrameBufferImage palletized = palletizer.palettize(srcImg);
+	/**
+	 * (Re)starts the debounce timer. Called on the EDT for every parameter change.
+	 */
+	private void requestRender() {
+		debounceTimer.restart();
+	}
 
-		try {
-			ImageIO.write(palletized, "PNG", new File("/home/zom-b/Pictures/Pixelart/PAO/HE1_0945-PAO.png"));
-		} catch (IOException ex) {
-			ex.printStackTrace();
+	/**
+	 * Abandons the current render, if any, and starts a new one with the current parameters and image.
+	 */
+	private void startRender() {
+		int generation = renderGeneration.incrementAndGet();
+		if (renderFuture != null) {
+			// Interrupting makes the palettizer abandon the stale image between row bands
+			renderFuture.cancel(true);
+		}
+
+		// Snapshot everything the EDT may change while rendering
+		LinearFrameBufferImage image         = srcImg;
+		float[]                renderWeights = weights.clone();
+		float                  renderGamma   = gamma;
+		float                  renderSat     = satFactor;
+		float                  renderLum     = lumFactor;
+
+		renderFuture = renderExecutor.submit(() -> {
+			palletizer.setHSLWeights(renderWeights);
+			palletizer.setGamma(renderGamma);
+			palletizer.setSatFactor(renderSat);
+			palletizer.setLumFactor(renderLum);
+
+			try {
+				LinearFrameBufferImage preview = palletizer.palettize(subsample(image, PREVIEW_STEP));
+				if (!publish(generation, preview)) {
+					return;
+				}
+
+				LinearFrameBufferImage palletized = palletizer.palettize(image);
+				if (publish(generation, palletized)) {
+					lastFullImage = palletized;
+				}
+			} catch (CancellationException ignored) {
+				// A newer render has been started
+			}
+		});
+	}
+
+	private boolean publish(int generation, Image image) {
+		if (generation != renderGeneration.get()) {
+			return false;
 		}
 
-		return palletized;
+		displayedImage = image;
+		repaint();
+		return true;
+	}
+
+	private static LinearFrameBufferImage subsample(LinearFrameBufferImage image, int step) {
+		int width  = (image.getWidth() + step - 1) / step;
+		int height = (image.getHeight() + step - 1) / step;
+
+		LinearFrameBufferImage subsampled = new LinearFrameBufferImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[]                  srcArray   = image.getArray();
+		int[]                  dstArray   = subsampled.getArray();
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				dstArray[y * width + x] = srcArray[y * step * image.getWidth() + x * step];
+			}
+		}
+
+		return subsampled;
+	}
+
+	/**
+	 * Writes the last full-resolution result, on the render thread, so it follows any render in progress.
+	 */
+	private void save() {
+		renderExecutor.execute(() -> {
+			@Nullable LinearFrameBufferImage palletized = lastFullImage;
+			if (palletized == null) {
+				return;
+			}
+
+			try {
+				ImageIO.write(palletized, "PNG", new File(OUTPUT_FILENAME));
+				Logger.getGlobal().info("Saved " + OUTPUT_FILENAME);
+			} catch (IOException ex) {
+				Logger.getGlobal().log(Level.WARNING, "Can't save " + OUTPUT_FILENAME, ex);
+			}
+		});
 	}
 
 	@Override
 	protected void paintComponent(Graphics g) {
 		g.drawImage(srcImg, 0, 0, null);
-		g.drawImage(palletize(), srcImg.getWidth(), 0, null);
+
+		@Nullable Image image = displayedImage;
+		if (image != null) {
+			// Stretches the coarse preview
+			g.drawImage(image, srcImg.getWidth(), 0, srcImg.getWidth(), srcImg.getHeight(), null);
+		}
 	}
 
 	@Override
@@ -142,19 +269,16 @@ public final class PalettizerMain extends JPanel implements MouseMotionListener,
 
 		if ((e.getModifiersEx() & InputEvent.SHIFT_DOWN_MASK) != 0) {
 			if ((e.getModifiersEx() & InputEvent.BUTTON1_DOWN_MASK) != 0) {
-				float gamma = (float)Math.exp((x - 0.5));
+				gamma = (float)Math.exp((x - 0.5));
 				System.out.println("GAMMA: " + gamma);
-				palletizer.setGamma(gamma);
 			}
 			if ((e.getModifiersEx() & InputEvent.BUTTON2_DOWN_MASK) != 0) {
-				float satFactor = 1 / Math.max(0.1f, 1 - x);
+				satFactor = 1 / Math.max(0.1f, 1 - x);
 				System.out.println("SAT_FACTOR: " + satFactor);
-				palletizer.setSatFactor(satFactor);
 			}
 			if ((e.getModifiersEx() & InputEvent.BUTTON3_DOWN_MASK) != 0) {
-				float lumFactor = 1 / Math.max(0.1f, y);
+				lumFactor = 1 / Math.max(0.1f, y);
 				System.out.println("LUM_FACTOR: " + lumFactor);
-				palletizer.setLumFactor(lumFactor);
 			}
 		} else {
 			if ((e.getModifiersEx() & InputEvent.BUTTON1_DOWN_MASK) != 0) {
@@ -167,11 +291,10 @@ public final class PalettizerMain extends JPanel implements MouseMotionListener,
 				weights[2] = Math.max(0, 1 - y);
 			}
 
-			palletizer.setHSLWeights(weights);
-			System.out.println("weights: " + Arrays.toString(palletizer.getHslWeights()));
+			System.out.println("weights: " + Arrays.toString(weights));
 		}
 
-		repaint();
+		requestRender();
 	}
 
 	@Override
@@ -188,12 +311,19 @@ public final class PalettizerMain extends JPanel implements MouseMotionListener,
 			case '+':
 				targetSize += amount;
 				break;
+			case 's':
+				save();
+				return;
+			default:
+				return;
 		}
 
 		resize();
 		setPreferredSize(new Dimension(srcImg.getWidth() * 2, srcImg.getHeight()));
 		frame.setTitle(Integer.toString(targetSize));
 		frame.pack();
+
+		requestRender();
 	}
 
 	@Override
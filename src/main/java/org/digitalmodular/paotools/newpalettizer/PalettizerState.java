@@ -20,64 +20,214 @@
 package org.digitalmodular.paotools.newpalettizer;
 
 import java.awt.image.BufferedImage;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+import org.jetbrains.annotations.Nullable;
 
 /**
+ * The palettization pipeline: original → color adjusted → rescaled → palettized.
+ * <p>
+ * Each stage remembers its last input (by identity), parameters and output. Changing an image, stage function or
+ * parameter schedules an update on the executor, which only re-runs the stages whose input or parameters changed. An
+ * update that's overtaken by a newer one stops after the stage it's running. Listeners are notified on the EDT when a
+ * stage completes.
+ * <p>
+ * Parameters are compared with {@link Object#equals(Object)}, so they should be immutable values. Stage functions can
+ * retrieve them with {@link #getParameters(Stage)}. A missing stage function passes its input through unchanged.
+ *
  * @author Zom-B
  */
 // Created 2023-01-18
+// Changed 2026-10-17 Turned into a memoizing pipeline
 @SuppressWarnings({"MethodMayBeStatic", "FieldMayBeFinal", "InstanceVariableMayNotBeInitialized"})
 public class PalettizerState {
-	private BiFunction<BufferedImage, PalettizerState, BufferedImage> colorAdjuster;
-	private BiFunction<BufferedImage, PalettizerState, BufferedImage> resizer;
-	private BiFunction<BufferedImage, PalettizerState, BufferedImage> palettizer;
+	public enum Stage {
+		COLOR_ADJUST,
+		RESIZE,
+		PALETTIZE
+	}
 
-	private BufferedImage originalImage      = null;
-	private BufferedImage colorAdjustedImage = null;
-	private BufferedImage rescaledImage      = null;
-	private BufferedImage palettizedImage    = null;
+	@FunctionalInterface
+	public interface StageListener {
+		/**
+		 * Called on the EDT when a stage produced a new output.
+		 */
+		void stageCompleted(Stage stage, BufferedImage output);
+	}
 
-	public void setImage(BufferedImage image) {
-		int width  = image.getWidth();
-		int height = image.getHeight();
+	private final Executor            executor;
+	private final Map<Stage, Node>    nodes            = new EnumMap<>(Stage.class);
+	private final List<StageListener> listeners        = new CopyOnWriteArrayList<>();
+	private final AtomicInteger       updateGeneration = new AtomicInteger();
 
-		originalImage = newImage(width, height);
-		colorAdjustedImage = newImage(width, height);
+	private volatile @Nullable BufferedImage originalImage = null;
+
+	public PalettizerState() {
+		this(Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "PalettizerState");
+			thread.setDaemon(true);
+			return thread;
+		}));
+	}
+
+	public PalettizerState(Executor executor) {
+		this.executor = Objects.requireNonNull(executor, "executor");
+
+		for (Stage stage : Stage.values()) {
+			nodes.put(stage, new Node());
+		}
+	}
 
-		colorAdjustedImage = colorAdjuster.apply(originalImage, this);
-		rescaledImage = resizer.apply(colorAdjustedImage, this);
-		palettizedImage = palettizer.apply(rescaledImage, this);
+	public void addStageListener(StageListener listener) {
+		listeners.add(Objects.requireNonNull(listener, "listener"));
+	}
+
+	public void removeStageListener(StageListener listener) {
+		listeners.remove(listener);
+	}
+
+	public void setImage(BufferedImage image) {
+		originalImage = Objects.requireNonNull(image, "image");
+		scheduleUpdate();
 	}
 
 	public void setColorAdjuster(BiFunction<BufferedImage, PalettizerState, BufferedImage> colorAdjuster) {
-		this.colorAdjuster = colorAdjuster;
+		setFunction(Stage.COLOR_ADJUST, colorAdjuster);
 	}
 
 	public void setResizer(BiFunction<BufferedImage, PalettizerState, BufferedImage> resizer) {
-		this.resizer = resizer;
+		setFunction(Stage.RESIZE, resizer);
 	}
 
 	public void setPalettizer(BiFunction<BufferedImage, PalettizerState, BufferedImage> palettizer) {
-		this.palettizer = palettizer;
+		setFunction(Stage.PALETTIZE, palettizer);
+	}
+
+	private void setFunction(Stage stage, BiFunction<BufferedImage, PalettizerState, BufferedImage> function) {
+		nodes.get(stage).setFunction(function);
+		scheduleUpdate();
+	}
+
+	public @Nullable Object getParameters(Stage stage) {
+		return nodes.get(stage).parameters;
 	}
 
-	public BufferedImage getOriginalImage() {
+	/**
+	 * Sets the parameters of a stage. Setting parameters equal to the current ones doesn't re-run anything.
+	 */
+	public void setParameters(Stage stage, @Nullable Object parameters) {
+		nodes.get(stage).parameters = parameters;
+		scheduleUpdate();
+	}
+
+	public @Nullable BufferedImage getOriginalImage() {
 		return originalImage;
 	}
 
-	public BufferedImage getColorAdjustedImage() {
-		return colorAdjustedImage;
+	public @Nullable BufferedImage getColorAdjustedImage() {
+		return nodes.get(Stage.COLOR_ADJUST).output;
+	}
+
+	public @Nullable BufferedImage getRescaledImage() {
+		return nodes.get(Stage.RESIZE).output;
+	}
+
+	public @Nullable BufferedImage getPalettizedImage() {
+		return nodes.get(Stage.PALETTIZE).output;
 	}
 
-	public BufferedImage getRescaledImage() {
-		return rescaledImage;
+	private void scheduleUpdate() {
+		int generation = updateGeneration.incrementAndGet();
+		executor.execute(() -> update(generation));
 	}
 
-	public BufferedImage getPalettizedImage() {
-		return palettizedImage;
+	private void update(int generation) {
+		@Nullable BufferedImage image = originalImage;
+
+		for (Stage stage : Stage.values()) {
+			if (image == null || generation != updateGeneration.get()) {
+				return;
+			}
+
+			// Only taken by updates, in case the executor runs several at once. Setters never wait for a running stage.
+			Node node = nodes.get(stage);
+			synchronized (node) {
+				if (node.isValidFor(image)) {
+					image = node.output;
+					continue;
+				}
+
+				try {
+					image = node.run(image, this);
+				} catch (RuntimeException ex) {
+					Logger.getLogger(PalettizerState.class.getName())
+					      .log(Level.WARNING, "Stage " + stage + " failed", ex);
+					return;
+				}
+			}
+
+			fireStageCompleted(stage, image);
+		}
 	}
 
-	private BufferedImage newImage(int width, int height) {
-		return new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+	private void fireStageCompleted(Stage stage, BufferedImage output) {
+		SwingUtilities.invokeLater(() -> {
+			for (StageListener listener : listeners) {
+				listener.stageCompleted(stage, output);
+			}
+		});
+	}
+
+	/**
+	 * One stage and its memoized result.
+	 */
+	private static final class Node {
+		private volatile @Nullable BiFunction<BufferedImage, PalettizerState, BufferedImage> function   = null;
+		private volatile @Nullable Object                                                    parameters = null;
+
+		private final AtomicInteger functionVersion = new AtomicInteger();
+
+		private          @Nullable BufferedImage cachedInput           = null;
+		private          @Nullable Object        cachedParameters      = null;
+		private          int                     cachedFunctionVersion = 0;
+		private volatile @Nullable BufferedImage output                = null;
+
+		void setFunction(BiFunction<BufferedImage, PalettizerState, BufferedImage> function) {
+			// Published before the version, so whoever sees the new version also sees the new function.
+			this.function = function;
+			functionVersion.incrementAndGet();
+		}
+
+		boolean isValidFor(BufferedImage input) {
+			return input == cachedInput &&
+			       functionVersion.get() == cachedFunctionVersion &&
+			       Objects.equals(parameters, cachedParameters);
+		}
+
+		BufferedImage run(BufferedImage input, PalettizerState state) {
+			// Taken before running, so a change during the run makes the next update run it again.
+			int              functionVersion = this.functionVersion.get();
+			@Nullable Object parameters      = this.parameters;
+
+			@Nullable BiFunction<BufferedImage, PalettizerState, BufferedImage> function = this.function;
+			BufferedImage result = function == null ? input : function.apply(input, state);
+
+			cachedInput = input;
+			cachedParameters = parameters;
+			cachedFunctionVersion = functionVersion;
+			output = result;
+			return result;
+		}
 	}
 }
@@ -0,0 +1,152 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.newpalettizer;
+
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Times {@link PixelFormatConverter} for every standard image type, sequential and parallel, against
+ * {@link Graphics2D#drawImage}, and reports how much the result differs from {@link BufferedImage#getRGB}.
+ * <p>
+ * Gray types are expected to differ, because the converter doesn't apply Java2D's linear gray gamma, and premultiplied
+ * types by rounding.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class PixelFormatBenchmarkMain {
+	private static final int SIZE       = 2048;
+	private static final int TIMED_RUNS = 5;
+
+	public static void main(String... args) {
+		Map<String, BufferedImage> images = new LinkedHashMap<>();
+		images.put("INT_RGB", new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB));
+		images.put("INT_ARGB", new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB));
+		images.put("INT_ARGB_PRE", new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB_PRE));
+		images.put("INT_BGR", new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_BGR));
+		images.put("3BYTE_BGR", new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_3BYTE_BGR));
+		images.put("4BYTE_ABGR", new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_4BYTE_ABGR));
+		images.put("4BYTE_ABGR_PRE", new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_4BYTE_ABGR_PRE));
+		images.put("USHORT_565_RGB", new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_USHORT_565_RGB));
+		images.put("USHORT_555_RGB", new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_USHORT_555_RGB));
+		images.put("BYTE_GRAY", new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_GRAY));
+		images.put("USHORT_GRAY", new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_USHORT_GRAY));
+		images.put("BYTE_BINARY", new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_BINARY));
+		images.put("BYTE_INDEXED", new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_INDEXED));
+		images.put("CUSTOM_USHORT_RGBA", makeUShortRGBAImage());
+
+		Random random = new Random(0);
+		for (BufferedImage image : images.values()) {
+			fillRandom(image.getRaster(), random);
+		}
+
+		images.put("INT_ARGB (sub-image)", images.get("INT_ARGB").getSubimage(17, 23, SIZE - 40, SIZE - 50));
+		images.put("3BYTE_BGR (sub-image)", images.get("3BYTE_BGR").getSubimage(17, 23, SIZE - 40, SIZE - 50));
+		images.put("BYTE_BINARY (sub-image)", images.get("BYTE_BINARY").getSubimage(3, 5, SIZE - 10, SIZE - 10));
+
+		System.out.println("Cores: " + Runtime.getRuntime().availableProcessors());
+		System.out.printf("%-24s %6s %10s %10s %10s %10s %8s%n",
+		                  "Type", "Direct", "Seq (ms)", "Par (ms)", "G2D (ms)", "Differ", "Max diff");
+
+		for (Map.Entry<String, BufferedImage> entry : images.entrySet()) {
+			BufferedImage image  = entry.getValue();
+			int           width  = image.getWidth();
+			int           height = image.getHeight();
+			int[]         dst    = new int[width * height];
+
+			double sequential = time(() -> PixelFormatConverter.convert(image, dst, false));
+			double parallel   = time(() -> PixelFormatConverter.convert(image, dst, true));
+			double graphics2D = time(() -> {
+				BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+				Graphics2D    g      = target.createGraphics();
+				try {
+					g.drawImage(image, 0, 0, null);
+				} finally {
+					g.dispose();
+				}
+			});
+
+			int[] reference = image.getRGB(0, 0, width, height, null, 0, width);
+			int   differ    = 0;
+			int   maxDiff   = 0;
+			for (int i = 0; i < dst.length; i++) {
+				if (dst[i] != reference[i]) {
+					differ++;
+					for (int shift = 0; shift < 32; shift += 8) {
+						maxDiff = Math.max(maxDiff, Math.abs((dst[i] >>> shift & 0xFF) - (reference[i] >>> shift & 0xFF)));
+					}
+				}
+			}
+
+			System.out.printf("%-24s %6s %10.2f %10.2f %10.2f %10d %8d%n",
+			                  entry.getKey(), PixelFormatConverter.isDirect(image),
+			                  sequential, parallel, graphics2D, differ, maxDiff);
+		}
+	}
+
+	private static BufferedImage makeUShortRGBAImage() {
+		ComponentColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+		                                                         true, false, Transparency.TRANSLUCENT,
+		                                                         DataBuffer.TYPE_USHORT);
+		WritableRaster raster = colorModel.createCompatibleWritableRaster(SIZE, SIZE);
+		return new BufferedImage(colorModel, raster, false, null);
+	}
+
+	private static void fillRandom(WritableRaster raster, Random random) {
+		DataBuffer buffer = raster.getDataBuffer();
+		for (int i = 0; i < buffer.getSize(); i++) {
+			buffer.setElem(i, random.nextInt());
+		}
+
+		// Make premultiplied data valid
+		if (raster.getNumBands() == 4) {
+			int[] pixel = new int[4];
+			for (int y = 0; y < raster.getHeight(); y++) {
+				for (int x = 0; x < raster.getWidth(); x++) {
+					raster.getPixel(x, y, pixel);
+					pixel[3] = Math.max(pixel[3], Math.max(pixel[0], Math.max(pixel[1], pixel[2])));
+					raster.setPixel(x, y, pixel);
+				}
+			}
+		}
+	}
+
+	private static double time(Runnable task) {
+		task.run();
+
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < TIMED_RUNS; i++) {
+			long start = System.nanoTime();
+			task.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		return best / 1.0e6;
+	}
+}
@@ -0,0 +1,588 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.newpalettizer;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.stream.IntStream;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Converts any {@link BufferedImage} to an array of ARGB pixels.
+ * <p>
+ * The common layouts (packed int and ushort, interleaved byte and ushort components, indexed and packed binary) are
+ * read directly from the data buffer. This covers every standard image type, and also most {@code TYPE_CUSTOM} images
+ * as produced by ImageIO, like 16-bit PNGs. Everything else goes through the color model. Scanline strides and
+ * offsets of the sample model and raster are honored, so sub-images convert correctly.
+ * <p>
+ * Large images are split in bands of rows that are converted in parallel.
+ * <p>
+ * Gray images are mapped directly to gray values, without the gamma correction Java2D applies to its linear gray
+ * color space.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class PixelFormatConverter {
+	/** Images with fewer pixels are converted on the calling thread. */
+	private static final int MIN_PARALLEL_PIXELS = 65536;
+	/** Minimum number of pixels per band, to amortize the task overhead. */
+	private static final int MIN_BAND_PIXELS     = 16384;
+
+	/** Un-premultiplied component values, indexed by alpha << 8 | component. */
+	private static final byte[] UNPREMULTIPLY_TABLE = new byte[65536];
+
+	static {
+		for (int a = 1; a < 256; a++) {
+			for (int c = 0; c < 256; c++) {
+				UNPREMULTIPLY_TABLE[a << 8 | c] = (byte)Math.min(255, (c * 255 + a / 2) / a);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface Kernel {
+		/**
+		 * Converts the rows {@code [beginY, endY)} to {@code dst}, which has the same width as the image.
+		 */
+		void convert(int beginY, int endY, int[] dst);
+	}
+
+	private PixelFormatConverter() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Converts the image to ARGB pixels, in parallel if it's large enough.
+	 *
+	 * @param dst the destination, with at least width * height elements, in scanline order
+	 */
+	public static void convert(BufferedImage src, int[] dst) {
+		convert(src, dst, true);
+	}
+
+	/**
+	 * Converts the image to ARGB pixels.
+	 *
+	 * @param dst      the destination, with at least width * height elements, in scanline order
+	 * @param parallel whether large images may be converted using multiple threads
+	 */
+	public static void convert(BufferedImage src, int[] dst, boolean parallel) {
+		int width  = src.getWidth();
+		int height = src.getHeight();
+		if (dst.length < width * height) {
+			throw new IllegalArgumentException("'dst' is too small for " + width + "x" + height + ": " + dst.length);
+		}
+
+		Kernel kernel = makeKernel(src);
+
+		long pixels = (long)width * height;
+		if (!parallel || pixels < MIN_PARALLEL_PIXELS) {
+			kernel.convert(0, height, dst);
+			return;
+		}
+
+		int threads    = Runtime.getRuntime().availableProcessors();
+		int bandHeight = Math.max(Math.max(1, MIN_BAND_PIXELS / width), (height + threads * 4 - 1) / (threads * 4));
+		int bands      = (height + bandHeight - 1) / bandHeight;
+
+		IntStream.range(0, bands).parallel().forEach(band -> {
+			int beginY = band * bandHeight;
+			kernel.convert(beginY, Math.min(height, beginY + bandHeight), dst);
+		});
+	}
+
+	/**
+	 * Returns whether the image is converted by a direct kernel, as opposed to through the color model.
+	 */
+	public static boolean isDirect(BufferedImage src) {
+		return !(makeKernel(src) instanceof ColorModelKernel);
+	}
+
+	private static Kernel makeKernel(BufferedImage src) {
+		Raster      raster     = src.getRaster();
+		SampleModel sm         = raster.getSampleModel();
+		DataBuffer  dataBuffer = raster.getDataBuffer();
+		ColorModel  cm         = src.getColorModel();
+
+		if (sm instanceof SinglePixelPackedSampleModel && cm instanceof DirectColorModel &&
+		    dataBuffer.getNumBanks() == 1 && cm.getColorSpace().isCS_sRGB()) {
+			if (dataBuffer instanceof DataBufferInt) {
+				switch (src.getType()) {
+					case BufferedImage.TYPE_INT_RGB:
+						return new IntKernel(src, IntKernel.RGB);
+					case BufferedImage.TYPE_INT_ARGB:
+						return new IntKernel(src, IntKernel.ARGB);
+					case BufferedImage.TYPE_INT_ARGB_PRE:
+						return new IntKernel(src, IntKernel.ARGB_PRE);
+					case BufferedImage.TYPE_INT_BGR:
+						return new IntKernel(src, IntKernel.BGR);
+				}
+			}
+
+			if (dataBuffer instanceof DataBufferInt || dataBuffer instanceof DataBufferUShort ||
+			    dataBuffer instanceof DataBufferByte) {
+				return new PackedKernel(src);
+			}
+		}
+
+		if (sm instanceof ComponentSampleModel && dataBuffer.getNumBanks() == 1 &&
+		    (dataBuffer instanceof DataBufferByte || dataBuffer instanceof DataBufferUShort)) {
+			if (cm instanceof IndexColorModel && sm.getNumBands() == 1) {
+				return new IndexedKernel(src);
+			}
+
+			if (cm instanceof ComponentColorModel) {
+				ColorSpace cs     = cm.getColorSpace();
+				int        colors = cm.getNumColorComponents();
+				if (cs.isCS_sRGB() && colors == 3 || cs.getType() == ColorSpace.TYPE_GRAY && colors == 1) {
+					return new ComponentKernel(src);
+				}
+			}
+		}
+
+		if (sm instanceof MultiPixelPackedSampleModel && cm instanceof IndexColorModel &&
+		    dataBuffer instanceof DataBufferByte) {
+			return new BinaryKernel(src);
+		}
+
+		return new ColorModelKernel(src);
+	}
+
+	private static int unpremultiply(int a, int c) {
+		return UNPREMULTIPLY_TABLE[a << 8 | c] & 0xFF;
+	}
+
+	/**
+	 * The four standard packed int types.
+	 */
+	private static final class IntKernel implements Kernel {
+		static final int RGB      = 0;
+		static final int ARGB     = 1;
+		static final int ARGB_PRE = 2;
+		static final int BGR      = 3;
+
+		private final int   format;
+		private final int   width;
+		private final int[] data;
+		private final int   offset;
+		private final int   scanlineStride;
+
+		IntKernel(BufferedImage src, int format) {
+			Raster                       raster = src.getRaster();
+			SinglePixelPackedSampleModel sm     = (SinglePixelPackedSampleModel)raster.getSampleModel();
+			DataBufferInt                buffer = (DataBufferInt)raster.getDataBuffer();
+
+			this.format = format;
+			width = src.getWidth();
+			data = buffer.getData();
+			offset = buffer.getOffset() + sm.getOffset(-raster.getSampleModelTranslateX(),
+			                                           -raster.getSampleModelTranslateY());
+			scanlineStride = sm.getScanlineStride();
+		}
+
+		@Override
+		public void convert(int beginY, int endY, int[] dst) {
+			for (int y = beginY; y < endY; y++) {
+				int i = offset + y * scanlineStride;
+				int j = y * width;
+
+				switch (format) {
+					case RGB:
+						for (int x = 0; x < width; x++) {
+							dst[j + x] = 0xFF000000 | data[i + x];
+						}
+						break;
+					case ARGB:
+						System.arraycopy(data, i, dst, j, width);
+						break;
+					case ARGB_PRE:
+						for (int x = 0; x < width; x++) {
+							int p = data[i + x];
+							int a = p >>> 24;
+							dst[j + x] = a << 24 |
+							             unpremultiply(a, p >> 16 & 0xFF) << 16 |
+							             unpremultiply(a, p >> 8 & 0xFF) << 8 |
+							             unpremultiply(a, p & 0xFF);
+						}
+						break;
+					case BGR:
+						for (int x = 0; x < width; x++) {
+							int p = data[i + x];
+							dst[j + x] = 0xFF000000 | (p & 0xFF) << 16 | p & 0xFF00 | p >> 16 & 0xFF;
+						}
+						break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Any other packed layout with a {@link DirectColorModel}, like the USHORT 555 and 565 types. Pixels of at most 16
+	 * bits are converted through a table.
+	 */
+	private static final class PackedKernel implements Kernel {
+		private final int        width;
+		private final DataBuffer buffer;
+		private final int        offset;
+		private final int        scanlineStride;
+		private final boolean    premultiplied;
+
+		private final int[] masks  = new int[4];
+		private final int[] shifts = new int[4];
+		private final int[] maxima = new int[4];
+		private final int   numBands;
+
+		private final @Nullable int[] table;
+
+		PackedKernel(BufferedImage src) {
+			Raster                       raster = src.getRaster();
+			SinglePixelPackedSampleModel sm     = (SinglePixelPackedSampleModel)raster.getSampleModel();
+
+			width = src.getWidth();
+			buffer = raster.getDataBuffer();
+			offset = buffer.getOffset() + sm.getOffset(-raster.getSampleModelTranslateX(),
+			                                           -raster.getSampleModelTranslateY());
+			scanlineStride = sm.getScanlineStride();
+			premultiplied = src.getColorModel().isAlphaPremultiplied();
+
+			// Bands are in R, G, B, (A) order
+			numBands = sm.getNumBands();
+			for (int b = 0; b < numBands; b++) {
+				masks[b] = sm.getBitMasks()[b];
+				shifts[b] = sm.getBitOffsets()[b];
+				maxima[b] = masks[b] >>> shifts[b];
+			}
+
+			if (buffer instanceof DataBufferInt) {
+				table = null;
+			} else {
+				table = new int[buffer instanceof DataBufferByte ? 256 : 65536];
+				for (int p = 0; p < table.length; p++) {
+					table[p] = toARGB(p);
+				}
+			}
+		}
+
+		@Override
+		public void convert(int beginY, int endY, int[] dst) {
+			for (int y = beginY; y < endY; y++) {
+				int i = offset + y * scanlineStride;
+				int j = y * width;
+
+				if (table != null) {
+					for (int x = 0; x < width; x++) {
+						dst[j + x] = table[buffer.getElem(i + x)];
+					}
+				} else {
+					for (int x = 0; x < width; x++) {
+						dst[j + x] = toARGB(buffer.getElem(i + x));
+					}
+				}
+			}
+		}
+
+		private int toARGB(int p) {
+			// A DirectColorModel always has 3 or 4 bands
+			int r = getComponent(p, 0);
+			int g = getComponent(p, 1);
+			int b = getComponent(p, 2);
+			int a = numBands == 4 ? getComponent(p, 3) : 255;
+
+			if (premultiplied) {
+				r = unpremultiply(a, r);
+				g = unpremultiply(a, g);
+				b = unpremultiply(a, b);
+			}
+
+			return a << 24 | r << 16 | g << 8 | b;
+		}
+
+		private int getComponent(int p, int band) {
+			int sample = (p & masks[band]) >>> shifts[band];
+			return maxima[band] == 255 ? sample : (sample * 255 + maxima[band] / 2) / maxima[band];
+		}
+	}
+
+	/**
+	 * Interleaved or banded byte or ushort components, sRGB or gray, with or without alpha. This covers the standard
+	 * 3BYTE, 4BYTE and GRAY types, and most images ImageIO reads as TYPE_CUSTOM.
+	 */
+	private static final class ComponentKernel implements Kernel {
+		private final int     width;
+		private final int     numBands;
+		private final boolean gray;
+		private final boolean premultiplied;
+
+		private final @Nullable byte[]  bytes;
+		private final @Nullable short[] shorts;
+
+		private final int[] bandOffsets;
+		private final int   pixelStride;
+		private final int   scanlineStride;
+
+		ComponentKernel(BufferedImage src) {
+			Raster               raster = src.getRaster();
+			ComponentSampleModel sm     = (ComponentSampleModel)raster.getSampleModel();
+			DataBuffer           buffer = raster.getDataBuffer();
+
+			width = src.getWidth();
+			numBands = sm.getNumBands();
+			gray = src.getColorModel().getNumColorComponents() == 1;
+			premultiplied = src.getColorModel().isAlphaPremultiplied();
+
+			bytes = buffer instanceof DataBufferByte ? ((DataBufferByte)buffer).getData() : null;
+			shorts = buffer instanceof DataBufferUShort ? ((DataBufferUShort)buffer).getData() : null;
+
+			int tx = -raster.getSampleModelTranslateX();
+			int ty = -raster.getSampleModelTranslateY();
+			bandOffsets = new int[numBands];
+			for (int b = 0; b < numBands; b++) {
+				bandOffsets[b] = buffer.getOffset() + sm.getOffset(tx, ty, b);
+			}
+
+			pixelStride = sm.getPixelStride();
+			scanlineStride = sm.getScanlineStride();
+		}
+
+		@Override
+		public void convert(int beginY, int endY, int[] dst) {
+			if (bytes != null && !premultiplied) {
+				convertBytes(beginY, endY, dst, bytes);
+				return;
+			}
+
+			int[] samples = new int[4];
+
+			for (int y = beginY; y < endY; y++) {
+				int rowOffset = y * scanlineStride;
+				int j         = y * width;
+
+				for (int x = 0; x < width; x++) {
+					int i = rowOffset + x * pixelStride;
+					for (int b = 0; b < numBands; b++) {
+						samples[b] = bytes != null ?
+						             bytes[bandOffsets[b] + i] & 0xFF :
+						             ((shorts[bandOffsets[b] + i] & 0xFFFF) + 128) / 257;
+					}
+
+					int r;
+					int g;
+					int b;
+					int a;
+					if (gray) {
+						r = g = b = samples[0];
+						a = numBands > 1 ? samples[1] : 255;
+					} else {
+						r = samples[0];
+						g = samples[1];
+						b = samples[2];
+						a = numBands > 3 ? samples[3] : 255;
+					}
+
+					if (premultiplied) {
+						r = unpremultiply(a, r);
+						g = unpremultiply(a, g);
+						b = unpremultiply(a, b);
+					}
+
+					dst[j + x] = a << 24 | r << 16 | g << 8 | b;
+				}
+			}
+		}
+
+		/**
+		 * The common case, with the band count resolved outside the pixel loop.
+		 */
+		private void convertBytes(int beginY, int endY, int[] dst, byte[] bytes) {
+			int o0 = bandOffsets[0];
+			int o1 = bandOffsets[Math.min(1, numBands - 1)];
+			int o2 = bandOffsets[Math.min(2, numBands - 1)];
+			int o3 = bandOffsets[numBands - 1];
+
+			for (int y = beginY; y < endY; y++) {
+				int i = y * scanlineStride;
+				int j = y * width;
+				int k = j + width;
+
+				switch (numBands) {
+					case 1:
+						for (; j < k; j++, i += pixelStride) {
+							dst[j] = 0xFF000000 | 0x010101 * (bytes[o0 + i] & 0xFF);
+						}
+						break;
+					case 2:
+						for (; j < k; j++, i += pixelStride) {
+							dst[j] = bytes[o1 + i] << 24 | 0x010101 * (bytes[o0 + i] & 0xFF);
+						}
+						break;
+					case 3:
+						for (; j < k; j++, i += pixelStride) {
+							dst[j] = 0xFF000000 |
+							         (bytes[o0 + i] & 0xFF) << 16 |
+							         (bytes[o1 + i] & 0xFF) << 8 |
+							         bytes[o2 + i] & 0xFF;
+						}
+						break;
+					case 4:
+						for (; j < k; j++, i += pixelStride) {
+							dst[j] = bytes[o3 + i] << 24 |
+							         (bytes[o0 + i] & 0xFF) << 16 |
+							         (bytes[o1 + i] & 0xFF) << 8 |
+							         bytes[o2 + i] & 0xFF;
+						}
+						break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * One byte or ushort per pixel, through a palette.
+	 */
+	private static final class IndexedKernel implements Kernel {
+		private final int   width;
+		private final int[] colors;
+
+		private final @Nullable byte[]  bytes;
+		private final @Nullable short[] shorts;
+
+		private final int offset;
+		private final int pixelStride;
+		private final int scanlineStride;
+
+		IndexedKernel(BufferedImage src) {
+			Raster               raster = src.getRaster();
+			ComponentSampleModel sm     = (ComponentSampleModel)raster.getSampleModel();
+			DataBuffer           buffer = raster.getDataBuffer();
+
+			width = src.getWidth();
+			colors = getColors((IndexColorModel)src.getColorModel());
+
+			bytes = buffer instanceof DataBufferByte ? ((DataBufferByte)buffer).getData() : null;
+			shorts = buffer instanceof DataBufferUShort ? ((DataBufferUShort)buffer).getData() : null;
+
+			offset = buffer.getOffset() + sm.getOffset(-raster.getSampleModelTranslateX(),
+			                                           -raster.getSampleModelTranslateY(), 0);
+			pixelStride = sm.getPixelStride();
+			scanlineStride = sm.getScanlineStride();
+		}
+
+		@Override
+		public void convert(int beginY, int endY, int[] dst) {
+			int maxIndex = colors.length - 1;
+
+			for (int y = beginY; y < endY; y++) {
+				int i = offset + y * scanlineStride;
+				int j = y * width;
+
+				for (int x = 0; x < width; x++, i += pixelStride) {
+					int index = bytes != null ? bytes[i] & 0xFF : shorts[i] & 0xFFFF;
+					dst[j + x] = colors[Math.min(index, maxIndex)];
+				}
+			}
+		}
+	}
+
+	/**
+	 * 1, 2 or 4 bits per pixel, through a palette, as in TYPE_BYTE_BINARY.
+	 */
+	private static final class BinaryKernel implements Kernel {
+		private final int    width;
+		private final int[]  colors;
+		private final byte[] data;
+		private final int    offset;
+		private final int    bitOffset;
+		private final int    bits;
+		private final int    scanlineStride;
+
+		BinaryKernel(BufferedImage src) {
+			Raster                      raster = src.getRaster();
+			MultiPixelPackedSampleModel sm     = (MultiPixelPackedSampleModel)raster.getSampleModel();
+			DataBufferByte              buffer = (DataBufferByte)raster.getDataBuffer();
+
+			int tx = -raster.getSampleModelTranslateX();
+			int ty = -raster.getSampleModelTranslateY();
+
+			width = src.getWidth();
+			colors = getColors((IndexColorModel)src.getColorModel());
+			data = buffer.getData();
+			offset = buffer.getOffset() + ty * sm.getScanlineStride();
+			bitOffset = tx * sm.getPixelBitStride() + sm.getDataBitOffset();
+			bits = sm.getPixelBitStride();
+			scanlineStride = sm.getScanlineStride();
+		}
+
+		@Override
+		public void convert(int beginY, int endY, int[] dst) {
+			int mask     = (1 << bits) - 1;
+			int maxIndex = colors.length - 1;
+
+			for (int y = beginY; y < endY; y++) {
+				int rowOffset = offset + y * scanlineStride;
+				int j         = y * width;
+
+				for (int x = 0; x < width; x++) {
+					int bit   = bitOffset + x * bits;
+					int shift = 8 - bits - (bit & 7);
+					int index = data[rowOffset + (bit >> 3)] >> shift & mask;
+					dst[j + x] = colors[Math.min(index, maxIndex)];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Anything else, through {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+	 */
+	private static final class ColorModelKernel implements Kernel {
+		private final BufferedImage src;
+
+		ColorModelKernel(BufferedImage src) {
+			this.src = src;
+		}
+
+		@Override
+		public void convert(int beginY, int endY, int[] dst) {
+			int width = src.getWidth();
+			src.getRGB(0, beginY, width, endY - beginY, dst, beginY * width, width);
+		}
+	}
+
+	private static int[] getColors(IndexColorModel colorModel) {
+		int[] colors = new int[colorModel.getMapSize()];
+		colorModel.getRGBs(colors);
+		return colors;
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.newpalettizer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import org.digitalmodular.paotools.common.PngRowReader;
+
+/**
+ * An image that's read from top to bottom, a number of rows at a time, so it never has to be in memory as a whole.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public interface RowSource extends Closeable {
+	/**
+	 * Opens an image file. Non-interlaced PNGs are decoded in a single forward pass by {@link PngRowReader}. Other
+	 * formats are read with ImageIO, one source region per call to {@link #readRows}.
+	 */
+	static RowSource open(File file) throws IOException {
+		if (PngRowReader.canRead(file.toPath())) {
+			return new PngRowReader(file.toPath());
+		}
+
+		return ImageReaderRowSource.open(file);
+	}
+
+	int getWidth();
+
+	int getHeight();
+
+	/**
+	 * Reads the next {@code rows} rows as ARGB into {@code dst}, starting at index 0.
+	 */
+	void readRows(int[] dst, int rows) throws IOException;
+}
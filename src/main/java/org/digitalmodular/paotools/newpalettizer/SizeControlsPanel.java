@@ -21,6 +21,7 @@ package org.digitalmodular.paotools.newpalettizer;
 
 import java.awt.Dimension;
 import java.awt.GridLayout;
+import java.awt.image.BufferedImage;
 import javax.swing.BoxLayout;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -30,9 +31,11 @@ import javax.swing.border.TitledBorder;
  * @author Zom-B
  */
 // Created 2023-01-16
-public class SizeControlsPanel extends JPanel {
+public class SizeControlsPanel extends JPanel implements PalettizerState.StageListener {
 	public static final int CONTROLS_PANEL_WIDTH = 600;
 
+	private final JLabel statusLabel = new JLabel("Controls");
+
 	@SuppressWarnings({"OverridableMethodCallDuringObjectConstruction", "ThisEscapedInObjectConstruction"})
 	public SizeControlsPanel() {
 		super(null);
@@ -40,7 +43,14 @@ public class SizeControlsPanel extends JPanel {
 		setOpaque(false);
 
 		setBorder(new TitledBorder("Resize options"));
-		add(new JLabel("Controls"));
+		add(statusLabel);
 		setPreferredSize(new Dimension(CONTROLS_PANEL_WIDTH, getPreferredSize().height));
 	}
+
+	@Override
+	public void stageCompleted(PalettizerState.Stage stage, BufferedImage output) {
+		if (stage == PalettizerState.Stage.RESIZE) {
+			statusLabel.setText("Resized: " + output.getWidth() + "x" + output.getHeight());
+		}
+	}
 }
@@ -0,0 +1,96 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.newpalettizer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+
+import org.digitalmodular.paotools.common.IndexedPngWriter;
+import org.digitalmodular.paotools.newpalettizer.palette.PRPaletteV1;
+import org.digitalmodular.paotools.newpalettizer.palette.Palette;
+import org.digitalmodular.paotools.newpalettizer.palettizer.DitherPalettizer;
+import org.digitalmodular.paotools.newpalettizer.palettizer.ErrorDiffusionPalettizer;
+import org.digitalmodular.paotools.newpalettizer.palettizer.NearestPalettizer;
+import org.digitalmodular.paotools.newpalettizer.palettizer.Palettizer;
+
+/**
+ * Palettizes images of any size, by reading the source in strips and streaming the result to an indexed PNG. Peak
+ * memory depends on the image width and strip height, not on the image size. PNG sources are decoded in a single pass,
+ * so time is linear in the image size.
+ * <p>
+ * Usage: {@code StreamingPalettizerMain <input> <output.png> [nearest|ordered|diffusion] [stripHeight]}. Without a
+ * strip height, strips are sized from {@link Palettizer#STRIP_MEMORY}.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class StreamingPalettizerMain {
+	public static void main(String... args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: StreamingPalettizerMain <input> <output.png> [nearest|ordered|diffusion]" +
+			                   " [stripHeight]");
+			System.exit(1);
+		}
+
+		Palette    pao        = PRPaletteV1.instance();
+		Palettizer palettizer = makePalettizer(pao, args.length > 2 ? args[2] : "nearest");
+		palettizer.setLookupTableEnabled(true);
+		if (args.length > 3) {
+			palettizer.setStripHeight(Integer.parseInt(args[3]));
+		}
+
+		long start = System.nanoTime();
+		palettize(new File(args[0]), new File(args[1]), palettizer);
+		Logger.getGlobal().info("Palettized in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+	}
+
+	public static Palettizer makePalettizer(Palette pao, String method) {
+		switch (method) {
+			case "nearest":
+				return new NearestPalettizer(pao);
+			case "ordered":
+				return new DitherPalettizer(pao);
+			case "diffusion":
+				return new ErrorDiffusionPalettizer(pao);
+			default:
+				throw new IllegalArgumentException("Unknown method: " + method);
+		}
+	}
+
+	public static void palettize(File inputFile, File outputFile, Palettizer palettizer) throws IOException {
+		Palette pao     = palettizer.getPao();
+		int[]   palette = new int[pao.size()];
+		for (int i = 0; i < palette.length; i++) {
+			palette[i] = 0xFF000000 | pao.get(i).getRGB();
+		}
+
+		try (RowSource source = RowSource.open(inputFile);
+		     OutputStream out = new BufferedOutputStream(Files.newOutputStream(outputFile.toPath()));
+		     IndexedPngWriter writer = new IndexedPngWriter(out, source.getWidth(), source.getHeight(), palette,
+		                                                    Deflater.DEFAULT_COMPRESSION)) {
+			palettizer.palettize(source, (y, paletteIndices) -> writer.writeRow(paletteIndices, 0));
+		}
+	}
+}
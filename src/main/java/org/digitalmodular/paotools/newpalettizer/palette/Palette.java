@@ -19,25 +19,49 @@
 
 package org.digitalmodular.paotools.newpalettizer.palette;
 
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.paotools.common.IntIntHashMap;
+
 /**
+ * A fixed list of colors. Implementations must not change their colors after construction.
+ *
  * @author Mark Jeronimus
  */
 // Created 2020-10-30
+// Changed 2026-10-17 Added the reverse index
 public abstract class Palette {
+	private volatile @Nullable IntIntHashMap reverseIndex = null;
+
 	public abstract int size();
 
 	public abstract PaletteColor get(int index);
 
+	/**
+	 * Returns the index of the color, ignoring alpha, or -1 if it's not in the palette. If the palette contains a
+	 * color more than once, the lowest index is returned.
+	 * <p>
+	 * The first call builds a reverse index, so every call after that is a constant-time lookup.
+	 */
 	public int getIndexOfColor(int rgb) {
-		rgb &= 0xFFFFFF;
+		return getReverseIndex().get(rgb & 0xFFFFFF, -1);
+	}
+
+	private IntIntHashMap getReverseIndex() {
+		@Nullable IntIntHashMap reverseIndex = this.reverseIndex;
+		if (reverseIndex == null) {
+			int size = size();
+			reverseIndex = new IntIntHashMap(size * 2);
 
-		int size = size();
-		for (int i = 0; i < size; i++) {
-			if (get(i).getRGB() == rgb) {
-				return i;
+			// Backwards, so duplicates end up with the lowest index
+			for (int i = size - 1; i >= 0; i--) {
+				reverseIndex.put(get(i).getRGB(), i);
 			}
+
+			// Benign race: every thread builds the same index
+			this.reverseIndex = reverseIndex;
 		}
 
-		return -1;
+		return reverseIndex;
 	}
 }
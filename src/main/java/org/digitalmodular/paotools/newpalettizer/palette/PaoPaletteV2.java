@@ -69,7 +69,7 @@ public final class PaoPaletteV2 extends Palette {
 
 	private static final Palette INSTANCE = new PaoPaletteV2();
 
-	private PaoPaletteV2() {throw new AssertionError();
+	private PaoPaletteV2() {
 	}
 
 	public static Palette instance() {
@@ -0,0 +1,125 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.newpalettizer.palettizer;
+
+/**
+ * The error diffusion kernels known from literature.
+ * <p>
+ * Each kernel is given as rows of weights. The center column is the current pixel, and the first row is the current
+ * row, so only the weights right of the center of the first row are non-zero.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+@SuppressWarnings("SpellCheckingInspection")
+public enum DiffusionMethod {
+	FLOYD_STEINBERG(16, new int[][]{{0, 0, 7},
+	                                {3, 5, 1}}),
+	JARVIS_JUDICE_NINKE(48, new int[][]{{0, 0, 0, 7, 5},
+	                                    {3, 5, 7, 5, 3},
+	                                    {1, 3, 5, 3, 1}}),
+	STUCKI(42, new int[][]{{0, 0, 0, 8, 4},
+	                       {2, 4, 8, 4, 2},
+	                       {1, 2, 4, 2, 1}}),
+	BURKES(32, new int[][]{{0, 0, 0, 8, 4},
+	                       {2, 4, 8, 4, 2}}),
+	SIERRA3(32, new int[][]{{0, 0, 0, 5, 3},
+	                        {2, 4, 5, 4, 2},
+	                        {0, 2, 3, 2, 0}}),
+	SIERRA2(16, new int[][]{{0, 0, 0, 4, 3},
+	                        {1, 2, 3, 2, 1}}),
+	SIERRA24A(4, new int[][]{{0, 0, 2},
+	                         {1, 1, 0}}),
+	STEVENSON_ARCE(200, new int[][]{{0, 0, 0, 0, 0, 32, 0},
+	                                {12, 0, 26, 0, 30, 0, 16},
+	                                {0, 12, 0, 26, 0, 12, 0},
+	                                {5, 0, 12, 0, 12, 0, 5}}),
+	/** Deliberately diffuses only 6/8 of the error, which preserves contrast at the cost of detail in the extremes. */
+	ATKINSON(8, new int[][]{{0, 0, 0, 1, 1},
+	                        {0, 1, 1, 1, 0},
+	                        {0, 0, 1, 0, 0}});
+
+	private final int[]   dx;
+	private final int[]   dy;
+	private final float[] weights;
+	private final int     reach;
+	private final int     height;
+
+	DiffusionMethod(int divisor, int[][] matrix) {
+		int center = matrix[0].length / 2;
+
+		int count = 0;
+		for (int[] row : matrix) {
+			for (int weight : row) {
+				if (weight != 0) {
+					count++;
+				}
+			}
+		}
+
+		dx = new int[count];
+		dy = new int[count];
+		weights = new float[count];
+
+		int i = 0;
+		for (int y = 0; y < matrix.length; y++) {
+			for (int x = 0; x < matrix[y].length; x++) {
+				if (matrix[y][x] != 0) {
+					dx[i] = x - center;
+					dy[i] = y;
+					weights[i] = matrix[y][x] / (float)divisor;
+					i++;
+				}
+			}
+		}
+
+		reach = center;
+		height = matrix.length;
+	}
+
+	/** Returns the number of weights. */
+	public int size() {
+		return weights.length;
+	}
+
+	/** Returns the horizontal offset of a weight, for left-to-right scanning. */
+	public int getDX(int i) {
+		return dx[i];
+	}
+
+	/** Returns the vertical offset of a weight, which is at least 0. */
+	public int getDY(int i) {
+		return dy[i];
+	}
+
+	public float getWeight(int i) {
+		return weights[i];
+	}
+
+	/** Returns the largest horizontal distance the error travels. */
+	public int getReach() {
+		return reach;
+	}
+
+	/** Returns the number of rows the kernel spans, including the current row. */
+	public int getHeight() {
+		return height;
+	}
+}
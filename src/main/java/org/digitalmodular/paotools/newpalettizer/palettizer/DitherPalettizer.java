@@ -38,13 +38,33 @@
 
 package org.digitalmodular.paotools.newpalettizer.palettizer;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.paotools.common.ColorSpaceTables;
+import org.digitalmodular.paotools.common.ColorUtilities;
+import org.digitalmodular.paotools.ditherer.MixingPlan;
 import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
 import org.digitalmodular.paotools.newpalettizer.palette.Palette;
 
 /**
+ * Ordered (threshold matrix) ditherer, using Yliluoma's algorithm 2 to find the mix of palette colors for each input
+ * color.
+ * <p>
+ * Finding a mixing plan is expensive, but images repeat colors heavily, so plans are cached by input color. With
+ * {@link #setCacheQuantizationBits(int)}, similar colors can share a plan, trading color accuracy for more cache hits.
+ * The cache is kept between images, as long as the parameters don't change.
+ *
  * @author Zom-B
  */
 // Created 2020-11-08
+// Changed 2026-10-17 Threshold matrix aligned to the whole image when streaming
 public class DitherPalettizer extends Palettizer {
 //	@SuppressWarnings("SpellCheckingInspection")
 //	public enum DitheringMethod {
@@ -81,78 +101,251 @@ public class DitherPalettizer extends Palettizer {
 //	private DitheringMethod Dithering                       = DitheringMethod.DITHER_YLILUOMA1_ITERATIVE;
 //	private DiffusionMethod Diffusion                       = DiffusionMethod.DIFFUSION_NONE;
 
-	protected DitherPalettizer(Palette pao) {
+	/** Clear the cache when it grows beyond this many plans, to bound memory use on noisy images. */
+	private static final int MAX_CACHE_SIZE = 1 << 20;
+
+	private int ditherMatrixWidth     = 8;
+	private int ditherMatrixHeight    = 8;
+	private int ditherColorListSize   = 16;
+	private int cacheQuantizationBits = 0;
+
+	private int[] ditherMatrix = createDispersedDitheringMatrix(ditherMatrixWidth, ditherMatrixHeight);
+
+	private final     Map<Integer, MixingPlan> mixingPlanCache = new ConcurrentHashMap<>(4096);
+	private @Nullable PerceptualHSLMatcher     cacheMatcher    = null;
+
+	private final LongAdder cacheHits   = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
+
+	public DitherPalettizer(Palette pao) {
 		super(pao);
 	}
 
-//	List<Integer> CreatePowerofTwoDitheringMatrix(int Width, int Height) {
-//		// Find M=ceil(log2(x)) and L=ceil(log2(y))
-//		int M = 0;
-//		while (Width > (1 << M))
-//			++M;
-//
-//		int L = 0;
-//		while (Height > (1 << L))
-//			++L;
-//
-//		int           RoundedWidth  = 1 << M;
-//		int           RoundedHeight = 1 << L;
-//		List<Integer> result        = new ArrayList<>(Width * Height);
-//
-//		for (int y = 0; y < Height; ++y)
-//			for (int x = 0; x < Width; ++x) {
-//				int v = 0, offset = 0, xmask = M, ymask = L;
-//				if (M == 0 || (M > L && L != 0)) {
-//					int xc = x ^ (y << M >> L), yc = y;
-//					for (int bit = 0; bit < M + L; ) {
-//						v |= ((yc >> --ymask) & 1) << bit++;
-//						for (offset += M; offset >= L; offset -= L)
-//							v |= ((xc >> --xmask) & 1) << bit++;
-//					}
-//				} else {
-//					int xc = x, yc = y ^ (x << L >> M);
-//					for (int bit = 0; bit < M + L; ) {
-//						v |= ((xc >> --xmask) & 1) << bit++;
-//						for (offset += L; offset >= M; offset -= M)
-//							v |= ((yc >> --ymask) & 1) << bit++;
-//					}
-//				}
-//				result.add(v);
-//			}
-//
-//		if (Height != RoundedHeight
-//		    || Width != RoundedWidth) {
-//			// If the user requested e.g. 3x3 and we used 4x4 algorithm,
-//			// convert the numbers so that the resulting range is ungapped:
-//			//
-//			// We generated:  We saved:   We compress the number range:
-//			//  0 12  3 15     0 12  3     0 7 3
-//			//  8  4 11  7     8  4 11     5 4 6
-//			//  2 14  1 13     2 14  1     2 8 1
-//			// 10  6  9  5
-//			int max_value   = RoundedWidth * RoundedHeight;
-//			int matrix_size = Height * Width;
-//			int n_missing   = 0;
-//			for (int v = 0; v < max_value; ++v) {
-//				boolean found = false;
-//				for (int a = 0; a < matrix_size; ++a) {
-//					if (result.get(a) == v) {
-//						result.set(a, result.get(a) - n_missing);
-//						found = true;
-//						break;
-//					}
-//				}
-//				if (!found)
-//					++n_missing;
-//			}
-//		}
-//		return result;
-//	}
-//
-//	private List<Integer> CreateDispersedDitheringMatrix() {
-//		return CreatePowerofTwoDitheringMatrix(DitherMatrixWidth, DitherMatrixHeight);
-//	}
-//
+	public int getDitherMatrixWidth() {
+		return ditherMatrixWidth;
+	}
+
+	public int getDitherMatrixHeight() {
+		return ditherMatrixHeight;
+	}
+
+	/**
+	 * Sets the size of the threshold matrix. Sizes that are not a power of two are supported, but give a less uniform
+	 * pattern.
+	 */
+	public void setDitherMatrixSize(int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("Matrix size must be at least 1x1: " + width + "x" + height);
+		}
+
+		ditherMatrixWidth = width;
+		ditherMatrixHeight = height;
+		ditherMatrix = createDispersedDitheringMatrix(width, height);
+	}
+
+	public int getDitherColorListSize() {
+		return ditherColorListSize;
+	}
+
+	/**
+	 * Sets the number of palette colors (with repetition) to mix per input color. More colors give more accurate
+	 * mixes, but make finding a plan slower and the dither pattern coarser.
+	 */
+	public void setDitherColorListSize(int ditherColorListSize) {
+		if (ditherColorListSize < 1) {
+			throw new IllegalArgumentException("'ditherColorListSize' must be at least 1: " + ditherColorListSize);
+		}
+
+		this.ditherColorListSize = ditherColorListSize;
+		clearCache();
+	}
+
+	public int getCacheQuantizationBits() {
+		return cacheQuantizationBits;
+	}
+
+	/**
+	 * Sets how many least-significant bits of each color channel to ignore when looking up a mixing plan. 0 (the
+	 * default) gives every color its own plan.
+	 */
+	public void setCacheQuantizationBits(int cacheQuantizationBits) {
+		if (cacheQuantizationBits < 0 || cacheQuantizationBits > 7) {
+			throw new IllegalArgumentException("'cacheQuantizationBits' must be in the range [0, 7]: " +
+			                                   cacheQuantizationBits);
+		}
+
+		this.cacheQuantizationBits = cacheQuantizationBits;
+		clearCache();
+	}
+
+	public long getCacheHits() {
+		return cacheHits.sum();
+	}
+
+	public long getCacheMisses() {
+		return cacheMisses.sum();
+	}
+
+	public int getCacheSize() {
+		return mixingPlanCache.size();
+	}
+
+	public void resetCacheStatistics() {
+		cacheHits.reset();
+		cacheMisses.reset();
+	}
+
+	public void clearCache() {
+		mixingPlanCache.clear();
+	}
+
+	@Override
+	public LinearFrameBufferImage palettize(LinearFrameBufferImage image) {
+		return palettize(image, 0);
+	}
+
+	/**
+	 * Aligns the threshold matrix to the whole image, so the pattern continues across strip boundaries.
+	 */
+	@Override
+	protected LinearFrameBufferImage palettizeStrip(LinearFrameBufferImage strip, int stripY) {
+		return palettize(strip, stripY);
+	}
+
+	/**
+	 * @param firstY the row of the whole image that the first row of {@code image} is
+	 */
+	private LinearFrameBufferImage palettize(LinearFrameBufferImage image, int firstY) {
+		LinearFrameBufferImage palletizedImage = LinearFrameBufferImage.makeCompatibleImage(image, false);
+
+		int[] srcArray = image.getArray();
+		int[] dstArray = palletizedImage.getArray();
+		int   width    = image.getWidth();
+		int   height   = image.getHeight();
+
+		PerceptualHSLMatcher matcher = getMatcher();
+		if (!matcher.equals(cacheMatcher)) {
+			clearCache();
+			cacheMatcher = matcher;
+		}
+
+		MixingPlanner planner = new MixingPlanner(matcher, ditherColorListSize);
+
+		int[] paletteRGBs = new int[getPao().size()];
+		for (int i = 0; i < paletteRGBs.length; i++) {
+			paletteRGBs[i] = getPao().get(i).getRGB();
+		}
+
+		int   matrixWidth  = ditherMatrixWidth;
+		int   matrixHeight = ditherMatrixHeight;
+		int[] matrix       = ditherMatrix;
+		int   matrixSize   = matrix.length;
+		int   keyMask      = 0xFFFFFF & ~(0x010101 * ((1 << cacheQuantizationBits) - 1));
+		int   keyCenter    = cacheQuantizationBits == 0 ? 0 : 0x010101 * (1 << cacheQuantizationBits - 1);
+
+		Thread caller = Thread.currentThread();
+
+		int i = 0;
+		for (int y = 0; y < height; y++) {
+			checkCancelled(caller);
+
+			int matrixRow = (firstY + y) % matrixHeight * matrixWidth;
+
+			for (int x = 0; x < width; x++) {
+				int key = srcArray[i] & keyMask;
+
+				MixingPlan plan = mixingPlanCache.get(key);
+				if (plan == null) {
+					cacheMisses.increment();
+
+					if (mixingPlanCache.size() >= MAX_CACHE_SIZE) {
+						mixingPlanCache.clear();
+					}
+
+					plan = planner.findBestMixingPlan(key | keyCenter);
+					mixingPlanCache.put(key, plan);
+				} else {
+					cacheHits.increment();
+				}
+
+				int threshold = matrix[matrixRow + x % matrixWidth];
+				dstArray[i] = paletteRGBs[plan.getForThreshold(threshold, matrixSize)];
+				i++;
+			}
+		}
+
+		return palletizedImage;
+	}
+
+	/**
+	 * Creates a threshold matrix with the values [0, width * height), where each next value is as far as possible from
+	 * the previous ones (a Bayer matrix, for power-of-two sizes).
+	 */
+	static int[] createDispersedDitheringMatrix(int width, int height) {
+		// Find M=ceil(log2(x)) and L=ceil(log2(y))
+		int m = 0;
+		while (width > (1 << m))
+			++m;
+
+		int l = 0;
+		while (height > (1 << l))
+			++l;
+
+		int   roundedWidth  = 1 << m;
+		int   roundedHeight = 1 << l;
+		int[] result        = new int[width * height];
+
+		int i = 0;
+		for (int y = 0; y < height; ++y)
+			for (int x = 0; x < width; ++x) {
+				int v = 0, offset = 0, xmask = m, ymask = l;
+				if (m == 0 || (m > l && l != 0)) {
+					int xc = x ^ (y << m >> l), yc = y;
+					for (int bit = 0; bit < m + l; ) {
+						v |= ((yc >> --ymask) & 1) << bit++;
+						for (offset += m; offset >= l; offset -= l)
+							v |= ((xc >> --xmask) & 1) << bit++;
+					}
+				} else {
+					int xc = x, yc = y ^ (x << l >> m);
+					for (int bit = 0; bit < m + l; ) {
+						v |= ((xc >> --xmask) & 1) << bit++;
+						for (offset += l; offset >= m; offset -= m)
+							v |= ((yc >> --ymask) & 1) << bit++;
+					}
+				}
+				result[i++] = v;
+			}
+
+		if (height != roundedHeight
+		    || width != roundedWidth) {
+			// If the user requested e.g. 3x3 and we used 4x4 algorithm,
+			// convert the numbers so that the resulting range is ungapped:
+			//
+			// We generated:  We saved:   We compress the number range:
+			//  0 12  3 15     0 12  3     0 7 3
+			//  8  4 11  7     8  4 11     5 4 6
+			//  2 14  1 13     2 14  1     2 8 1
+			// 10  6  9  5
+			int maxValue = roundedWidth * roundedHeight;
+			int nMissing = 0;
+			for (int v = 0; v < maxValue; ++v) {
+				boolean found = false;
+				for (int a = 0; a < result.length; ++a) {
+					if (result[a] == v) {
+						result[a] -= nMissing;
+						found = true;
+						break;
+					}
+				}
+				if (!found)
+					++nMissing;
+			}
+		}
+
+		return result;
+	}
+
 //	/* FindBestMixingPlan:
 //	 *   Task: Find the combination of palette colors that,
 //	 *   when mixed together, the average of them (gamma-corrected)
@@ -186,16 +379,93 @@ public class DitherPalettizer extends Palettizer {
 //		return result;
 //	}
 
-	@Override
-	public LinearFrameBufferImage palettize(LinearFrameBufferImage image) {
-		LinearFrameBufferImage palletizedImage = LinearFrameBufferImage.makeCompatibleImage(image, false);
+	/**
+	 * Finds mixing plans for one matcher. Holds the palette in linear RGB and scratch space, so it's not thread-safe.
+	 */
+	private static final class MixingPlanner {
+		private final PerceptualHSLMatcher matcher;
+		private final int                  planSize;
+		private final float[][]            linearPalette;
+		private final float[]              luminosities;
 
-		int[] srcArray = image.getArray();
-		int[] dstArray = palletizedImage.getArray();
+		private final float[] sum   = new float[3];
+		private final float[] test  = new float[3];
+		private final float[] mixed = new float[3];
 
-		for (int i = 0; i < srcArray.length; i++) {
+		MixingPlanner(PerceptualHSLMatcher matcher, int planSize) {
+			this.matcher = matcher;
+			this.planSize = planSize;
+
+			Palette pao = matcher.getPao();
+			linearPalette = new float[pao.size()][3];
+			luminosities = new float[pao.size()];
+			for (int i = 0; i < pao.size(); i++) {
+				int rgb = pao.get(i).getRGB();
+				linearPalette[i][0] = ColorSpaceTables.srgbToLinear(rgb >> 16 & 0xFF);
+				linearPalette[i][1] = ColorSpaceTables.srgbToLinear(rgb >> 8 & 0xFF);
+				linearPalette[i][2] = ColorSpaceTables.srgbToLinear(rgb & 0xFF);
+				luminosities[i] = ColorUtilities.getPerceptualLuminosity(rgb);
+			}
 		}
 
-		return palletizedImage;
+		/**
+		 * Yliluoma's algorithm 2: Repeatedly add the palette color (possibly several times) that brings the
+		 * gamma-corrected average of the plan closest to the input color.
+		 */
+		MixingPlan findBestMixingPlan(int rgb) {
+			float[] input = matcher.getAdjustedHSL(rgb);
+
+			int[] plan            = new int[planSize];
+			int   proportionTotal = 0;
+			Arrays.fill(sum, 0);
+
+			while (proportionTotal < planSize) {
+				int   chosenAmount = 1;
+				int   chosen       = 0;
+				int   maxTestCount = Math.max(1, proportionTotal);
+				float leastPenalty = Float.POSITIVE_INFINITY;
+
+				for (int index = 0; index < linearPalette.length; ++index) {
+					float[] color = linearPalette[index];
+
+					for (int p = 1; p <= maxTestCount && proportionTotal + p <= planSize; p *= 2) {
+						int total = proportionTotal + p;
+						for (int c = 0; c < 3; c++) {
+							test[c] = (sum[c] + color[c] * p) / total;
+						}
+
+						float penalty = penalty(input, test);
+						if (penalty < leastPenalty) {
+							leastPenalty = penalty;
+							chosen = index;
+							chosenAmount = p;
+						}
+					}
+				}
+
+				for (int p = 0; p < chosenAmount; ++p) {
+					plan[proportionTotal++] = chosen;
+				}
+
+				for (int c = 0; c < 3; c++) {
+					sum[c] += linearPalette[chosen][c] * chosenAmount;
+				}
+			}
+
+			int[] sorted = IntStream.of(plan)
+			                        .boxed()
+			                        .sorted(Comparator.comparingDouble(index -> luminosities[index]))
+			                        .mapToInt(Integer::intValue)
+			                        .toArray();
+			return new MixingPlan(sorted);
+		}
+
+		private float penalty(float[] input, float[] linearRGB) {
+			ColorUtilities.getPerceptualHSL(ColorUtilities.toSRGB(linearRGB[0]),
+			                                ColorUtilities.toSRGB(linearRGB[1]),
+			                                ColorUtilities.toSRGB(linearRGB[2]),
+			                                mixed);
+			return matcher.distance(input, mixed);
+		}
 	}
 }
@@ -0,0 +1,377 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.newpalettizer.palettizer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.paotools.common.ColorSpaceTables;
+import org.digitalmodular.paotools.common.ColorUtilities;
+import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
+import org.digitalmodular.paotools.newpalettizer.RowSource;
+import org.digitalmodular.paotools.newpalettizer.palette.Palette;
+
+/**
+ * Error diffusion ditherer.
+ * <p>
+ * The error is diffused in linear light and only the rows the kernel spans are kept, so memory use is proportional to
+ * the image width. With {@link #palettize(RowSource, RowConsumer)}, the source is also read in strips of rows, so
+ * images far larger than the heap can be dithered.
+ * <p>
+ * Each pixel gathers the error of the pixels that diffuse into it, always in kernel order. This makes the result
+ * independent of the order in which rows are processed, which allows the wavefront-parallel mode of
+ * {@link #setParallelism(int)}.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public class ErrorDiffusionPalettizer extends Palettizer {
+	private DiffusionMethod diffusionMethod = DiffusionMethod.FLOYD_STEINBERG;
+	private float           errorFactor     = 1;
+	private boolean         serpentine      = true;
+	private int             parallelism     = 1;
+
+	private @Nullable ForkJoinPool pool = null;
+
+	public ErrorDiffusionPalettizer(Palette pao) {
+		super(pao);
+	}
+
+	public DiffusionMethod getDiffusionMethod() {
+		return diffusionMethod;
+	}
+
+	public void setDiffusionMethod(DiffusionMethod diffusionMethod) {
+		this.diffusionMethod = Objects.requireNonNull(diffusionMethod, "diffusionMethod");
+	}
+
+	public float getErrorFactor() {
+		return errorFactor;
+	}
+
+	/**
+	 * Sets the fraction of the error that's diffused, in the range [0, 1]. 0 is the same as nearest color matching.
+	 */
+	public void setErrorFactor(float errorFactor) {
+		if (!(errorFactor >= 0 && errorFactor <= 1)) {
+			throw new IllegalArgumentException("'errorFactor' must be in the range [0, 1]: " + errorFactor);
+		}
+
+		this.errorFactor = errorFactor;
+	}
+
+	public boolean isSerpentine() {
+		return serpentine;
+	}
+
+	/**
+	 * When enabled (the default), odd rows are scanned from right to left, which avoids the diagonal 'worm' artifacts.
+	 */
+	public void setSerpentine(boolean serpentine) {
+		this.serpentine = serpentine;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads to palettize in-memory images with. 1 (the default) palettizes on the calling thread.
+	 * <p>
+	 * Rows are processed as a wavefront: a row advances as long as the row above it is more than the kernel reach
+	 * ahead. The result is identical regardless of this setting. Serpentine scanning reverses the dependencies of
+	 * every other row, so it always palettizes on the calling thread.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("'parallelism' must be at least 1: " + parallelism);
+		}
+
+		if (parallelism != this.parallelism && pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public LinearFrameBufferImage palettize(LinearFrameBufferImage image) {
+		LinearFrameBufferImage palettizedImage = LinearFrameBufferImage.makeCompatibleImage(image, false);
+
+		int[] srcArray = image.getArray();
+		int[] dstArray = palettizedImage.getArray();
+		int   width    = image.getWidth();
+		int   height   = image.getHeight();
+
+		if (parallelism == 1 || serpentine || height < 2) {
+			Diffuser diffuser = new Diffuser(width, diffusionMethod.getHeight());
+
+			Thread caller = Thread.currentThread();
+			for (int y = 0; y < height; y++) {
+				checkCancelled(caller);
+				diffuser.diffuseRow(y, srcArray, y * width, dstArray, y * width, null);
+				diffuser.toRGB(dstArray, y * width);
+			}
+		} else {
+			palettizeWavefront(srcArray, dstArray, width, height);
+		}
+
+		return palettizedImage;
+	}
+
+	/**
+	 * Palettizes an image that's read from top to bottom. Unlike the default implementation, the error carries over
+	 * from strip to strip.
+	 */
+	@Override
+	public void palettize(RowSource source, RowConsumer consumer) throws IOException {
+		int width       = source.getWidth();
+		int height      = source.getHeight();
+		int stripHeight = getStripHeight(width);
+
+		Diffuser diffuser = new Diffuser(width, diffusionMethod.getHeight());
+		int[]    dstRow   = new int[width];
+		int[]    strip    = new int[width * Math.min(stripHeight, height)];
+
+		for (int stripY = 0; stripY < height; stripY += stripHeight) {
+			int rows = Math.min(stripHeight, height - stripY);
+
+			source.readRows(strip, rows);
+
+			for (int i = 0; i < rows; i++) {
+				diffuser.diffuseRow(stripY + i, strip, i * width, dstRow, 0, null);
+				consumer.accept(stripY + i, dstRow);
+			}
+		}
+	}
+
+	private void palettizeWavefront(int[] srcArray, int[] dstArray, int width, int height) {
+		int threads = Math.min(parallelism, height);
+
+		// Each thread holds at most one row, and a row is only complete after all rows above it are. So with this many
+		// rows in the ring, a row is never overwritten while a row below it still reads it.
+		Diffuser           diffuser = new Diffuser(width, threads + diffusionMethod.getHeight());
+		AtomicIntegerArray progress = new AtomicIntegerArray(height);
+		AtomicInteger      nextRow  = new AtomicInteger();
+		Thread             caller   = Thread.currentThread();
+
+		Collection<Callable<Void>> workers = new ArrayList<>(threads);
+		for (int i = 0; i < threads; i++) {
+			workers.add(() -> {
+				// Stop claiming rows when cancelled. Rows already claimed are finished, as rows below may wait for them.
+				while (!caller.isInterrupted()) {
+					int y = nextRow.getAndIncrement();
+					if (y >= height) {
+						break;
+					}
+
+					diffuser.diffuseRow(y, srcArray, y * width, dstArray, y * width, progress);
+					diffuser.toRGB(dstArray, y * width);
+				}
+
+				return null;
+			});
+		}
+
+		List<Future<Void>> futures = getPool().invokeAll(workers);
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException ex) {
+			// The workers see the restored flag and stop
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
+			throw new IllegalStateException(ex.getCause());
+		}
+
+		checkCancelled(caller);
+	}
+
+	private ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+
+		return pool;
+	}
+
+	/**
+	 * Holds the state of one image: a snapshot of the parameters and a ring with the quantization error of the most
+	 * recent rows. Error rows are padded by the kernel reach on both sides, so the kernel never has to be clipped.
+	 * <p>
+	 * Rows may be diffused concurrently, as long as each row is diffused by one thread and the rows are started in
+	 * order.
+	 */
+	private final class Diffuser {
+		/** Number of pixels between progress updates in wavefront mode. */
+		private static final int PROGRESS_INTERVAL = 64;
+
+		private final PerceptualHSLMatcher         matcher;
+		private final @Nullable PaletteLookupTable lookupTable;
+		private final DiffusionMethod              kernel;
+		private final float                        errorFactor;
+		private final boolean                      serpentine;
+
+		private final int[]     paletteRGBs;
+		private final float[][] paletteLinear;
+
+		private final int       width;
+		private final int       reach;
+		private final float[][] errorRows;
+
+		Diffuser(int width, int ringSize) {
+			matcher = getMatcher();
+			lookupTable = getLookupTable();
+			kernel = diffusionMethod;
+			errorFactor = ErrorDiffusionPalettizer.this.errorFactor;
+			serpentine = ErrorDiffusionPalettizer.this.serpentine;
+
+			Palette pao = getPao();
+			paletteRGBs = new int[pao.size()];
+			paletteLinear = new float[pao.size()][];
+			for (int i = 0; i < paletteRGBs.length; i++) {
+				int rgb = pao.get(i).getRGB();
+				paletteRGBs[i] = rgb;
+				paletteLinear[i] = new float[]{ColorSpaceTables.srgbToLinear(rgb >> 16 & 0xFF),
+				                               ColorSpaceTables.srgbToLinear(rgb >> 8 & 0xFF),
+				                               ColorSpaceTables.srgbToLinear(rgb & 0xFF)};
+			}
+
+			this.width = width;
+			reach = kernel.getReach();
+			errorRows = new float[ringSize][(width + reach * 2) * 3];
+		}
+
+		/**
+		 * Palettizes one row and writes the palette indices to {@code dst}. Rows must be started in order, starting at
+		 * 0.
+		 *
+		 * @param progress when not {@code null}, the number of finished pixels of each row. This row waits for the row
+		 *                 above it to be far enough ahead, and publishes its own progress.
+		 */
+		void diffuseRow(int y, int[] src, int srcOffset, int[] dst, int dstOffset,
+		                @Nullable AtomicIntegerArray progress) {
+			int     rows    = errorRows.length;
+			float[] current = errorRows[y % rows];
+			boolean reverse = isReverse(y);
+			int     dir     = reverse ? -1 : 1;
+			int     x       = reverse ? width - 1 : 0;
+
+			if (progress != null && y >= rows - kernel.getHeight() + 1) {
+				// The row that last used this slot, and the rows reading it, must be done.
+				awaitProgress(progress, y - rows + kernel.getHeight() - 1, width);
+			}
+
+			int available = progress == null || y == 0 ? width : progress.get(y - 1);
+
+			for (int n = 0; n < width; n++, x += dir) {
+				if (available < width && available <= x + reach) {
+					available = awaitProgress(progress, y - 1, Math.min(width, x + reach + 1));
+				}
+
+				float errR = 0;
+				float errG = 0;
+				float errB = 0;
+				for (int k = 0; k < kernel.size(); k++) {
+					int sourceY = y - kernel.getDY(k);
+					if (sourceY < 0) {
+						continue;
+					}
+
+					int     sourceX = x - kernel.getDX(k) * (isReverse(sourceY) ? -1 : 1);
+					float[] row     = errorRows[sourceY % rows];
+					int     i       = (sourceX + reach) * 3;
+					float   weight  = kernel.getWeight(k);
+					errR += row[i] * weight;
+					errG += row[i + 1] * weight;
+					errB += row[i + 2] * weight;
+				}
+
+				int   rgb = src[srcOffset + x];
+				float r   = clamp(ColorSpaceTables.srgbToLinear(rgb >> 16 & 0xFF) + errR);
+				float g   = clamp(ColorSpaceTables.srgbToLinear(rgb >> 8 & 0xFF) + errG);
+				float b   = clamp(ColorSpaceTables.srgbToLinear(rgb & 0xFF) + errB);
+
+				int adjusted = (int)(ColorUtilities.toSRGB(r) * 255 + 0.5f) << 16 |
+				               (int)(ColorUtilities.toSRGB(g) * 255 + 0.5f) << 8 |
+				               (int)(ColorUtilities.toSRGB(b) * 255 + 0.5f);
+
+				int index = lookupTable != null ? lookupTable.get(adjusted) : matcher.nearestColorIndex(adjusted);
+				dst[dstOffset + x] = index;
+
+				float[] chosen = paletteLinear[index];
+				int     e      = (x + reach) * 3;
+				current[e] = (r - chosen[0]) * errorFactor;
+				current[e + 1] = (g - chosen[1]) * errorFactor;
+				current[e + 2] = (b - chosen[2]) * errorFactor;
+
+				if (progress != null && (n + 1) % PROGRESS_INTERVAL == 0) {
+					progress.lazySet(y, n + 1);
+				}
+			}
+
+			if (progress != null) {
+				progress.set(y, width);
+			}
+		}
+
+		/** Converts a row of palette indices, as written by {@link #diffuseRow}, to colors. */
+		void toRGB(int[] dst, int offset) {
+			for (int x = 0; x < width; x++) {
+				dst[offset + x] = paletteRGBs[dst[offset + x]];
+			}
+		}
+
+		private boolean isReverse(int y) {
+			return serpentine && (y & 1) != 0;
+		}
+
+		private int awaitProgress(AtomicIntegerArray progress, int y, int required) {
+			int spins = 0;
+			int available;
+			while ((available = progress.get(y)) < required) {
+				if (++spins < 100) {
+					Thread.onSpinWait();
+				} else {
+					Thread.yield();
+				}
+			}
+
+			return available;
+		}
+	}
+
+	private static float clamp(float value) {
+		return Math.max(0, Math.min(1, value));
+	}
+}
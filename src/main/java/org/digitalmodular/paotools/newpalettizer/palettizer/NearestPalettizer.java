@@ -38,6 +38,17 @@
 
 package org.digitalmodular.paotools.newpalettizer.palettizer;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.paotools.common.IntIntHashMap;
 import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
 import org.digitalmodular.paotools.newpalettizer.palette.Palette;
 
@@ -46,10 +57,77 @@ import org.digitalmodular.paotools.newpalettizer.palette.Palette;
  */
 // Created 2020-11-08
 public class NearestPalettizer extends Palettizer {
+	/**
+	 * Bands are split until they're at most this many pixels. Large enough to amortize the task overhead, small enough
+	 * to balance the load when some bands have more expensive colors than others.
+	 */
+	private static final int MIN_BAND_PIXELS = 16384;
+
+	/** Number of pixels converted at once, without a lookup table. Keeps the scratch planes in the L1 cache. */
+	private static final int CHUNK_SIZE = 1024;
+
+	private int     parallelism     = 1;
+	private boolean uniqueColorPass = false;
+
+	private @Nullable ForkJoinPool pool = null;
+
+	// Statistics of the last unique-color pass
+	private volatile int    lastUniqueColorCount = 0;
+	private volatile double lastHitRatio         = 0;
+
 	public NearestPalettizer(Palette pao) {
 		super(pao);
 	}
 
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads to palettize with. 1 (the default) palettizes on the calling thread. Every pixel is
+	 * mapped independently, so the result is identical regardless of this setting.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("'parallelism' must be at least 1: " + parallelism);
+		}
+
+		if (parallelism != this.parallelism && pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+
+		this.parallelism = parallelism;
+	}
+
+	public boolean isUniqueColorPass() {
+		return uniqueColorPass;
+	}
+
+	/**
+	 * When enabled, the distinct colors of the image are collected first, each distinct color is matched once, and the
+	 * pixels are remapped through the resulting table. This pays off for pixel art and other images with few colors,
+	 * and with a cold {@link PaletteLookupTable}. See {@link #getLastHitRatio()} to judge whether it does.
+	 */
+	public void setUniqueColorPass(boolean uniqueColorPass) {
+		this.uniqueColorPass = uniqueColorPass;
+	}
+
+	/**
+	 * Returns the number of distinct colors found by the last unique-color pass.
+	 */
+	public int getLastUniqueColorCount() {
+		return lastUniqueColorCount;
+	}
+
+	/**
+	 * Returns the fraction of pixels of the last unique-color pass that didn't need to be matched, because an earlier
+	 * pixel had the same color. Close to 1 means the pass paid off, close to 0 means it was overhead.
+	 */
+	public double getLastHitRatio() {
+		return lastHitRatio;
+	}
+
 	@Override
 	public LinearFrameBufferImage palettize(LinearFrameBufferImage image) {
 		LinearFrameBufferImage palettizedImage = LinearFrameBufferImage.makeCompatibleImage(image, false);
@@ -57,12 +135,167 @@ public class NearestPalettizer extends Palettizer {
 		int[] srcArray = image.getArray();
 		int[] dstArray = palettizedImage.getArray();
 
-		for (int i = 0; i < srcArray.length; i++) {
-			int closestIndex = nearestColorIndex(srcArray[i]);
-			dstArray[i] = getPao().get(closestIndex).getRGB();
-//			dstArray[i] = getPao().get(closestIndex).getGroup().getRepresentativeColor();
+		int[] paletteRGBs = new int[getPao().size()];
+		for (int i = 0; i < paletteRGBs.length; i++) {
+			paletteRGBs[i] = getPao().get(i).getRGB();
+//			paletteRGBs[i] = getPao().get(i).getGroup().getRepresentativeColor();
+		}
+
+		PerceptualHSLMatcher         matcher     = getMatcher();
+		@Nullable PaletteLookupTable lookupTable = getLookupTable();
+		Thread                       caller      = Thread.currentThread();
+
+		if (uniqueColorPass) {
+			palettizeUniqueColors(srcArray, dstArray, paletteRGBs, matcher, lookupTable, caller);
+		} else if (parallelism == 1 || srcArray.length <= MIN_BAND_PIXELS) {
+			// Bands of whole rows, only to check for cancellation in between
+			int width     = image.getWidth();
+			int bandWidth = Math.max(1, MIN_BAND_PIXELS / Math.max(1, width)) * width;
+			for (int begin = 0; begin < srcArray.length; begin += bandWidth) {
+				checkCancelled(caller);
+				palettizeRange(srcArray, dstArray, begin, Math.min(srcArray.length, begin + bandWidth),
+				               paletteRGBs, matcher, lookupTable);
+			}
+		} else {
+			// Bands of whole rows, so each task walks contiguous memory.
+			int                width     = image.getWidth();
+			AtomicBoolean      cancelled = new AtomicBoolean();
+			ForkJoinTask<Void> task      = getPool().submit(new BandTask(srcArray, dstArray, width, 0, image.getHeight(),
+			                                                             paletteRGBs, matcher, lookupTable, cancelled));
+
+			// Not invoke(), which defers the interrupt until all bands are done
+			try {
+				task.get();
+			} catch (InterruptedException ex) {
+				// The remaining bands are skipped
+				cancelled.set(true);
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException ex) {
+				throw new IllegalStateException(ex.getCause());
+			}
+
+			checkCancelled(caller);
 		}
 
 		return palettizedImage;
 	}
+
+	private ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+
+		return pool;
+	}
+
+	private void palettizeUniqueColors(int[] srcArray,
+	                                   int[] dstArray,
+	                                   int[] paletteRGBs,
+	                                   PerceptualHSLMatcher matcher,
+	                                   @Nullable PaletteLookupTable lookupTable,
+	                                   Thread caller) {
+		IntIntHashMap histogram = new IntIntHashMap(4096);
+		for (int rgb : srcArray) {
+			histogram.addTo(rgb & 0xFFFFFF, 1);
+		}
+
+		// Re-use the histogram as the color map
+		int[] uniqueColors = histogram.keys();
+		for (int i = 0; i < uniqueColors.length; i++) {
+			if (i % CHUNK_SIZE == 0) {
+				checkCancelled(caller);
+			}
+
+			int rgb   = uniqueColors[i];
+			int index = lookupTable != null ? lookupTable.get(rgb) : matcher.nearestColorIndex(rgb);
+			histogram.put(rgb, paletteRGBs[index]);
+		}
+
+		for (int i = 0; i < srcArray.length; i++) {
+			dstArray[i] = histogram.get(srcArray[i] & 0xFFFFFF, 0);
+		}
+
+		lastUniqueColorCount = uniqueColors.length;
+		lastHitRatio = srcArray.length == 0 ? 0 : 1 - uniqueColors.length / (double)srcArray.length;
+
+		Logger.getLogger(NearestPalettizer.class.getName())
+		      .log(Level.FINE, "{0} unique colors in {1} pixels, hit ratio {2}",
+		           new Object[]{lastUniqueColorCount, srcArray.length, lastHitRatio});
+	}
+
+	private static void palettizeRange(int[] srcArray,
+	                                   int[] dstArray,
+	                                   int begin,
+	                                   int end,
+	                                   int[] paletteRGBs,
+	                                   PerceptualHSLMatcher matcher,
+	                                   @Nullable PaletteLookupTable lookupTable) {
+		if (lookupTable != null) {
+			for (int i = begin; i < end; i++) {
+				dstArray[i] = paletteRGBs[lookupTable.get(srcArray[i])];
+			}
+		} else {
+			int     chunkSize = Math.min(CHUNK_SIZE, end - begin);
+			int[]   indices   = new int[chunkSize];
+			float[] h         = new float[chunkSize];
+			float[] s         = new float[chunkSize];
+			float[] l         = new float[chunkSize];
+
+			for (int chunk = begin; chunk < end; chunk += chunkSize) {
+				int length = Math.min(chunkSize, end - chunk);
+				matcher.nearestColorIndices(srcArray, chunk, length, indices, h, s, l);
+
+				for (int i = 0; i < length; i++) {
+					dstArray[chunk + i] = paletteRGBs[indices[i]];
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class BandTask extends RecursiveAction {
+		private final           int[]                srcArray;
+		private final           int[]                dstArray;
+		private final           int                  width;
+		private final           int                  beginY;
+		private final           int                  endY;
+		private final           int[]                paletteRGBs;
+		private final           PerceptualHSLMatcher matcher;
+		private final @Nullable PaletteLookupTable   lookupTable;
+		private final           AtomicBoolean        cancelled;
+
+		BandTask(int[] srcArray,
+		         int[] dstArray,
+		         int width,
+		         int beginY,
+		         int endY,
+		         int[] paletteRGBs,
+		         PerceptualHSLMatcher matcher,
+		         @Nullable PaletteLookupTable lookupTable,
+		         AtomicBoolean cancelled) {
+			this.srcArray = srcArray;
+			this.dstArray = dstArray;
+			this.width = width;
+			this.beginY = beginY;
+			this.endY = endY;
+			this.paletteRGBs = paletteRGBs;
+			this.matcher = matcher;
+			this.lookupTable = lookupTable;
+			this.cancelled = cancelled;
+		}
+
+		@Override
+		protected void compute() {
+			int rows = endY - beginY;
+			if (rows > 1 && rows * width > MIN_BAND_PIXELS) {
+				int midY = beginY + rows / 2;
+				invokeAll(new BandTask(srcArray, dstArray, width, beginY, midY,
+				                       paletteRGBs, matcher, lookupTable, cancelled),
+				          new BandTask(srcArray, dstArray, width, midY, endY,
+				                       paletteRGBs, matcher, lookupTable, cancelled));
+			} else if (!cancelled.get()) {
+				palettizeRange(srcArray, dstArray, beginY * width, endY * width, paletteRGBs, matcher, lookupTable);
+			}
+		}
+	}
 }
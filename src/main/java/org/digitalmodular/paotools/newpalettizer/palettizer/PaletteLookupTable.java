@@ -0,0 +1,272 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.newpalettizer.palettizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.digitalmodular.paotools.newpalettizer.palette.Palette;
+
+/**
+ * A precomputed answer of {@link PerceptualHSLMatcher#nearestColorIndex(int)} for every 24-bit RGB color.
+ * <p>
+ * The table is filled lazily in blocks of 4096 colors, the first time a color in that block is looked up, so images
+ * with few distinct colors only pay for the blocks they touch. Building the whole table up front (as done before
+ * saving) takes a few seconds on all cores.
+ * <p>
+ * Tables are keyed by their matcher, and the last few are shared between all {@link Palettizer}s through
+ * {@link #getShared(PerceptualHSLMatcher)}. They can be persisted so a restart doesn't have to rebuild them.
+ * <p>
+ * This class is thread-safe. Concurrent builds of the same block are harmless, as they write identical values.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public final class PaletteLookupTable {
+	private static final int BLOCK_BITS = 12;
+	private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+	private static final int NUM_COLORS = 1 << 24;
+	private static final int NUM_BLOCKS = NUM_COLORS >> BLOCK_BITS;
+
+	/** Each table uses 16MiB, so don't keep too many around while sliders are being dragged. */
+	private static final int MAX_SHARED_TABLES = 4;
+
+	private static final int FILE_MAGIC   = 0x50414F4C; // "PAOL"
+	private static final int FILE_VERSION = 2;
+
+	@SuppressWarnings("serial")
+	private static final Map<PerceptualHSLMatcher, PaletteLookupTable> SHARED_TABLES =
+			new LinkedHashMap<>(MAX_SHARED_TABLES * 2, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<PerceptualHSLMatcher, PaletteLookupTable> eldest) {
+					return size() > MAX_SHARED_TABLES;
+				}
+			};
+
+	private final PerceptualHSLMatcher matcher;
+	private final byte[]               table       = new byte[NUM_COLORS];
+	private final AtomicIntegerArray   builtBlocks = new AtomicIntegerArray(NUM_BLOCKS);
+
+	public PaletteLookupTable(PerceptualHSLMatcher matcher) {
+		if (matcher.getPao().size() > 256) {
+			throw new IllegalArgumentException("Palette has more than 256 colors: " + matcher.getPao().size());
+		}
+
+		this.matcher = matcher;
+	}
+
+	/**
+	 * Returns the table for the specified matcher, creating it if no table with equal parameters is currently shared.
+	 */
+	public static PaletteLookupTable getShared(PerceptualHSLMatcher matcher) {
+		synchronized (SHARED_TABLES) {
+			return SHARED_TABLES.computeIfAbsent(matcher, PaletteLookupTable::new);
+		}
+	}
+
+	/**
+	 * Like {@link #getShared(PerceptualHSLMatcher)}, but when the table isn't shared yet, first attempts to load it from
+	 * the specified directory. If that fails, the table is built completely and saved to that directory.
+	 */
+	public static PaletteLookupTable getShared(PerceptualHSLMatcher matcher, Path directory) throws IOException {
+		synchronized (SHARED_TABLES) {
+			PaletteLookupTable lookupTable = SHARED_TABLES.get(matcher);
+			if (lookupTable != null) {
+				return lookupTable;
+			}
+		}
+
+		Path               file = directory.resolve(getFilename(matcher));
+		PaletteLookupTable lookupTable;
+		if (Files.exists(file)) {
+			lookupTable = load(file, matcher);
+		} else {
+			lookupTable = new PaletteLookupTable(matcher);
+			Files.createDirectories(directory);
+			lookupTable.save(file);
+		}
+
+		synchronized (SHARED_TABLES) {
+			PaletteLookupTable existing = SHARED_TABLES.putIfAbsent(matcher, lookupTable);
+			return existing != null ? existing : lookupTable;
+		}
+	}
+
+	public PerceptualHSLMatcher getMatcher() {
+		return matcher;
+	}
+
+	/**
+	 * Returns the palette index nearest to the specified color. The alpha channel is ignored.
+	 */
+	public int get(int rgb) {
+		rgb &= 0xFFFFFF;
+
+		int block = rgb >> BLOCK_BITS;
+		if (builtBlocks.get(block) == 0) {
+			buildBlock(block);
+		}
+
+		return table[rgb] & 0xFF;
+	}
+
+	public boolean isComplete() {
+		for (int block = 0; block < NUM_BLOCKS; block++) {
+			if (builtBlocks.get(block) == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Builds all blocks that aren't built yet, using all available cores.
+	 */
+	public void buildAll() {
+		IntStream.range(0, NUM_BLOCKS)
+		         .parallel()
+		         .filter(block -> builtBlocks.get(block) == 0)
+		         .forEach(this::buildBlock);
+	}
+
+	private void buildBlock(int block) {
+		int begin = block << BLOCK_BITS;
+		int end   = begin + BLOCK_SIZE;
+		for (int rgb = begin; rgb < end; rgb++) {
+			table[rgb] = (byte)matcher.nearestColorIndex(rgb);
+		}
+
+		// Publishes the table entries to threads that see the flag.
+		builtBlocks.set(block, 1);
+	}
+
+	/**
+	 * Builds the complete table and writes it, together with the parameters it was built for, to a file.
+	 */
+	public void save(Path file) throws IOException {
+		buildAll();
+
+		Logger.getLogger(PaletteLookupTable.class.getName()).log(Level.INFO, "Saving lookup table {0}", file);
+
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file))))) {
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(FILE_VERSION);
+			writeParameters(out, matcher);
+			out.write(table);
+		}
+	}
+
+	/**
+	 * Reads a table written by {@link #save(Path)}.
+	 *
+	 * @throws IOException when the file is corrupt or was built for a different palette or different parameters
+	 */
+	public static PaletteLookupTable load(Path file, PerceptualHSLMatcher matcher) throws IOException {
+		Logger.getLogger(PaletteLookupTable.class.getName()).log(Level.INFO, "Loading lookup table {0}", file);
+
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+			if (in.readInt() != FILE_MAGIC) {
+				throw new IOException("Not a lookup table file: " + file);
+			}
+			if (in.readInt() != FILE_VERSION) {
+				throw new IOException("Unsupported lookup table version: " + file);
+			}
+
+			if (!Arrays.equals(readParameters(in), getParameters(matcher))) {
+				throw new IOException("Lookup table was built for different parameters: " + file);
+			}
+
+			PaletteLookupTable lookupTable = new PaletteLookupTable(matcher);
+			in.readFully(lookupTable.table);
+
+			for (int block = 0; block < NUM_BLOCKS; block++) {
+				lookupTable.builtBlocks.set(block, 1);
+			}
+
+			return lookupTable;
+		}
+	}
+
+	private static String getFilename(PerceptualHSLMatcher matcher) {
+		return String.format("paletteLUT-%08x.bin.gz", Arrays.hashCode(getParameters(matcher)));
+	}
+
+	/**
+	 * Flattens everything the table depends on into an array, for storage and comparison.
+	 */
+	private static int[] getParameters(PerceptualHSLMatcher matcher) {
+		Palette pao        = matcher.getPao();
+		float[] hslWeights = matcher.getHslWeights();
+
+		int[] parameters = new int[pao.size() + 7];
+		for (int i = 0; i < pao.size(); i++) {
+			parameters[i] = pao.get(i).getRGB();
+		}
+
+		int p = pao.size();
+		parameters[p++] = Float.floatToIntBits(hslWeights[0]);
+		parameters[p++] = Float.floatToIntBits(hslWeights[1]);
+		parameters[p++] = Float.floatToIntBits(hslWeights[2]);
+		parameters[p++] = Float.floatToIntBits(matcher.getSatFactor());
+		parameters[p++] = Float.floatToIntBits(matcher.getLumFactor());
+		parameters[p++] = Float.floatToIntBits(matcher.getGamma());
+		parameters[p] = pao.size();
+		return parameters;
+	}
+
+	private static void writeParameters(DataOutputStream out, PerceptualHSLMatcher matcher) throws IOException {
+		int[] parameters = getParameters(matcher);
+		out.writeInt(parameters.length);
+		for (int parameter : parameters) {
+			out.writeInt(parameter);
+		}
+	}
+
+	private static int[] readParameters(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > 1024) {
+			throw new IOException("Invalid parameter count: " + length);
+		}
+
+		int[] parameters = new int[length];
+		for (int i = 0; i < length; i++) {
+			parameters[i] = in.readInt();
+		}
+
+		return parameters;
+	}
+}
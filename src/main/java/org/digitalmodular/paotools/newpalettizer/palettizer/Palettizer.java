@@ -38,36 +38,67 @@
 
 package org.digitalmodular.paotools.newpalettizer.palettizer;
 
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageReader;
 
-import org.digitalmodular.utilities.NumberUtilities;
+import org.jetbrains.annotations.Nullable;
 
-import org.digitalmodular.paotools.common.ColorUtilities;
+import org.digitalmodular.paotools.newpalettizer.ImageReaderRowSource;
 import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
+import org.digitalmodular.paotools.newpalettizer.RowSource;
 import org.digitalmodular.paotools.newpalettizer.palette.Palette;
 
 /**
  * @author Mark Jeronimus
  */
 // Created 2020-11-08
+// Changed 2026-10-17 Moved the metric to PerceptualHSLMatcher and added the lookup table
 public abstract class Palettizer {
-	private final Palette   pao;
-	private final float[][] hslPalette;
+	/**
+	 * Memory for the buffers of one strip, used when no strip height is set. Enough to amortize the per-strip
+	 * overhead, little enough to stream images of any width in a small heap.
+	 */
+	public static final long STRIP_MEMORY = 16L << 20;
+
+	/** The source strip, the palettized strip and the conversion in between, all ARGB. */
+	private static final int STRIP_BYTES_PER_PIXEL = 16;
+
+	/**
+	 * Receives a palettized image one row at a time.
+	 */
+	@FunctionalInterface
+	public interface RowConsumer {
+		/**
+		 * @param paletteIndices the palette index of each pixel. The array is reused for the next row.
+		 */
+		void accept(int y, int[] paletteIndices) throws IOException;
+	}
+
+	private final Palette pao;
 
 	private final float[] hslWeights = {1, 1, 1};
 	private       float   satFactor  = 1;
 	private       float   lumFactor  = 1;
 	private       float   gamma      = 1;
 
+	private           boolean lookupTableEnabled   = false;
+	private @Nullable Path    lookupTableDirectory = null;
+	private           int     stripHeight          = 0;
+
+	// Caches, derived from the above. Reset whenever a parameter changes.
+	private volatile @Nullable PerceptualHSLMatcher matcher     = null;
+	private volatile @Nullable PaletteLookupTable   lookupTable = null;
+
 	protected Palettizer(Palette pao) {
 		this.pao = Objects.requireNonNull(pao, "pao");
-		hslPalette = new float[pao.size()][];
-
-		for (int i = 0; i < pao.size(); i++) {
-			float[] fRGB = ColorUtilities.rgb2floats(pao.get(i).getRGB());
-			hslPalette[i] = ColorUtilities.getPerceptualHSL(fRGB[0], fRGB[1], fRGB[2]);
-		}
 	}
 
 	public Palette getPao() {
@@ -78,12 +109,13 @@ public abstract class Palettizer {
 		float sum = hslWeights[0] + hslWeights[1] + hslWeights[2];
 		if (sum == 0) {
 			Arrays.fill(this.hslWeights, 0);
-			return;
+		} else {
+			for (int i = 0; i < 3; i++) {
+				this.hslWeights[i] = hslWeights[i] / sum;
+			}
 		}
 
-		for (int i = 0; i < 3; i++) {
-			this.hslWeights[i] = hslWeights[i] / sum;
-		}
+		parametersChanged();
 	}
 
 	public float[] getHslWeights() {
@@ -95,8 +127,8 @@ public abstract class Palettizer {
 	}
 
 	public void setSatFactor(float satFactor) {
-
 		this.satFactor = satFactor;
+		parametersChanged();
 	}
 
 	public float getLumFactor() {
@@ -105,6 +137,7 @@ public abstract class Palettizer {
 
 	public void setLumFactor(float lumFactor) {
 		this.lumFactor = lumFactor;
+		parametersChanged();
 	}
 
 	public float getGamma() {
@@ -113,39 +146,194 @@ public abstract class Palettizer {
 
 	public void setGamma(float gamma) {
 		this.gamma = gamma;
+		parametersChanged();
 	}
 
-	protected int nearestColorIndex(int rgb) {
-		float[] fRGB = ColorUtilities.rgb2floats(rgb);
-		float[] hsl  = ColorUtilities.getPerceptualHSL(fRGB[0], fRGB[1], fRGB[2]);
-
-		hsl[1] = NumberUtilities.clamp(hsl[1] * satFactor, 0, 1);
-		hsl[2] = NumberUtilities.clamp(hsl[2] * lumFactor, 0, 1);
-		hsl[2] = (float)Math.pow(hsl[2], gamma);
-
-		float closestDist  = Float.POSITIVE_INFINITY;
-		int   closestIndex = -1;
-		for (int i = 0; i < hslPalette.length; i++) {
-			// The darker or the less saturated the color, the less important the hue.
-			float hueWeight = hslWeights[0] * Math.min(hslPalette[i][1], hsl[1]) * Math.min(hslPalette[i][2], hsl[2]);
-			// The darker the color, the less important the saturation.
-			float satWeight = hslWeights[1] * Math.min(hslPalette[i][2], hsl[2]);
-
-			float diffH  = hslPalette[i][0] - hsl[0];
-			float diffS  = hslPalette[i][1] - hsl[1];
-			float diffL  = hslPalette[i][2] - hsl[2];
-			float diffHH = diffH * diffH * hueWeight;
-			float diffSS = diffS * diffS * satWeight;
-			float diffLL = diffL * diffL * hslWeights[2];
-			float dist   = diffHH + diffSS + diffLL;
-			if (dist < closestDist) {
-				closestDist = dist;
-				closestIndex = i;
+	public boolean isLookupTableEnabled() {
+		return lookupTableEnabled;
+	}
+
+	/**
+	 * When enabled, colors are mapped through a {@link PaletteLookupTable} shared with all other palettizers with the
+	 * same palette and parameters. This pays off for large images, or when the parameters rarely change.
+	 */
+	public void setLookupTableEnabled(boolean lookupTableEnabled) {
+		this.lookupTableEnabled = lookupTableEnabled;
+		lookupTable = null;
+	}
+
+	public @Nullable Path getLookupTableDirectory() {
+		return lookupTableDirectory;
+	}
+
+	/**
+	 * Sets the directory where lookup tables are persisted, or {@code null} to keep them in memory only.
+	 */
+	public void setLookupTableDirectory(@Nullable Path lookupTableDirectory) {
+		this.lookupTableDirectory = lookupTableDirectory;
+		lookupTable = null;
+	}
+
+	/**
+	 * Returns the number of rows palettized at once when streaming, or 0 if it depends on the image width.
+	 */
+	public int getStripHeight() {
+		return stripHeight;
+	}
+
+	/**
+	 * Sets the number of rows palettized at once when streaming, or 0 (the default) to fit the strips in
+	 * {@link #STRIP_MEMORY}. Larger strips have less overhead, smaller strips use less memory.
+	 */
+	public void setStripHeight(int stripHeight) {
+		if (stripHeight < 0) {
+			throw new IllegalArgumentException("'stripHeight' can't be negative: " + stripHeight);
+		}
+
+		this.stripHeight = stripHeight;
+	}
+
+	/**
+	 * Returns the number of rows to palettize at once, for images of the specified width.
+	 */
+	protected int getStripHeight(int width) {
+		if (stripHeight > 0) {
+			return stripHeight;
+		}
+
+		return (int)Math.max(1, Math.min(Integer.MAX_VALUE, STRIP_MEMORY / ((long)width * STRIP_BYTES_PER_PIXEL)));
+	}
+
+	private void parametersChanged() {
+		matcher = null;
+		lookupTable = null;
+	}
+
+	/**
+	 * Returns an immutable snapshot of the current metric. Palettizers should retrieve this once per image, so parameter
+	 * changes during palettization don't result in a mix of old and new parameters.
+	 */
+	protected PerceptualHSLMatcher getMatcher() {
+		@Nullable PerceptualHSLMatcher matcher = this.matcher;
+		if (matcher == null) {
+			matcher = new PerceptualHSLMatcher(pao, hslWeights, satFactor, lumFactor, gamma);
+			this.matcher = matcher;
+		}
+
+		return matcher;
+	}
+
+	/**
+	 * Returns the lookup table for the current metric, or {@code null} if it's not enabled.
+	 */
+	protected @Nullable PaletteLookupTable getLookupTable() {
+		if (!lookupTableEnabled) {
+			return null;
+		}
+
+		@Nullable PaletteLookupTable lookupTable = this.lookupTable;
+		if (lookupTable == null) {
+			PerceptualHSLMatcher matcher = getMatcher();
+
+			if (lookupTableDirectory == null) {
+				lookupTable = PaletteLookupTable.getShared(matcher);
+			} else {
+				try {
+					lookupTable = PaletteLookupTable.getShared(matcher, lookupTableDirectory);
+				} catch (IOException ex) {
+					Logger.getLogger(Palettizer.class.getName())
+					      .log(Level.WARNING, "Can't use the lookup table directory, continuing without", ex);
+					lookupTable = PaletteLookupTable.getShared(matcher);
+				}
 			}
+
+			this.lookupTable = lookupTable;
 		}
 
-		return closestIndex;
+		return lookupTable;
 	}
 
+	protected int nearestColorIndex(int rgb) {
+		@Nullable PaletteLookupTable lookupTable = getLookupTable();
+		if (lookupTable != null) {
+			return lookupTable.get(rgb);
+		}
+
+		return getMatcher().nearestColorIndex(rgb);
+	}
+
+	/**
+	 * Palettizes the image into a new image.
+	 * <p>
+	 * Palettization can be abandoned by interrupting the calling thread (like with {@code Future.cancel(true)}).
+	 * Implementations check this between bands of rows, and then throw a {@link CancellationException}, leaving the
+	 * interrupt flag set.
+	 */
 	public abstract LinearFrameBufferImage palettize(LinearFrameBufferImage image);
+
+	/**
+	 * Throws a {@link CancellationException} if {@code caller}, the thread that called {@link #palettize}, is
+	 * interrupted. Also works from helper threads, as long as they're passed the calling thread.
+	 */
+	protected static void checkCancelled(Thread caller) {
+		if (caller.isInterrupted()) {
+			throw new CancellationException("Palettization interrupted");
+		}
+	}
+
+	/**
+	 * Palettizes the first image of the reader, reading it in strips of source regions. The input of the reader must
+	 * already be set.
+	 * <p>
+	 * Some readers, like the PNG reader, decode from the start of the image for every region, so reading time grows
+	 * with the square of the height. For files, use {@link #palettize(RowSource, RowConsumer)} with
+	 * {@link RowSource#open(File)} instead.
+	 */
+	public void palettize(ImageReader reader, RowConsumer consumer) throws IOException {
+		palettize(new ImageReaderRowSource(reader), consumer);
+	}
+
+	/**
+	 * Palettizes an image that's read from top to bottom, in strips of {@link #getStripHeight(int)} rows, so memory
+	 * use depends on the image width instead of the image size. The source is not closed.
+	 * <p>
+	 * This implementation palettizes each strip with {@link #palettizeStrip}. Palettizers where a pixel depends on
+	 * pixels outside its strip should override this.
+	 */
+	public void palettize(RowSource source, RowConsumer consumer) throws IOException {
+		int width       = source.getWidth();
+		int height      = source.getHeight();
+		int stripHeight = getStripHeight(width);
+
+		LinearFrameBufferImage strip  = null;
+		int[]                  dstRow = new int[width];
+
+		for (int stripY = 0; stripY < height; stripY += stripHeight) {
+			int rows = Math.min(stripHeight, height - stripY);
+
+			if (strip == null || strip.getHeight() != rows) {
+				strip = new LinearFrameBufferImage(width, rows, BufferedImage.TYPE_INT_RGB);
+			}
+
+			source.readRows(strip.getArray(), rows);
+			int[] palettized = palettizeStrip(strip, stripY).getArray();
+
+			for (int i = 0; i < rows; i++) {
+				for (int x = 0; x < width; x++) {
+					dstRow[x] = pao.getIndexOfColor(palettized[i * width + x]);
+				}
+
+				consumer.accept(stripY + i, dstRow);
+			}
+		}
+	}
+
+	/**
+	 * Palettizes one strip of a larger image, starting at row {@code stripY} of that image. This implementation
+	 * palettizes the strip as a separate image. Palettizers where the result depends on the absolute position of a
+	 * pixel should override this.
+	 */
+	protected LinearFrameBufferImage palettizeStrip(LinearFrameBufferImage strip, int stripY) {
+		return palettize(strip);
+	}
 }
@@ -0,0 +1,255 @@
+/*
+ * This file is part of PAO.
+ *
+ * Copyleft 2026 Mark Jeronimus. All Rights Reversed.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.digitalmodular.paotools.newpalettizer.palettizer;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.utilities.NumberUtilities;
+
+import org.digitalmodular.paotools.common.ColorUtilities;
+import org.digitalmodular.paotools.ditherer.KDTree;
+import org.digitalmodular.paotools.newpalettizer.palette.Palette;
+
+/**
+ * The weighted perceptual HSL color metric of a {@link Palettizer}, frozen for one palette and one set of weights and
+ * adjustment factors.
+ * <p>
+ * Instances are immutable, so they can be used concurrently and serve as a key for anything derived from the metric
+ * (like a {@link PaletteLookupTable}). Two matchers are equal when they use the same palette instance and the same
+ * parameters.
+ * <p>
+ * For large palettes, the search is done with a {@link KDTree} over the palette's perceptual HSL coordinates, which
+ * gives the same results as the linear scan used for small palettes.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17 extracted from Palettizer
+public final class PerceptualHSLMatcher {
+	/**
+	 * Below this many colors, a linear scan is faster than traversing the tree. The metric's lower bounds are loose for
+	 * dark and desaturated colors, where most of the tree has to be visited anyway.
+	 */
+	public static final int KD_TREE_THRESHOLD = 128;
+
+	private final Palette   pao;
+	private final float[][] hslPalette;
+
+	private final float[] hslWeights;
+	private final float   satFactor;
+	private final float   lumFactor;
+	private final float   gamma;
+
+	private final           HSLMetric metric;
+	private final @Nullable KDTree    tree;
+
+	PerceptualHSLMatcher(Palette pao, float[] hslWeights, float satFactor, float lumFactor, float gamma) {
+		this.pao = Objects.requireNonNull(pao, "pao");
+		this.hslWeights = hslWeights.clone();
+		this.satFactor = satFactor;
+		this.lumFactor = lumFactor;
+		this.gamma = gamma;
+
+		hslPalette = new float[pao.size()][];
+		for (int i = 0; i < pao.size(); i++) {
+			hslPalette[i] = new float[3];
+			ColorUtilities.getPerceptualHSL(pao.get(i).getRGB(), hslPalette[i]);
+		}
+
+		metric = new HSLMetric(this.hslWeights);
+		tree = hslPalette.length >= KD_TREE_THRESHOLD ? new KDTree(hslPalette, metric) : null;
+	}
+
+	public Palette getPao() {
+		return pao;
+	}
+
+	public float[] getHslWeights() {
+		return hslWeights.clone();
+	}
+
+	public float getSatFactor() {
+		return satFactor;
+	}
+
+	public float getLumFactor() {
+		return lumFactor;
+	}
+
+	public float getGamma() {
+		return gamma;
+	}
+
+	public int nearestColorIndex(int rgb) {
+		float[] hsl = new float[3];
+		ColorUtilities.getPerceptualHSL(rgb, hsl);
+
+		return nearestColorIndexOfHSL(hsl);
+	}
+
+	/**
+	 * Matches {@code length} colors starting at {@code offset}, and writes the palette indices to {@code indices}
+	 * starting at index 0.
+	 * <p>
+	 * The three planes are scratch space and need to have at least {@code length} elements. Using them, the colors are
+	 * converted in bulk without allocating.
+	 */
+	public void nearestColorIndices(int[] rgb, int offset, int length, int[] indices, float[] h, float[] s, float[] l) {
+		ColorUtilities.rgb2PerceptualHSL(rgb, offset, length, h, s, l);
+
+		float[] hsl = new float[3];
+		for (int i = 0; i < length; i++) {
+			hsl[0] = h[i];
+			hsl[1] = s[i];
+			hsl[2] = l[i];
+			indices[i] = nearestColorIndexOfHSL(hsl);
+		}
+	}
+
+	/**
+	 * Returns the perceptual HSL of a color to match, with the adjustment factors applied. This is the form of the
+	 * first argument of {@link #distance(float[], float[])}.
+	 */
+	public float[] getAdjustedHSL(int rgb) {
+		float[] hsl = new float[3];
+		ColorUtilities.getPerceptualHSL(rgb, hsl);
+		adjust(hsl);
+		return hsl;
+	}
+
+	/**
+	 * Returns the distance between a color to match (see {@link #getAdjustedHSL(int)}) and any other color in (not
+	 * adjusted) perceptual HSL, like a palette color or a mix of palette colors.
+	 */
+	public float distance(float[] adjustedHSL, float[] hsl) {
+		return metric.distance(adjustedHSL, hsl);
+	}
+
+	private void adjust(float[] hsl) {
+		hsl[1] = NumberUtilities.clamp(hsl[1] * satFactor, 0, 1);
+		hsl[2] = NumberUtilities.clamp(hsl[2] * lumFactor, 0, 1);
+		hsl[2] = (float)Math.pow(hsl[2], gamma);
+	}
+
+	/**
+	 * Applies the adjustment factors to the perceptual HSL color (in-place) and returns the nearest palette index.
+	 */
+	private int nearestColorIndexOfHSL(float[] hsl) {
+		adjust(hsl);
+
+		if (tree != null) {
+			return tree.nearest(hsl);
+		}
+
+		float closestDist  = Float.POSITIVE_INFINITY;
+		int   closestIndex = -1;
+		for (int i = 0; i < hslPalette.length; i++) {
+			float dist = metric.distance(hsl, hslPalette[i]);
+			if (dist < closestDist) {
+				closestDist = dist;
+				closestIndex = i;
+			}
+		}
+
+		return closestIndex;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o)
+			return true;
+
+		if (!(o instanceof PerceptualHSLMatcher))
+			return false;
+
+		PerceptualHSLMatcher other = (PerceptualHSLMatcher)o;
+		return pao == other.pao &&
+		       Arrays.equals(hslWeights, other.hslWeights) &&
+		       Float.compare(satFactor, other.satFactor) == 0 &&
+		       Float.compare(lumFactor, other.lumFactor) == 0 &&
+		       Float.compare(gamma, other.gamma) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = System.identityHashCode(pao);
+		hash = 31 * hash + Arrays.hashCode(hslWeights);
+		hash = 31 * hash + Float.hashCode(satFactor);
+		hash = 31 * hash + Float.hashCode(lumFactor);
+		hash = 31 * hash + Float.hashCode(gamma);
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "(pao=" + pao.getClass().getSimpleName() +
+		       ", hslWeights=" + Arrays.toString(hslWeights) +
+		       ", satFactor=" + satFactor +
+		       ", lumFactor=" + lumFactor +
+		       ", gamma=" + gamma + ')';
+	}
+
+	/**
+	 * The perceptual HSL metric. The query is the (adjusted) color to match, the point is a palette color.
+	 * <p>
+	 * The lower bound for a box substitutes every factor of every term with its smallest possible value within the box.
+	 * All factors are non-negative and the terms are evaluated in the same order, so float rounding can't make the
+	 * bound exceed the actual distance.
+	 */
+	private static final class HSLMetric implements KDTree.Metric {
+		private final float[] hslWeights;
+
+		HSLMetric(float[] hslWeights) {
+			this.hslWeights = hslWeights;
+		}
+
+		@Override
+		public float distance(float[] hsl, float[] paletteHSL) {
+			// The darker or the less saturated the color, the less important the hue.
+			float hueWeight = hslWeights[0] * Math.min(paletteHSL[1], hsl[1]) * Math.min(paletteHSL[2], hsl[2]);
+			// The darker the color, the less important the saturation.
+			float satWeight = hslWeights[1] * Math.min(paletteHSL[2], hsl[2]);
+
+			float diffH  = paletteHSL[0] - hsl[0];
+			float diffS  = paletteHSL[1] - hsl[1];
+			float diffL  = paletteHSL[2] - hsl[2];
+			float diffHH = diffH * diffH * hueWeight;
+			float diffSS = diffS * diffS * satWeight;
+			float diffLL = diffL * diffL * hslWeights[2];
+			return diffHH + diffSS + diffLL;
+		}
+
+		@Override
+		public float lowerBound(float[] hsl, float[] min, float[] max) {
+			float hueWeight = hslWeights[0] * Math.min(min[1], hsl[1]) * Math.min(min[2], hsl[2]);
+			float satWeight = hslWeights[1] * Math.min(min[2], hsl[2]);
+
+			float diffH  = KDTree.distanceToInterval(hsl[0], min[0], max[0]);
+			float diffS  = KDTree.distanceToInterval(hsl[1], min[1], max[1]);
+			float diffL  = KDTree.distanceToInterval(hsl[2], min[2], max[2]);
+			float diffHH = diffH * diffH * hueWeight;
+			float diffSS = diffS * diffS * satWeight;
+			float diffLL = diffL * diffL * hslWeights[2];
+			return diffHH + diffSS + diffLL;
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package org.digitalmodular.paotools.templater;
 
+import java.util.Arrays;
+import java.util.stream.Stream;
+
 import org.digitalmodular.paotools.common.ColorUtilities;
 import org.digitalmodular.paotools.common.PaoUtilities;
 import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
@@ -19,45 +22,87 @@ import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
  * @author Mark Jeronimus
  */
 // Created 2020-11-02
+// Changed 2026-10-17 Renders lazily from the sparse templates
+// Changed 2026-10-17 Incremental rendering with a single simulated drawing
 public class AnnihilatingTemplateProcessor implements TemplateProcessor {
 	@Override
 	public ColorTemplate[] process(LinearFrameBufferImage startImage,
 	                               LinearFrameBufferImage targetImage,
 	                               ColorTemplate[] templates) {
-		LinearFrameBufferImage simulatedDrawing   = LinearFrameBufferImage.fromImage(startImage);
-		ColorTemplate[]        processedTemplates = new ColorTemplate[templates.length];
+		ColorTemplate[] layers             = templates.clone();
+		ColorTemplate[] processedTemplates = new ColorTemplate[templates.length];
 
 		for (int i = 0; i < templates.length; i++) {
-			int                    colorIndex    = templates[i].getColorIndex();
-			LinearFrameBufferImage templateImage = templates[i].getImage();
-			int                    count         = templates[i].getCount();
-
-			simulatedDrawing = PaoUtilities.stackTwoImages(simulatedDrawing, templateImage);
+			int numLayers = i + 1;
 
-			LinearFrameBufferImage annihilatingImage = makeAnnihilatingImage(simulatedDrawing, targetImage);
-
-			processedTemplates[i] = new ColorTemplate(colorIndex, annihilatingImage, count);
-			processedTemplates[i].getImage().extraData = templateImage.extraData;
+			processedTemplates[i] = templates[i].withRenderer(
+					ignored -> renderAnnihilatingImage(startImage, targetImage, layers, numLayers));
 		}
 
 		return processedTemplates;
 	}
 
-	private static LinearFrameBufferImage makeAnnihilatingImage(LinearFrameBufferImage image,
-	                                                            LinearFrameBufferImage targetImage) {
-		LinearFrameBufferImage annihilatingImage =
-				LinearFrameBufferImage.makeCompatibleImage(image, targetImage.isTransparent());
+	/**
+	 * Renders all annihilating images with a single simulated drawing, applying only the pixels of each template in
+	 * turn. The stream returns the same image every time, updated in-place, so each image must be consumed before
+	 * advancing, and the stream must not be made parallel.
+	 */
+	@Override
+	public Stream<LinearFrameBufferImage> renderImages(LinearFrameBufferImage startImage,
+	                                                   LinearFrameBufferImage targetImage,
+	                                                   ColorTemplate[] templates) {
+		Annihilator annihilator = new Annihilator(startImage, targetImage);
+
+		return Arrays.stream(templates.clone()).map(annihilator::apply);
+	}
+
+	/**
+	 * Simulates drawing the first {@code numLayers} templates on the start image, and makes the annihilating image of
+	 * that.
+	 */
+	private static LinearFrameBufferImage renderAnnihilatingImage(LinearFrameBufferImage startImage,
+	                                                              LinearFrameBufferImage targetImage,
+	                                                              ColorTemplate[] layers,
+	                                                              int numLayers) {
+		Annihilator annihilator = new Annihilator(startImage, targetImage);
 
-		int[] src = image.getArray();
-		int[] dst = annihilatingImage.getArray();
+		for (int i = 0; i < numLayers - 1; i++) {
+			annihilator.apply(layers[i]);
+		}
 
-		for (int i = 0; i < dst.length; i++)
-			if (src[i] == PaoUtilities.TRANSPARENT)
-				dst[i] = PaoUtilities.WHITE;
-			else
-				dst[i] = 0xFF000000 | ColorUtilities.invert(src[i]);
+		return annihilator.apply(layers[numLayers - 1]);
+	}
 
-		return annihilatingImage;
+	private static int annihilate(int rgb) {
+		return rgb == PaoUtilities.TRANSPARENT ? PaoUtilities.WHITE : 0xFF000000 | ColorUtilities.invert(rgb);
 	}
 
+	/**
+	 * The simulated drawing and its annihilating image, which are updated together one template at a time.
+	 */
+	private static final class Annihilator {
+		private final int[]                  simulatedDrawing;
+		private final LinearFrameBufferImage annihilatingImage;
+		private final int[]                  annihilatingArray;
+
+		Annihilator(LinearFrameBufferImage startImage, LinearFrameBufferImage targetImage) {
+			simulatedDrawing = LinearFrameBufferImage.fromImage(startImage).getArray();
+			annihilatingImage = LinearFrameBufferImage.makeCompatibleImage(startImage, targetImage.isTransparent());
+			annihilatingArray = annihilatingImage.getArray();
+
+			for (int i = 0; i < annihilatingArray.length; i++) {
+				annihilatingArray[i] = annihilate(simulatedDrawing[i]);
+			}
+		}
+
+		/**
+		 * Draws the template on the simulated drawing, and returns the updated annihilating image.
+		 */
+		LinearFrameBufferImage apply(ColorTemplate template) {
+			template.paintOnto(simulatedDrawing);
+			template.paintOnto(annihilatingArray, annihilate(template.getRGB()));
+
+			return annihilatingImage;
+		}
+	}
 }
@@ -0,0 +1,202 @@
+package org.digitalmodular.paotools.templater;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.paotools.Requests;
+import org.digitalmodular.paotools.common.HTTPResponseStream;
+import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
+
+/**
+ * Provides the area of the canvas under an artwork, from an on-disk copy of the canvas image.
+ * <p>
+ * Before each use, the copy is revalidated with a conditional request ({@code If-None-Match} and
+ * {@code If-Modified-Since}), so an unchanged canvas isn't downloaded again. The validators are kept in a properties
+ * file next to the copy. Only the requested rectangle is decoded, using a source region. Note that a PNG still has to
+ * be inflated up to the last row of the rectangle, but the rest of the canvas is never held in memory.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public class CanvasBackgroundProvider {
+	private static final int MAX_REDIRECTS = 5;
+
+	private final URL  canvasURL;
+	private final Path cacheFile;
+	private final Path metadataFile;
+
+	public CanvasBackgroundProvider(URL canvasURL, Path cacheFile) {
+		this.canvasURL = canvasURL;
+		this.cacheFile = cacheFile.toAbsolutePath();
+		metadataFile = this.cacheFile.resolveSibling(this.cacheFile.getFileName() + ".properties");
+	}
+
+	public URL getCanvasURL() {
+		return canvasURL;
+	}
+
+	public Path getCacheFile() {
+		return cacheFile;
+	}
+
+	/**
+	 * Revalidates the cached canvas, and returns the area at the specified offset. Parts of the area that are
+	 * outside the canvas are black.
+	 */
+	public LinearFrameBufferImage getBackground(int offsetX, int offsetY, int width, int height) throws IOException {
+		updateCache();
+
+		return readRegion(offsetX, offsetY, width, height);
+	}
+
+	/**
+	 * Downloads the canvas, unless the cached copy is still current.
+	 *
+	 * @return whether a new copy was downloaded
+	 */
+	public boolean updateCache() throws IOException {
+		Properties metadata = new Properties();
+		if (Files.exists(cacheFile) && Files.exists(metadataFile)) {
+			try (InputStream in = Files.newInputStream(metadataFile)) {
+				metadata.load(in);
+			}
+		}
+
+		Map<String, String> requestHeaders = new LinkedHashMap<>(2);
+		if (metadata.containsKey("ETag")) {
+			requestHeaders.put("If-None-Match", metadata.getProperty("ETag"));
+		}
+		if (metadata.containsKey("Last-Modified")) {
+			requestHeaders.put("If-Modified-Since", metadata.getProperty("Last-Modified"));
+		}
+
+		URL url = canvasURL;
+		for (int redirects = 0; ; redirects++) {
+			try (HTTPResponseStream stream = Requests.openConnection(url, requestHeaders)) {
+				int responseCode = stream.getResponseCode();
+				if (responseCode == 304) {
+					return false;
+				}
+
+				if (responseCode / 100 == 3) {
+					@Nullable String location = getHeader(stream, "Location");
+					if (location == null || redirects == MAX_REDIRECTS) {
+						throw new IOException("Can't follow HTTP/" + responseCode + " for " + url);
+					}
+
+					url = new URL(url, location);
+					continue;
+				}
+
+				if (responseCode / 100 != 2) {
+					throw new IOException("Received " + stream.getResponseHeaders().get(null) + " for " + url);
+				}
+
+				Logger.getGlobal().info("Downloading: " + cacheFile + " from " + url);
+				saveToCache(stream);
+
+				Properties newMetadata = new Properties();
+				for (String header : new String[]{"ETag", "Last-Modified"}) {
+					@Nullable String value = getHeader(stream, header);
+					if (value != null) {
+						newMetadata.setProperty(header, value);
+					}
+				}
+
+				try (OutputStream out = Files.newOutputStream(metadataFile)) {
+					newMetadata.store(out, canvasURL.toString());
+				}
+
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the cached copy atomically, so an interrupted download doesn't leave a partial file.
+	 */
+	private void saveToCache(InputStream in) throws IOException {
+		Path tempFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+		try {
+			Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	/**
+	 * Decodes the area at the specified offset from the cached copy.
+	 */
+	public LinearFrameBufferImage readRegion(int offsetX, int offsetY, int width, int height) throws IOException {
+		try (ImageInputStream in = ImageIO.createImageInputStream(cacheFile.toFile())) {
+			if (in == null) {
+				throw new IOException("Can't open " + cacheFile);
+			}
+
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if (!readers.hasNext()) {
+				throw new IOException("Not a readable image: " + cacheFile);
+			}
+
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+
+				Rectangle canvas = new Rectangle(reader.getWidth(0), reader.getHeight(0));
+				Rectangle region = canvas.intersection(new Rectangle(offsetX, offsetY, width, height));
+
+				LinearFrameBufferImage image = new LinearFrameBufferImage(width, height, BufferedImage.TYPE_INT_RGB);
+				if (region.isEmpty()) {
+					return image;
+				}
+
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceRegion(region);
+				BufferedImage part = reader.read(0, param);
+
+				Graphics2D g = image.createGraphics();
+				try {
+					g.drawImage(part, region.x - offsetX, region.y - offsetY, null);
+				} finally {
+					g.dispose();
+				}
+
+				return image;
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	private static @Nullable String getHeader(HTTPResponseStream stream, String name) {
+		// Header names are case-insensitive, but the map isn't
+		for (Map.Entry<String, List<String>> header : stream.getResponseHeaders().entrySet()) {
+			if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+				return header.getValue().get(0);
+			}
+		}
+
+		return null;
+	}
+}
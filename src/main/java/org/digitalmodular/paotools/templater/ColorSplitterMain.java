@@ -1,19 +1,34 @@
 package org.digitalmodular.paotools.templater;
 
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
 import javax.imageio.ImageIO;
 
+import org.jetbrains.annotations.Nullable;
+
 import org.digitalmodular.paotools.common.ColorUtilities;
+import org.digitalmodular.paotools.common.IndexedPngWriter;
 import org.digitalmodular.paotools.common.PaoColorException;
 import org.digitalmodular.paotools.common.PaoUtilities;
 import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
@@ -25,6 +40,10 @@ import org.digitalmodular.paotools.newpalettizer.palette.Palette;
  */
 // Created 2020-09-27
 // Changed 2020-10-30 made more object-oriented
+// Changed 2026-10-17 Sparse templates
+// Changed 2026-10-17 Parallel indexed PNG export
+// Changed 2026-10-17 Streaming export
+// Changed 2026-10-17 Cached, cropped canvas download
 public final class ColorSplitterMain {
 	private ColorSplitterMain() {
 		throw new AssertionError();
@@ -45,9 +64,9 @@ public final class ColorSplitterMain {
 
 		try {
 //			BufferedImage image = ImageIO.read(new File(path + baseFilename + "-BG.png"));
-			BufferedImage image = downloadBGImage(offsetX, offsetY, targetImage);
+//			startImage = LinearFrameBufferImage.fromImage(image);
+			startImage = downloadBGImage(path, offsetX, offsetY, targetImage);
 
-			startImage = LinearFrameBufferImage.fromImage(image);
 			checkImageCompatibility(startImage, targetImage);
 		} catch (IOException ex) {
 			ex.printStackTrace();
@@ -56,6 +75,33 @@ public final class ColorSplitterMain {
 
 //		Arrays.fill(startImage.getArray(), PaoUtilities.WHITE);
 
+		makeTemplates(startImage, targetImage, path, baseFilename, offsetX, offsetY);
+	}
+
+	/**
+	 * Splits the difference between the start and target images into one template per color, and replaces the
+	 * templates of {@code baseFilename} in {@code path}.
+	 */
+	public static void makeTemplates(LinearFrameBufferImage startImage,
+	                                 LinearFrameBufferImage targetImage,
+	                                 String path,
+	                                 String baseFilename,
+	                                 int offsetX,
+	                                 int offsetY) throws IOException {
+		makeTemplates(startImage, targetImage, path, baseFilename, offsetX, offsetY, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Like {@link #makeTemplates(LinearFrameBufferImage, LinearFrameBufferImage, String, String, int, int)}, with
+	 * the specified PNG compression level.
+	 */
+	public static void makeTemplates(LinearFrameBufferImage startImage,
+	                                 LinearFrameBufferImage targetImage,
+	                                 String path,
+	                                 String baseFilename,
+	                                 int offsetX,
+	                                 int offsetY,
+	                                 int deflateLevel) throws IOException {
 		LinearFrameBufferImage differenceImage = makeDifferenceImage(startImage, targetImage);
 		ColorTemplate[]        rawTemplates    = splitColors(palette, differenceImage);
 
@@ -74,30 +120,25 @@ public final class ColorSplitterMain {
 
 		ColorTemplate[] processedTemplates =
 				templateProcessor.process(startImage, targetImage, sortedTemplates);
+		Stream<LinearFrameBufferImage> images =
+				templateProcessor.renderImages(startImage, targetImage, sortedTemplates);
 
 		deleteOldTemplates(path, baseFilename);
 
-		saveTemplates(palette, path, baseFilename, processedTemplates, offsetX, offsetY);
-//		saveTemplate(palette, path, baseFilename, processedTemplates, 0, offsetX, offsetY);
+		saveTemplates(palette, path, baseFilename, processedTemplates, images, offsetX, offsetY, deflateLevel);
 	}
 
-	private static BufferedImage downloadBGImage(int offsetX, int offsetY, BufferedImage targetImage)
-			throws IOException {
-		URL           bdURL  = new URL("https://www.pixelroyale.net/1.png");
-		BufferedImage canvas = ImageIO.read(bdURL);
-
-		BufferedImage image = new BufferedImage(targetImage.getWidth(),
-		                                        targetImage.getHeight(),
-		                                        BufferedImage.TYPE_INT_RGB);
-
-		Graphics2D g = image.createGraphics();
-		try {
-			g.drawImage(canvas, -offsetX, -offsetY, null);
-		} finally {
-			g.dispose();
-		}
-
-		return image;
+	/**
+	 * Returns the canvas under the target image, from a copy of the canvas that's cached in {@code path}.
+	 */
+	private static LinearFrameBufferImage downloadBGImage(String path,
+	                                                      int offsetX,
+	                                                      int offsetY,
+	                                                      BufferedImage targetImage) throws IOException {
+		CanvasBackgroundProvider provider = new CanvasBackgroundProvider(new URL("https://www.pixelroyale.net/1.png"),
+		                                                                 Paths.get(path, "canvas-1.png"));
+
+		return provider.getBackground(offsetX, offsetY, targetImage.getWidth(), targetImage.getHeight());
 	}
 
 	public static void checkImageCompatibility(BufferedImage startImage, BufferedImage targetImage) {
@@ -118,35 +159,36 @@ public final class ColorSplitterMain {
 		int[] differenceArray = differenceImage.getArray();
 
 		for (int i = 0; i < differenceArray.length; i++) {
-			int startPixel = startArray[i] & 0xFFFFFF;
-			if (ColorUtilities.isTransparent(targetArray[i])) {
-				differenceArray[i] = startPixel == 0xFFFFFF ? PaoUtilities.TRANSPARENT : PaoUtilities.WHITE;
-			} else {
-				int targetPixel = targetArray[i] & 0xFFFFFF;
-				differenceArray[i] = startPixel == targetPixel ?
-				                     PaoUtilities.TRANSPARENT :
-				                     PaoUtilities.BLACK | targetPixel;
-			}
+			differenceArray[i] = differencePixel(startArray[i], targetArray[i]);
 		}
 
 		return differenceImage;
 	}
 
-	private static ColorTemplate[] splitColors(Palette pao, LinearFrameBufferImage colorsImage) {
-		int numColors = pao.size();
+	/**
+	 * Returns the color to draw over {@code startPixel} to get {@code targetPixel}, or transparent if it's already
+	 * there. Transparent target pixels are to be erased with white.
+	 */
+	static int differencePixel(int startPixel, int targetPixel) {
+		startPixel &= 0xFFFFFF;
+		if (ColorUtilities.isTransparent(targetPixel)) {
+			return startPixel == 0xFFFFFF ? PaoUtilities.TRANSPARENT : PaoUtilities.WHITE;
+		}
 
-		LinearFrameBufferImage[] splitColorImages =
-				IntStream.range(0, numColors)
-				         .mapToObj(ignored -> LinearFrameBufferImage.makeCompatibleImage(colorsImage))
-				         .toArray(LinearFrameBufferImage[]::new);
-		int[] counts = new int[numColors];
+		targetPixel &= 0xFFFFFF;
+		return startPixel == targetPixel ? PaoUtilities.TRANSPARENT : PaoUtilities.BLACK | targetPixel;
+	}
 
-		int[] srcArray = colorsImage.getArray();
-		int[][] dstArrays = Arrays.stream(splitColorImages)
-		                          .map(LinearFrameBufferImage::getArray)
-		                          .toArray(int[][]::new);
+	/**
+	 * Splits the image into one template per palette color. Only the colors that occur get pixel storage.
+	 */
+	static ColorTemplate[] splitColors(Palette pao, LinearFrameBufferImage colorsImage) {
+		int numColors = pao.size();
+		int width     = colorsImage.getWidth();
+		int height    = colorsImage.getHeight();
 
-		int[][] coordsToPrint = new int[numColors][100];
+		int[]    srcArray = colorsImage.getArray();
+		BitSet[] pixels   = new BitSet[numColors];
 
 		for (int i = 0; i < srcArray.length; i++) {
 			int rgb = srcArray[i];
@@ -154,29 +196,36 @@ public final class ColorSplitterMain {
 				continue;
 			}
 
-			int index = pao.getIndexOfColor(rgb);
-			if (index < 0) {
-				throw new PaoColorException(
-						String.format("Target image contains a color not in the PR palette: #%06X", rgb));
+			int index = getIndexOfColor(pao, rgb);
+			if (pixels[index] == null) {
+				pixels[index] = new BitSet(srcArray.length);
 			}
 
-			dstArrays[index][i] = rgb;
-			counts[index]++;
-
-			if (coordsToPrint[index][0] < 99) {
-				coordsToPrint[index][++coordsToPrint[index][0]] = i;
-			}
+			pixels[index].set(i);
 		}
 
 		ColorTemplate[] templates = IntStream
 				.range(0, numColors)
-				.peek(index -> splitColorImages[index].extraData = coordsToPrint[index])
-				.mapToObj(index -> new ColorTemplate(index, splitColorImages[index], counts[index]))
+				.mapToObj(index -> new ColorTemplate(index,
+				                                     width,
+				                                     height,
+				                                     PaoUtilities.BLACK | pao.get(index).getRGB(),
+				                                     pixels[index] != null ? pixels[index] : new BitSet()))
 				.toArray(ColorTemplate[]::new);
 
 		return templates;
 	}
 
+	static int getIndexOfColor(Palette pao, int rgb) {
+		int index = pao.getIndexOfColor(rgb);
+		if (index < 0) {
+			throw new PaoColorException(
+					String.format("Target image contains a color not in the PR palette: #%06X", rgb));
+		}
+
+		return index;
+	}
+
 	public static void saveTemplates(Palette palette,
 	                                 String path,
 	                                 String baseFilename,
@@ -184,46 +233,175 @@ public final class ColorSplitterMain {
 	                                 int offsetX,
 	                                 int offsetY)
 			throws IOException {
-		for (int i = 0; i < templates.length; i++) {
-			saveTemplate(palette, path, baseFilename, templates, i, offsetX, offsetY);
-		}
+		saveTemplates(palette, path, baseFilename, templates, offsetX, offsetY, Deflater.DEFAULT_COMPRESSION);
 	}
 
-	private static void saveTemplate(Palette palette,
+	/**
+	 * Renders and writes the templates.
+	 *
+	 * @param deflateLevel the PNG compression level, from {@link Deflater#NO_COMPRESSION} to
+	 *                     {@link Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}
+	 */
+	public static void saveTemplates(Palette palette,
 	                                 String path,
 	                                 String baseFilename,
 	                                 ColorTemplate[] templates,
-	                                 int index,
 	                                 int offsetX,
-	                                 int offsetY)
+	                                 int offsetY,
+	                                 int deflateLevel)
 			throws IOException {
-		ColorTemplate template = templates[index];
+		saveTemplates(palette, path, baseFilename, templates, Arrays.stream(templates).map(ColorTemplate::toImage),
+		              offsetX, offsetY, deflateLevel);
+	}
 
-		int count = template.getCount();
+	/**
+	 * Writes the templates as their images are produced. Each image is copied to a spare buffer and encoded on a
+	 * worker pool, one template per task, so {@code images} may return the same image every time. There are at most
+	 * as many buffers as workers, regardless of the number of templates. The coordinates of each template are
+	 * printed in template order.
+	 *
+	 * @param images the image of each template, in the same order, like from {@link TemplateProcessor#renderImages}
+	 */
+	public static void saveTemplates(Palette palette,
+	                                 String path,
+	                                 String baseFilename,
+	                                 ColorTemplate[] templates,
+	                                 Stream<LinearFrameBufferImage> images,
+	                                 int offsetX,
+	                                 int offsetY,
+	                                 int deflateLevel)
+			throws IOException {
+		saveTemplates(palette, path, baseFilename, templates, images, offsetX, offsetY, deflateLevel,
+		              (index, image) -> true);
+	}
 
-		int                    colorIndex = template.getColorIndex();
-		LinearFrameBufferImage image      = template.getImage();
+	/**
+	 * Decides, on the thread that consumes the images, whether a template with pixels to draw is written.
+	 */
+	@FunctionalInterface
+	interface SaveFilter {
+		boolean shouldSave(int index, LinearFrameBufferImage image) throws IOException;
+	}
 
-		String colorName = palette.get(colorIndex).getName();
-		String filename = String.format("%s%s-PR-%02d %s (%d).png",
-		                                path, baseFilename, index, colorName, count);
+	static void saveTemplates(Palette palette,
+	                          String path,
+	                          String baseFilename,
+	                          ColorTemplate[] templates,
+	                          Stream<LinearFrameBufferImage> images,
+	                          int offsetX,
+	                          int offsetY,
+	                          int deflateLevel,
+	                          SaveFilter filter)
+			throws IOException {
+		int numThreads = Math.max(1, Math.min(templates.length, Runtime.getRuntime().availableProcessors()));
+
+		ExecutorService                  executor = Executors.newFixedThreadPool(numThreads);
+		Semaphore                        inFlight = new Semaphore(numThreads);
+		Queue<LinearFrameBufferImage>    buffers  = new ConcurrentLinkedQueue<>();
+		Iterator<LinearFrameBufferImage> iterator = images.iterator();
+		try {
+			List<Future<String>> futures = new ArrayList<>(templates.length);
+			for (int i = 0; i < templates.length; i++) {
+				LinearFrameBufferImage image = iterator.next();
+				if (templates[i].getCount() == 0 || !filter.shouldSave(i, image)) {
+					continue;
+				}
+
+				inFlight.acquire();
+				LinearFrameBufferImage buffer = copyToBuffer(image, buffers.poll());
+
+				int index = i;
+				futures.add(executor.submit(() -> {
+					try {
+						return saveTemplate(palette, path, baseFilename, templates[index], buffer, index,
+						                    offsetX, offsetY, deflateLevel);
+					} finally {
+						buffers.add(buffer);
+						inFlight.release();
+					}
+				}));
+			}
 
-		if (count > 0) {
-			int[] coordsToPrint = (int[])image.extraData;
-			System.out.print(filename);
-			System.out.print('\t');
-			for (int j = 1; j <= coordsToPrint[0]; j++) {
-				System.out.printf("|%d,%d",
-				                  coordsToPrint[j] % image.getWidth() + offsetX,
-				                  coordsToPrint[j] / image.getWidth() + offsetY);
+			for (Future<String> future : futures) {
+				System.out.println(future.get());
 			}
-			System.out.println();
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+
+			throw new IOException(cause);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while saving templates");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 
-			ImageIO.write(image, "PNG", new File(filename));
+	/**
+	 * Copies the image into the buffer, or into a new buffer if there's none or it doesn't match the image.
+	 */
+	private static LinearFrameBufferImage copyToBuffer(LinearFrameBufferImage image,
+	                                                   @Nullable LinearFrameBufferImage buffer) {
+		if (buffer == null ||
+		    buffer.getWidth() != image.getWidth() ||
+		    buffer.getHeight() != image.getHeight() ||
+		    buffer.isTransparent() != image.isTransparent()) {
+			buffer = LinearFrameBufferImage.makeCompatibleImage(image, image.isTransparent());
 		}
+
+		System.arraycopy(image.getArray(), 0, buffer.getArray(), 0, image.getArray().length);
+		return buffer;
+	}
+
+	/**
+	 * Writes one template as an indexed PNG, or as an ARGB PNG if it has too many colors for that.
+	 *
+	 * @return the filename and coordinates to print
+	 */
+	private static String saveTemplate(Palette palette,
+	                                   String path,
+	                                   String baseFilename,
+	                                   ColorTemplate template,
+	                                   LinearFrameBufferImage image,
+	                                   int index,
+	                                   int offsetX,
+	                                   int offsetY,
+	                                   int deflateLevel)
+			throws IOException {
+		String filename = getTemplateFilename(palette, path, baseFilename, template, index);
+
+		int[]         coordsToPrint = template.getFirstPixels(99);
+		StringBuilder line          = new StringBuilder(filename.length() + coordsToPrint.length * 12);
+		line.append(filename).append('\t');
+		for (int p : coordsToPrint) {
+			line.append('|').append(p % template.getWidth() + offsetX)
+			    .append(',').append(p / template.getWidth() + offsetY);
+		}
+
+		File file = new File(filename);
+		if (!IndexedPngWriter.write(image, file, deflateLevel)) {
+			ImageIO.write(image, "PNG", file);
+		}
+
+		return line.toString();
+	}
+
+	static String getTemplateFilename(Palette palette,
+	                                  String path,
+	                                  String baseFilename,
+	                                  ColorTemplate template,
+	                                  int index) {
+		String colorName = palette.get(template.getColorIndex()).getName();
+		return String.format("%s%s-PR-%02d %s (%d).png",
+		                     path, baseFilename, index, colorName, template.getCount());
 	}
 
-	private static void deleteOldTemplates(String path, String baseFilename) throws IOException {
+	static void deleteOldTemplates(String path, String baseFilename) throws IOException {
 		String     prefix = baseFilename + "-PR-";
 		Path       dir    = Paths.get(path);
 		List<Path> files  = Files.list(dir).toList();
@@ -1,31 +1,162 @@
 package org.digitalmodular.paotools.templater;
 
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+
+import org.digitalmodular.paotools.common.PaoUtilities;
 import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
 
 /**
+ * The pixels to draw in a single palette color.
+ * <p>
+ * The pixels are held as a bitset with one bit per pixel (index {@code x + y * width}), so a template costs 1/32nd of
+ * an ARGB image. The image is only made by {@link #toImage()}, when the template is saved or previewed. By default
+ * that's just the pixels in the template's color on a transparent background, but processors can attach a renderer
+ * that draws something else, like the rest of the artwork around it.
+ *
  * @author Mark Jeronimus
  */
 // Created 2020-11-02 pulled up from ColorSplitMain
+// Changed 2026-10-17 Sparse pixels instead of a full-size image
 public class ColorTemplate {
-	private final int                    colorIndex;
-	private final LinearFrameBufferImage image;
-	private final int                    count;
+	private static final TemplateRenderer PIXELS_RENDERER = ColorTemplate::renderPixels;
+
+	private final int              colorIndex;
+	private final int              width;
+	private final int              height;
+	private final int              rgb;
+	private final BitSet           pixels;
+	private final int              count;
+	private final TemplateRenderer renderer;
 
-	ColorTemplate(int colorIndex, LinearFrameBufferImage image, int count) {
+	/**
+	 * @param rgb    the ARGB value of the pixels to draw
+	 * @param pixels the pixels to draw. Ownership is transferred to this template, it shouldn't be modified anymore.
+	 */
+	ColorTemplate(int colorIndex, int width, int height, int rgb, BitSet pixels) {
+		this(colorIndex, width, height, rgb, pixels, PIXELS_RENDERER);
+	}
+
+	private ColorTemplate(int colorIndex, int width, int height, int rgb, BitSet pixels, TemplateRenderer renderer) {
 		this.colorIndex = colorIndex;
-		this.image = image;
-		this.count = count;
+		this.width = width;
+		this.height = height;
+		this.rgb = rgb;
+		this.pixels = pixels;
+		count = pixels.cardinality();
+		this.renderer = renderer;
+	}
+
+	/**
+	 * Returns a template with the same pixels, which renders with the specified renderer.
+	 */
+	ColorTemplate withRenderer(TemplateRenderer renderer) {
+		return new ColorTemplate(colorIndex, width, height, rgb, pixels, renderer);
+	}
+
+	/**
+	 * Returns a template with the same color, with different pixels, which renders just the pixels.
+	 */
+	ColorTemplate withPixels(BitSet pixels) {
+		return new ColorTemplate(colorIndex, width, height, rgb, pixels, PIXELS_RENDERER);
 	}
 
 	public int getColorIndex() {
 		return colorIndex;
 	}
 
-	public LinearFrameBufferImage getImage() {
-		return image;
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the ARGB value of the pixels to draw.
+	 */
+	public int getRGB() {
+		return rgb;
 	}
 
 	public int getCount() {
 		return count;
 	}
+
+	/**
+	 * Returns whether pixel {@code p} (which is {@code x + y * width}) is to be drawn.
+	 */
+	public boolean isPainted(int p) {
+		return pixels.get(p);
+	}
+
+	/**
+	 * Returns the template's color at pixel {@code p} (which is {@code x + y * width}), or transparent.
+	 */
+	public int getPixel(int p) {
+		return pixels.get(p) ? rgb : PaoUtilities.TRANSPARENT;
+	}
+
+	/**
+	 * Returns a copy of the pixels to draw.
+	 */
+	public BitSet getPixels() {
+		return (BitSet)pixels.clone();
+	}
+
+	/**
+	 * Returns the first pixel to draw at or after {@code p}, or -1 if there is none. Iterates without copying, unlike
+	 * {@link #getPixels()}.
+	 */
+	int nextPainted(int p) {
+		return pixels.nextSetBit(p);
+	}
+
+	/**
+	 * Adds the pixels to draw to {@code dst}.
+	 */
+	void orInto(BitSet dst) {
+		dst.or(pixels);
+	}
+
+	/**
+	 * Returns the indices ({@code x + y * width}) of the first pixels to draw, in scan order.
+	 */
+	public int[] getFirstPixels(int max) {
+		return pixels.stream().limit(max).toArray();
+	}
+
+	/**
+	 * Draws the pixels of this template over {@code dst}, an array of ARGB pixels.
+	 */
+	public void paintOnto(int[] dst) {
+		paintOnto(dst, rgb);
+	}
+
+	/**
+	 * Draws the pixels of this template over {@code dst}, in the specified ARGB color instead of the template's.
+	 */
+	public void paintOnto(int[] dst, int argb) {
+		for (int p = pixels.nextSetBit(0); p >= 0; p = pixels.nextSetBit(p + 1)) {
+			dst[p] = argb;
+		}
+	}
+
+	/**
+	 * Makes a new image of this template. The image isn't retained, so callers should hold on to it if it's needed
+	 * more than once.
+	 */
+	public LinearFrameBufferImage toImage() {
+		return renderer.render(this);
+	}
+
+	private static LinearFrameBufferImage renderPixels(ColorTemplate template) {
+		LinearFrameBufferImage image =
+				new LinearFrameBufferImage(template.width, template.height, BufferedImage.TYPE_INT_ARGB);
+
+		template.paintOnto(image.getArray());
+
+		return image;
+	}
 }
@@ -1,89 +1,117 @@
 package org.digitalmodular.paotools.templater;
 
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
 import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
 
 /**
+ * Extends each template with the gaps (pixels with at least two painted neighbors) that a later template paints over
+ * anyway, so the color can be applied with fewer, larger fills.
+ * <p>
+ * Which template paints a pixel last is looked up in a byte plane that's made once, and each template is processed in
+ * parallel bands of rows.
+ *
  * @author Mark Jeronimus
  */
 // Created 2020-11-02
+// Changed 2026-10-17 Works on the sparse templates
+// Changed 2026-10-17 Over-paint lookup plane and parallel row bands
 public class FloodFriendlyMakingTemplateProcessor implements TemplateProcessor {
+	private static final int BAND_HEIGHT = 64;
+
 	@Override
 	public ColorTemplate[] process(LinearFrameBufferImage startImage,
 	                               LinearFrameBufferImage targetImage,
 	                               ColorTemplate[] templates) {
+		if (templates.length > 255) {
+			throw new IllegalArgumentException("At most 255 templates are supported: " + templates.length);
+		}
+
 		templates = templates.clone();
+		if (templates.length == 0) {
+			return templates;
+		}
+
+		byte[] lastPainters = makeLastPainters(templates);
 
 		for (int i = 0; i < templates.length; i++) {
-			templates[i] = fillGaps(templates, i);
+			templates[i] = fillGaps(templates[i], i, lastPainters);
 		}
 
 		return templates;
 	}
 
-	private static ColorTemplate fillGaps(ColorTemplate[] templates, int index) {
-		LinearFrameBufferImage image = templates[index].getImage();
-
-		LinearFrameBufferImage processedImage =
-				LinearFrameBufferImage.makeCompatibleImage(image, image.isTransparent());
+	/**
+	 * Returns, for each pixel, one more than the index of the last template that paints it, or 0 if none does.
+	 */
+	private static byte[] makeLastPainters(ColorTemplate[] templates) {
+		byte[] lastPainters = new byte[templates[0].getWidth() * templates[0].getHeight()];
 
-		int   width           = image.getWidth();
-		int[] pixels          = image.getArray();
-		int[] processedPixels = processedImage.getArray();
-		int   count           = templates[index].getCount();
-
-		for (int p = 0; p < pixels.length; p++) {
-			if (pixels[p] != 0 || !willBeOverPainted(templates, index, p)) {
-				processedPixels[p] = pixels[p];
-				continue;
-			}
-
-			int a = getPixel(pixels, p, width, 0, -1);
-			int b = getPixel(pixels, p, width, -1, 0);
-			int c = getPixel(pixels, p, width, 1, 0);
-			int d = getPixel(pixels, p, width, 0, 1);
-
-			if (a != 0 && (a == b || a == c || a == d)) {
-				processedPixels[p] = a;
-				count++;
-			} else if (b != 0 && (b == c || b == d)) {
-				processedPixels[p] = b;
-				count++;
-			} else if (c != 0 && c == d) {
-				processedPixels[p] = c;
-				count++;
-			} else {
-				processedPixels[p] = pixels[p];
+		for (int i = 0; i < templates.length; i++) {
+			ColorTemplate template = templates[i];
+			byte          painter  = (byte)(i + 1);
+			for (int p = template.nextPainted(0); p >= 0; p = template.nextPainted(p + 1)) {
+				lastPainters[p] = painter;
 			}
 		}
 
-		if (count == templates[index].getCount()) {
-			return templates[index];
-		}
-
-		processedImage.extraData = image.extraData;
-
-		return new ColorTemplate(templates[index].getColorIndex(), processedImage, count);
+		return lastPainters;
 	}
 
-	private static boolean willBeOverPainted(ColorTemplate[] templates, int index, int p) {
-		for (int i = index + 1; i < templates.length; i++) {
-			if (templates[i].getImage().getArray()[p] != 0) {
-				return true;
-			}
+	private static ColorTemplate fillGaps(ColorTemplate template, int index, byte[] lastPainters) {
+		int height   = template.getHeight();
+		int numBands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+
+		// Each band collects its own gaps, as BitSet isn't thread-safe. The collected sets only hold the (few) gaps,
+		// the template's own pixels are added once at the end.
+		BitSet gaps = IntStream.range(0, numBands)
+		                       .parallel()
+		                       .mapToObj(band -> fillGaps(template, index, lastPainters,
+		                                                  band * BAND_HEIGHT,
+		                                                  Math.min(height, (band + 1) * BAND_HEIGHT)))
+		                       .collect(BitSet::new, BitSet::or, BitSet::or);
+
+		if (gaps.isEmpty()) {
+			return template;
 		}
 
-		return false;
+		template.orInto(gaps);
+		return template.withPixels(gaps);
 	}
 
-	private static int getPixel(int[] template, int p, int width, int dx, int dy) {
-		int x      = p % width + dx;
-		int y      = p / width + dy;
-		int height = template.length / width;
-
-		if (x < 0 || y < 0 || x >= width || y >= height) {
-			return 0;
+	private static BitSet fillGaps(ColorTemplate template, int index, byte[] lastPainters, int startY, int endY) {
+		int    width  = template.getWidth();
+		int    height = template.getHeight();
+		BitSet filled = new BitSet();
+
+		for (int y = startY; y < endY; y++) {
+			int p = y * width;
+			for (int x = 0; x < width; x++, p++) {
+				if ((lastPainters[p] & 0xFF) <= index + 1 || template.isPainted(p)) {
+					continue;
+				}
+
+				int neighbors = 0;
+				if (y > 0 && template.isPainted(p - width)) {
+					neighbors++;
+				}
+				if (x > 0 && template.isPainted(p - 1)) {
+					neighbors++;
+				}
+				if (x < width - 1 && template.isPainted(p + 1)) {
+					neighbors++;
+				}
+				if (y < height - 1 && template.isPainted(p + width)) {
+					neighbors++;
+				}
+
+				if (neighbors >= 2) {
+					filled.set(p);
+				}
+			}
 		}
 
-		return template[x + width * y];
+		return filled;
 	}
 }
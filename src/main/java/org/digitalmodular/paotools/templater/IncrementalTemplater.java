@@ -0,0 +1,337 @@
+package org.digitalmodular.paotools.templater;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import org.jetbrains.annotations.Nullable;
+
+import org.digitalmodular.paotools.common.PaoUtilities;
+import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
+import org.digitalmodular.paotools.newpalettizer.palette.Palette;
+
+/**
+ * Keeps the templates of one artwork up-to-date with a changing canvas, doing as little work as possible.
+ * <p>
+ * The first {@link #refresh} makes all templates, like {@link ColorSplitterMain#makeTemplates}. After that, the new
+ * background is compared to the previous one in tiles of {@link #TILE_SIZE}². Only the changed tiles of the
+ * per-color pixels are updated, and for each rendered template only the affected tiles are hashed. A template file is
+ * only written when its content hash changed, and only renamed when just its name changed.
+ * <p>
+ * This assumes that a template's image depends only on its own color, the set of colors before and after it, and on
+ * pixels at most one pixel away. This holds for all {@link TemplateProcessor}s in this package. A template whose set of
+ * earlier colors changed (because the sort order changed) is hashed completely.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+public class IncrementalTemplater {
+	public static final int TILE_SIZE = 64;
+
+	private final Palette                palette;
+	private final LinearFrameBufferImage targetImage;
+	private final String                 path;
+	private final String                 baseFilename;
+	private final int                    offsetX;
+	private final int                    offsetY;
+
+	private final int width;
+	private final int height;
+	private final int tilesX;
+	private final int numTiles;
+
+	private TemplateSorter    sorter       = new PixelCountSorter(true);
+	private TemplateProcessor processor    = new AnnihilatingTemplateProcessor();
+	private int               deflateLevel = Deflater.DEFAULT_COMPRESSION;
+
+	// The state after the last refresh, all indexed by palette color
+	private @Nullable int[] previousBackground = null;
+
+	private final BitSet[]           colorPixels;
+	private final @Nullable BitSet[] earlierColors;
+	private final long[][]           tileHashes;
+	private final long[]             contentHashes;
+	private final @Nullable String[] filenames;
+
+	public IncrementalTemplater(Palette palette,
+	                            LinearFrameBufferImage targetImage,
+	                            String path,
+	                            String baseFilename,
+	                            int offsetX,
+	                            int offsetY) {
+		this.palette = palette;
+		this.targetImage = targetImage;
+		this.path = path;
+		this.baseFilename = baseFilename;
+		this.offsetX = offsetX;
+		this.offsetY = offsetY;
+
+		width = targetImage.getWidth();
+		height = targetImage.getHeight();
+		tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		numTiles = tilesX * ((height + TILE_SIZE - 1) / TILE_SIZE);
+
+		int numColors = palette.size();
+		colorPixels = new BitSet[numColors];
+		earlierColors = new BitSet[numColors];
+		tileHashes = new long[numColors][numTiles];
+		contentHashes = new long[numColors];
+		filenames = new String[numColors];
+	}
+
+	public TemplateSorter getSorter() {
+		return sorter;
+	}
+
+	public void setSorter(TemplateSorter sorter) {
+		this.sorter = sorter;
+		previousBackground = null;
+	}
+
+	public TemplateProcessor getProcessor() {
+		return processor;
+	}
+
+	public void setProcessor(TemplateProcessor processor) {
+		this.processor = processor;
+		previousBackground = null;
+	}
+
+	public int getDeflateLevel() {
+		return deflateLevel;
+	}
+
+	/**
+	 * @param deflateLevel the PNG compression level, from {@link Deflater#NO_COMPRESSION} to
+	 *                     {@link Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}
+	 */
+	public void setDeflateLevel(int deflateLevel) {
+		this.deflateLevel = deflateLevel;
+	}
+
+	/**
+	 * Brings the template files up-to-date with the current canvas. Changing the sorter or processor makes the next
+	 * refresh a full one, as does a failed refresh.
+	 *
+	 * @return the number of template files written
+	 */
+	public int refresh(LinearFrameBufferImage background) throws IOException {
+		ColorSplitterMain.checkImageCompatibility(background, targetImage);
+
+		int[]  backgroundArray = background.getArray();
+		BitSet dirtyTiles;
+		if (previousBackground == null) {
+			ColorSplitterMain.deleteOldTemplates(path, baseFilename);
+			Arrays.fill(earlierColors, null);
+			Arrays.fill(filenames, null);
+
+			dirtyTiles = new BitSet(numTiles);
+			dirtyTiles.set(0, numTiles);
+		} else {
+			dirtyTiles = findDirtyTiles(previousBackground, backgroundArray);
+			if (dirtyTiles.isEmpty()) {
+				return 0;
+			}
+		}
+
+		// Until this refresh completes, the files don't match any known state
+		previousBackground = null;
+
+		updateColorPixels(backgroundArray, dirtyTiles);
+
+		int numWritten = saveChangedTemplates(background, dilate(dirtyTiles));
+
+		previousBackground = backgroundArray.clone();
+		return numWritten;
+	}
+
+	private BitSet findDirtyTiles(int[] previous, int[] current) {
+		BitSet dirtyTiles = new BitSet(numTiles);
+
+		for (int tile = 0; tile < numTiles; tile++) {
+			int startX = tile % tilesX * TILE_SIZE;
+			int startY = tile / tilesX * TILE_SIZE;
+			int endX   = Math.min(width, startX + TILE_SIZE);
+			int endY   = Math.min(height, startY + TILE_SIZE);
+
+			tileLoop:
+			for (int y = startY; y < endY; y++) {
+				for (int p = y * width + startX; p < y * width + endX; p++) {
+					// Like makeDifferenceImage, ignore the alpha of the canvas
+					if (((previous[p] ^ current[p]) & 0xFFFFFF) != 0) {
+						dirtyTiles.set(tile);
+						break tileLoop;
+					}
+				}
+			}
+		}
+
+		return dirtyTiles;
+	}
+
+	/**
+	 * Redoes the difference and split of {@link ColorSplitterMain#splitColors} in the dirty tiles.
+	 */
+	private void updateColorPixels(int[] backgroundArray, BitSet dirtyTiles) {
+		int[] targetArray = targetImage.getArray();
+
+		for (int c = 0; c < colorPixels.length; c++) {
+			if (colorPixels[c] == null) {
+				colorPixels[c] = new BitSet(width * height);
+			}
+		}
+
+		for (int tile = dirtyTiles.nextSetBit(0); tile >= 0; tile = dirtyTiles.nextSetBit(tile + 1)) {
+			int startX = tile % tilesX * TILE_SIZE;
+			int startY = tile / tilesX * TILE_SIZE;
+			int endX   = Math.min(width, startX + TILE_SIZE);
+			int endY   = Math.min(height, startY + TILE_SIZE);
+
+			for (int y = startY; y < endY; y++) {
+				int rowStart = y * width + startX;
+				int rowEnd   = y * width + endX;
+
+				for (BitSet pixels : colorPixels) {
+					pixels.clear(rowStart, rowEnd);
+				}
+
+				for (int p = rowStart; p < rowEnd; p++) {
+					int rgb = ColorSplitterMain.differencePixel(backgroundArray[p], targetArray[p]);
+					if (rgb != PaoUtilities.TRANSPARENT) {
+						colorPixels[ColorSplitterMain.getIndexOfColor(palette, rgb)].set(p);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Expands the tiles by one tile in every direction, so pixels that depend on their neighbors are included.
+	 */
+	private BitSet dilate(BitSet tiles) {
+		BitSet dilated = new BitSet(numTiles);
+		int    tilesY  = numTiles / tilesX;
+
+		for (int tile = tiles.nextSetBit(0); tile >= 0; tile = tiles.nextSetBit(tile + 1)) {
+			int tileX = tile % tilesX;
+			int tileY = tile / tilesX;
+
+			for (int y = Math.max(0, tileY - 1); y <= Math.min(tilesY - 1, tileY + 1); y++) {
+				dilated.set(y * tilesX + Math.max(0, tileX - 1), y * tilesX + Math.min(tilesX - 1, tileX + 1) + 1);
+			}
+		}
+
+		return dilated;
+	}
+
+	private int saveChangedTemplates(LinearFrameBufferImage background, BitSet affectedTiles) throws IOException {
+		ColorTemplate[] templates = new ColorTemplate[colorPixels.length];
+		for (int c = 0; c < templates.length; c++) {
+			templates[c] = new ColorTemplate(c, width, height,
+			                                 PaoUtilities.BLACK | palette.get(c).getRGB(),
+			                                 (BitSet)colorPixels[c].clone());
+		}
+
+		ColorTemplate[]                sortedTemplates    = sorter.sortTemplates(palette, templates);
+		ColorTemplate[]                processedTemplates = processor.process(background, targetImage, sortedTemplates);
+		Stream<LinearFrameBufferImage> images             =
+				processor.renderImages(background, targetImage, sortedTemplates);
+
+		BitSet[] newEarlierColors = new BitSet[processedTemplates.length];
+		BitSet   earlier          = new BitSet(palette.size());
+		for (ColorTemplate template : processedTemplates) {
+			int colorIndex = template.getColorIndex();
+			newEarlierColors[colorIndex] = (BitSet)earlier.clone();
+			earlier.set(colorIndex);
+
+			// Templates that aren't saved don't keep their hashes
+			if (template.getCount() == 0) {
+				deleteTemplateFile(colorIndex);
+				earlierColors[colorIndex] = null;
+			}
+		}
+
+		BitSet allTiles = new BitSet(numTiles);
+		allTiles.set(0, numTiles);
+
+		int[] numWritten = {0};
+		ColorSplitterMain.saveTemplates(
+				palette, path, baseFilename, processedTemplates, images, offsetX, offsetY, deflateLevel,
+				(index, image) -> {
+					ColorTemplate template   = processedTemplates[index];
+					int           colorIndex = template.getColorIndex();
+
+					BitSet tiles = newEarlierColors[colorIndex].equals(earlierColors[colorIndex]) ?
+					               affectedTiles : allTiles;
+					earlierColors[colorIndex] = newEarlierColors[colorIndex];
+
+					long hash = hashTemplate(image, tileHashes[colorIndex], tiles);
+					String filename =
+							ColorSplitterMain.getTemplateFilename(palette, path, baseFilename, template, index);
+
+					if (hash == contentHashes[colorIndex] && filenames[colorIndex] != null) {
+						if (!filename.equals(filenames[colorIndex])) {
+							Files.move(Paths.get(filenames[colorIndex]), Paths.get(filename),
+							           StandardCopyOption.REPLACE_EXISTING);
+							filenames[colorIndex] = filename;
+						}
+
+						return false;
+					}
+
+					if (!filename.equals(filenames[colorIndex])) {
+						deleteTemplateFile(colorIndex);
+					}
+
+					contentHashes[colorIndex] = hash;
+					filenames[colorIndex] = filename;
+					numWritten[0]++;
+					return true;
+				});
+
+		return numWritten[0];
+	}
+
+	private void deleteTemplateFile(int colorIndex) throws IOException {
+		@Nullable String filename = filenames[colorIndex];
+		if (filename != null) {
+			Files.deleteIfExists(Paths.get(filename));
+			filenames[colorIndex] = null;
+		}
+	}
+
+	/**
+	 * Rehashes the specified tiles of the image, and returns the hash of all tile hashes.
+	 */
+	private long hashTemplate(LinearFrameBufferImage image, long[] hashes, BitSet tiles) {
+		int[] pixels = image.getArray();
+
+		for (int tile = tiles.nextSetBit(0); tile >= 0; tile = tiles.nextSetBit(tile + 1)) {
+			int startX = tile % tilesX * TILE_SIZE;
+			int startY = tile / tilesX * TILE_SIZE;
+			int endX   = Math.min(width, startX + TILE_SIZE);
+			int endY   = Math.min(height, startY + TILE_SIZE);
+
+			long hash = 0xCBF29CE484222325L;
+			for (int y = startY; y < endY; y++) {
+				for (int p = y * width + startX; p < y * width + endX; p++) {
+					hash = (hash ^ pixels[p]) * 0x100000001B3L;
+				}
+			}
+
+			hashes[tile] = hash;
+		}
+
+		long hash = 0xCBF29CE484222325L;
+		for (long tileHash : hashes) {
+			hash = (hash ^ tileHash) * 0x100000001B3L;
+		}
+
+		return hash;
+	}
+}
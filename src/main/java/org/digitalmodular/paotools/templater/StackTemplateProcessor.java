@@ -1,5 +1,7 @@
 package org.digitalmodular.paotools.templater;
 
+import java.awt.image.BufferedImage;
+
 import org.digitalmodular.paotools.common.PaoUtilities;
 import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
 
@@ -7,6 +9,7 @@ import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
  * @author Mark Jeronimus
  */
 // Created 2020-11-02
+// Changed 2026-10-17 Renders lazily from the sparse templates
 public class StackTemplateProcessor implements TemplateProcessor {
 	private final int bgColor;
 
@@ -18,25 +21,30 @@ public class StackTemplateProcessor implements TemplateProcessor {
 	public ColorTemplate[] process(LinearFrameBufferImage startImage,
 	                               LinearFrameBufferImage targetImage,
 	                               ColorTemplate[] templates) {
+		ColorTemplate[] layers             = templates.clone();
 		ColorTemplate[] processedTemplates = new ColorTemplate[templates.length];
 
-		LinearFrameBufferImage stack = LinearFrameBufferImage.makeCompatibleImage(templates[0].getImage());
 		for (int i = 0; i < templates.length; i++) {
-			int                    colorIndex    = templates[i].getColorIndex();
-			LinearFrameBufferImage templateImage = templates[i].getImage();
-			int                    count         = templates[i].getCount();
+			int numLayers = i + 1;
 
-			stack = PaoUtilities.stackTwoImages(stack, templateImage);
+			processedTemplates[i] = templates[i].withRenderer(template -> renderStack(template, layers, numLayers));
+		}
 
-			LinearFrameBufferImage template = LinearFrameBufferImage.fromImage(stack);
+		return processedTemplates;
+	}
 
-			if (bgColor != PaoUtilities.TRANSPARENT)
-				PaoUtilities.replaceAll(template.getArray(), PaoUtilities.TRANSPARENT, bgColor);
+	private LinearFrameBufferImage renderStack(ColorTemplate template, ColorTemplate[] layers, int numLayers) {
+		LinearFrameBufferImage stack =
+				new LinearFrameBufferImage(template.getWidth(), template.getHeight(), BufferedImage.TYPE_INT_ARGB);
 
-			processedTemplates[i] = new ColorTemplate(colorIndex, template, count);
-			processedTemplates[i].getImage().extraData = templateImage.extraData;
+		int[] stackArray = stack.getArray();
+		for (int i = 0; i < numLayers; i++) {
+			layers[i].paintOnto(stackArray);
 		}
 
-		return processedTemplates;
+		if (bgColor != PaoUtilities.TRANSPARENT)
+			PaoUtilities.replaceAll(stackArray, PaoUtilities.TRANSPARENT, bgColor);
+
+		return stack;
 	}
 }
@@ -1,11 +1,15 @@
 package org.digitalmodular.paotools.templater;
 
+import java.util.Arrays;
+import java.util.stream.Stream;
+
 import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
 
 /**
  * @author Mark Jeronimus
  */
 // Created 2020-11-02
+// Changed 2026-10-17 Streaming render
 public interface TemplateProcessor {
 	/**
 	 * Processes the single-color templates into final templates.
@@ -13,4 +17,16 @@ public interface TemplateProcessor {
 	ColorTemplate[] process(LinearFrameBufferImage startImage,
 	                        LinearFrameBufferImage targetImage,
 	                        ColorTemplate[] templates);
+
+	/**
+	 * Renders the images of the templates that {@link #process} returns, in order, one at a time.
+	 * <p>
+	 * Implementations may return the same image every time, updated in-place, so each image must be consumed (written
+	 * or copied) before advancing the stream. The stream is sequential.
+	 */
+	default Stream<LinearFrameBufferImage> renderImages(LinearFrameBufferImage startImage,
+	                                                    LinearFrameBufferImage targetImage,
+	                                                    ColorTemplate[] templates) {
+		return Arrays.stream(process(startImage, targetImage, templates)).map(ColorTemplate::toImage);
+	}
 }
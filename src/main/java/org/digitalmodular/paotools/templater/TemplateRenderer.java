@@ -0,0 +1,17 @@
+package org.digitalmodular.paotools.templater;
+
+import org.digitalmodular.paotools.newpalettizer.LinearFrameBufferImage;
+
+/**
+ * Turns a sparse {@link ColorTemplate} into an image, when it's saved or previewed.
+ *
+ * @author Mark Jeronimus
+ */
+// Created 2026-10-17
+@FunctionalInterface
+public interface TemplateRenderer {
+	/**
+	 * Renders the template into a new image of {@link ColorTemplate#getWidth()} × {@link ColorTemplate#getHeight()}.
+	 */
+	LinearFrameBufferImage render(ColorTemplate template);
+}